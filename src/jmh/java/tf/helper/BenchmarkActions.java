@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import tf.helper.doundo.AbstractDoUndoAction;
+import tf.helper.doundo.DoUndoActionList;
+import tf.helper.doundo.IDoUndoAction;
+
+/**
+ * Actions for the do / undo benchmarks.
+ *
+ * @author thomas
+ */
+public class BenchmarkActions {
+    private BenchmarkActions() {
+    }
+    
+    // action that does nothing - we only want to see the overhead of the do / undo engine
+    public static class NopAction extends AbstractDoUndoAction {
+        @Override
+        public boolean doHook() {
+            return true;
+        }
+
+        @Override
+        public boolean undoHook() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "NopAction";
+        }
+    }
+    
+    // count actions that have been done already
+    public static List<IDoUndoAction> getNopActions(final int count) {
+        final List<IDoUndoAction> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final NopAction action = new NopAction();
+            action.doAction();
+            result.add(action);
+        }
+        return result;
+    }
+    
+    // chain of depth nested lists, each level with leafCount actions plus the next level
+    public static DoUndoActionList getNestedActionList(final int depth, final int leafCount) {
+        DoUndoActionList result = null;
+        for (int level = 0; level < depth; level++) {
+            final DoUndoActionList list = new DoUndoActionList(true, getNopActions(leafCount));
+            if (result != null) {
+                list.addAction(result);
+            }
+            result = list;
+        }
+        return result;
+    }
+}
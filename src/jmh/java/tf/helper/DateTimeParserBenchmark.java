@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.general.DateTimeParser;
+
+/**
+ * Parsing a column of valueCount timestamps:
+ * 
+ * - isoJdk: LocalDateTime.parse() for each ISO value
+ * - isoColumn: DateTimeParser.parseColumn() of the same values
+ * - patternJdk: LocalDateTime.parse() with a DateTimeFormatter for dd.MM.yyyy HH:mm:ss
+ * - patternColumn: DateTimeParser.parseColumn() of the same values - format is detected
+ * 
+ * Run with "gradlew jmh -PjmhInclude=DateTimeParserBenchmark".
+ *
+ * @author thomas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateTimeParserBenchmark {
+    private final static DateTimeFormatter PATTERN = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
+    
+    @Param({"1000", "100000"})
+    private int valueCount;
+    
+    private List<String> isoValues;
+    private List<String> patternValues;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(4711);
+        isoValues = new ArrayList<>();
+        patternValues = new ArrayList<>();
+        for (int i = 0; i < valueCount; i++) {
+            final LocalDateTime value = LocalDateTime.of(2000 + random.nextInt(20), 1 + random.nextInt(12), 1 + random.nextInt(28), 
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            isoValues.add(value.toString());
+            patternValues.add(value.format(PATTERN));
+        }
+    }
+
+    @Benchmark
+    public List<LocalDateTime> isoJdk() {
+        final List<LocalDateTime> result = new ArrayList<>(isoValues.size());
+        for (String value : isoValues) {
+            result.add(LocalDateTime.parse(value));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<LocalDateTime> isoColumn() {
+        return new DateTimeParser<>(LocalDateTime.class).parseColumn(isoValues, null, null);
+    }
+
+    @Benchmark
+    public List<LocalDateTime> patternJdk() {
+        final List<LocalDateTime> result = new ArrayList<>(patternValues.size());
+        for (String value : patternValues) {
+            result.add(LocalDateTime.parse(value, PATTERN));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<LocalDateTime> patternColumn() {
+        return new DateTimeParser<>(LocalDateTime.class).parseColumn(patternValues, null, null);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.doundo.DoUndoActionList;
+
+/**
+ * Undo & redo of a large DoUndoActionList - flat and nested to depth levels.
+ *
+ * Run with "gradlew jmh -PjmhInclude=DoUndoActionListBenchmark" - gc.alloc.rate.norm should be ~0 bytes per operation.
+ *
+ * @author thomas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoUndoActionListBenchmark {
+    @Param({"10000"})
+    private int actionCount;
+
+    @Param({"true", "false"})
+    private boolean reverseOrder;
+
+    @Param({"1", "10", "100"})
+    private int depth;
+
+    private DoUndoActionList actionList;
+    private DoUndoActionList nestedList;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        actionList = new DoUndoActionList(reverseOrder, BenchmarkActions.getNopActions(actionCount));
+        actionList.doAction();
+        
+        // same number of actions, but spread over nested lists
+        nestedList = BenchmarkActions.getNestedActionList(depth, actionCount / depth);
+        nestedList.doAction();
+    }
+
+    @Benchmark
+    public boolean undoDo() {
+        return actionList.undoAction() && actionList.doAction();
+    }
+
+    @Benchmark
+    public boolean nestedUndoDo() {
+        return nestedList.undoAction() && nestedList.doAction();
+    }
+}
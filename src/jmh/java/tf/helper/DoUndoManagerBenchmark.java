@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.doundo.DoUndoHandle;
+import tf.helper.doundo.DoUndoManager;
+
+/**
+ * Multi-threaded access to DoUndoManager for keyCount keys: every thread does singleUndo() & singleDo() for "its" key.
+ * 
+ * Compares the varargs API with DoUndoHandle. With keyCount = 1 all threads fight for the same key.
+ * 
+ * Run with "gradlew jmh -PjmhInclude=DoUndoManagerBenchmark".
+ *
+ * @author thomas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DoUndoManagerBenchmark {
+    private final static int ACTIONS_PER_KEY = 100;
+    private final static String KEY_PREFIX = "Benchmark_";
+    
+    @Param({"1", "64"})
+    private int keyCount;
+    
+    // which key a thread uses
+    @State(Scope.Thread)
+    public static class ThreadKey {
+        private static int nextIndex = 0;
+        
+        private String key;
+        private DoUndoHandle handle;
+        
+        @Setup(Level.Trial)
+        public void setUp(final DoUndoManagerBenchmark benchmark) {
+            synchronized (ThreadKey.class) {
+                key = KEY_PREFIX + (nextIndex++ % benchmark.keyCount);
+            }
+            handle = DoUndoManager.getInstance().getHandle(key);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < keyCount; i++) {
+            DoUndoManager.getInstance().addDoneActions(BenchmarkActions.getNopActions(ACTIONS_PER_KEY), KEY_PREFIX + i);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DoUndoManager.getInstance().clearAll();
+    }
+
+    @Benchmark
+    public boolean varargsUndoDo(final ThreadKey threadKey) {
+        // other threads might have undone the last action for the key in the meantime - so don't care for the result of the undo
+        DoUndoManager.getInstance().singleUndo(threadKey.key);
+        return DoUndoManager.getInstance().singleDo(threadKey.key);
+    }
+
+    @Benchmark
+    public boolean handleUndoDo(final ThreadKey threadKey) {
+        threadKey.handle.singleUndo();
+        return threadKey.handle.singleDo();
+    }
+    
+    @Benchmark
+    public int handleStackSize(final ThreadKey threadKey) {
+        return threadKey.handle.getUndoStackSize();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.doundo.BoundedDoUndoStack;
+import tf.helper.doundo.DoUndoStack;
+import tf.helper.doundo.IDoUndoAction;
+
+/**
+ * DoUndoStack with stackSize actions:
+ * 
+ * - push: addDoneAction() to a BoundedDoUndoStack of stackSize - so that the stack doesn't grow during the benchmark
+ * - singleUndoDo: latency of singleUndo() & singleDo() of the top action
+ * - rollBackForward: rollBack() & rollForward() of all actions
+ * 
+ * Run with "gradlew jmh -PjmhInclude=DoUndoStackBenchmark".
+ *
+ * @author thomas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoUndoStackBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int stackSize;
+    
+    private DoUndoStack stack;
+    private BoundedDoUndoStack boundedStack;
+    private IDoUndoAction action;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stack = new DoUndoStack(BenchmarkActions.getNopActions(stackSize));
+        
+        boundedStack = new BoundedDoUndoStack(stackSize);
+        boundedStack.addDoneActions(BenchmarkActions.getNopActions(stackSize));
+        
+        action = new BenchmarkActions.NopAction();
+        action.doAction();
+    }
+
+    @Benchmark
+    public boolean push() {
+        // oldest action is removed to make room
+        return boundedStack.addDoneAction(action);
+    }
+
+    @Benchmark
+    public boolean singleUndoDo() {
+        return stack.singleUndo() && stack.singleDo();
+    }
+
+    @Benchmark
+    public boolean rollBackForward() {
+        return stack.rollBack() && stack.rollForward();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.general.GeneralParser;
+import tf.helper.general.ParseStatus;
+
+/**
+ * Parsing a row of strings into a bean:
+ * 
+ * - rowParser: parser generated by GeneralParser.getRowParser()
+ * - reflective: setters found once, then Method.invoke() with GeneralParser.parse() per value - what callers had to do before
+ * 
+ * Parsing numbers from a slice of a line:
+ * 
+ * - parseIntSlice / parseDoubleSlice: GeneralParser.parseInt() & parseDouble() with offset & length - gc.alloc.rate.norm should be 0
+ * - parseIntString / parseDoubleString: substring() & Integer.parseInt() / Double.parseDouble()
+ * 
+ * Run with "gradlew jmh -PjmhInclude=GeneralParserBenchmark".
+ *
+ * @author thomas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneralParserBenchmark {
+    private final static String[] COLUMNS = {"id", "name", "value", "date", "active"};
+    private final static String[] ROW = {"4711", "Some name", "3.1415", "2016-04-01", "true"};
+    private final static String LINE = "4711;Some name;3.1415;2016-04-01;true";
+    
+    public static class Bean {
+        private long id;
+        private String name;
+        private double value;
+        private LocalDate date;
+        private boolean active;
+
+        public void setId(final long id) {
+            this.id = id;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public void setValue(final double value) {
+            this.value = value;
+        }
+
+        public void setDate(final LocalDate date) {
+            this.date = date;
+        }
+
+        public void setActive(final boolean active) {
+            this.active = active;
+        }
+    }
+    
+    private Function<String[], Bean> rowParser;
+    private Method[] setters;
+    private final ParseStatus status = new ParseStatus();
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+        rowParser = GeneralParser.getRowParser(Bean.class, COLUMNS);
+        
+        setters = new Method[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            final String name = "set" + COLUMNS[i].substring(0, 1).toUpperCase() + COLUMNS[i].substring(1);
+            for (Method method : Bean.class.getMethods()) {
+                if (method.getName().equals(name)) {
+                    setters[i] = method;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Bean rowParser() {
+        return rowParser.apply(ROW);
+    }
+
+    @Benchmark
+    public Bean reflective() throws ReflectiveOperationException {
+        final Bean result = Bean.class.getConstructor().newInstance();
+        for (int i = 0; i < setters.length; i++) {
+            setters[i].invoke(result, GeneralParser.parse(ROW[i], setters[i].getParameterTypes()[0]));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int parseIntSlice() {
+        return GeneralParser.parseInt(LINE, 0, 4, status);
+    }
+
+    @Benchmark
+    public int parseIntString() {
+        return Integer.parseInt(LINE.substring(0, 4));
+    }
+
+    @Benchmark
+    public double parseDoubleSlice() {
+        return GeneralParser.parseDouble(LINE, 15, 6, status);
+    }
+
+    @Benchmark
+    public double parseDoubleString() {
+        return Double.parseDouble(LINE.substring(15, 21));
+    }
+}
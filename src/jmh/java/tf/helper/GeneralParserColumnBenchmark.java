@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.general.GeneralParser;
+import tf.helper.general.ParseStatus;
+
+/**
+ * Parsing a column of valueCount doubles:
+ * 
+ * - perValue: GeneralParser.parse() for each value - what callers had to do before
+ * - column: GeneralParser.parseDoubleColumn() in the calling thread
+ * - columnParallel: GeneralParser.parseDoubleColumn() on the common pool
+ * - delimited / delimitedParallel: same from a '\n' delimited column without a String per value
+ * 
+ * Run with "gradlew jmh -PjmhInclude=GeneralParserColumnBenchmark".
+ *
+ * @author thomas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneralParserColumnBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int valueCount;
+    
+    private List<String> values;
+    private CharSequence chars;
+    private final ParseStatus status = new ParseStatus();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(4711);
+        values = new ArrayList<>();
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < valueCount; i++) {
+            final String value = Double.toString(Math.round(random.nextDouble() * 1000000.0) / 1000.0);
+            values.add(value);
+            builder.append(value).append('\n');
+        }
+        chars = builder.toString();
+    }
+
+    @Benchmark
+    public double[] perValue() {
+        final double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = GeneralParser.parse(values.get(i), double.class);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double[] column() {
+        return GeneralParser.parseDoubleColumn(values, null, status);
+    }
+
+    @Benchmark
+    public double[] columnParallel() {
+        return GeneralParser.parseDoubleColumn(values, ForkJoinPool.commonPool(), status);
+    }
+
+    @Benchmark
+    public double[] delimited() {
+        return GeneralParser.parseDoubleColumn(chars, '\n', null, status);
+    }
+
+    @Benchmark
+    public double[] delimitedParallel() {
+        return GeneralParser.parseDoubleColumn(chars, '\n', ForkJoinPool.commonPool(), status);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tf.helper.doundo.AbstractDoUndoAction;
+import tf.helper.doundo.DoUndoStack;
+import tf.helper.doundo.PersistentVector;
+import tf.helper.doundo.SnapshotModel;
+
+/**
+ * Snapshot based actions on a PersistentVector vs. hand-written inverse actions on an ArrayList.
+ * 
+ * - editUndoRedo: create an action for a single change, undo & redo it
+ * - rollBackForward: undo & redo a history of HISTORY_SIZE changes
+ * 
+ * Run with "gradlew jmh -PjmhInclude=SnapshotDoUndoBenchmark" - gc.alloc.rate.norm shows the memory per action.
+ *
+ * @author thomas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotDoUndoBenchmark {
+    private final static int HISTORY_SIZE = 1000;
+    
+    @Param({"1000", "100000"})
+    private int modelSize;
+    
+    private SnapshotModel<PersistentVector<Integer>> snapshotModel;
+    private DoUndoStack snapshotStack;
+    
+    private List<Integer> inverseModel;
+    private DoUndoStack inverseStack;
+    
+    private int nextIndex = 0;
+
+    // the classic way: remember what to restore
+    private static class SetAction extends AbstractDoUndoAction {
+        private final List<Integer> myList;
+        private final int myIndex;
+        private final Integer myValue;
+        private Integer myOldValue;
+        
+        public SetAction(final List<Integer> list, final int index, final Integer value) {
+            myList = list;
+            myIndex = index;
+            myValue = value;
+        }
+
+        @Override
+        public boolean doHook() {
+            myOldValue = myList.set(myIndex, myValue);
+            return true;
+        }
+
+        @Override
+        public boolean undoHook() {
+            myList.set(myIndex, myOldValue);
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Set #" + myIndex;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        inverseModel = new ArrayList<>();
+        for (int i = 0; i < modelSize; i++) {
+            inverseModel.add(i);
+        }
+        snapshotModel = new SnapshotModel<>(PersistentVector.of(inverseModel));
+        
+        snapshotStack = new DoUndoStack();
+        inverseStack = new DoUndoStack();
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            final int index = nextIndex();
+            snapshotStack.addDoneAction(snapshotModel.change((vector) -> vector.with(index, -index), "Set #" + index));
+            
+            final SetAction action = new SetAction(inverseModel, index, -index);
+            action.doAction();
+            inverseStack.addDoneAction(action);
+        }
+    }
+    
+    private int nextIndex() {
+        nextIndex = (nextIndex + 7919) % modelSize;
+        return nextIndex;
+    }
+    
+    @Benchmark
+    public boolean snapshotEditUndoRedo() {
+        final int index = nextIndex();
+        final AbstractDoUndoAction action = snapshotModel.change((vector) -> vector.with(index, -index), "Set");
+        return action.undoAction() && action.doAction();
+    }
+    
+    @Benchmark
+    public boolean inverseEditUndoRedo() {
+        final int index = nextIndex();
+        final SetAction action = new SetAction(inverseModel, index, -index);
+        return action.doAction() && action.undoAction() && action.doAction();
+    }
+    
+    @Benchmark
+    public boolean snapshotRollBackForward() {
+        return snapshotStack.rollBack() && snapshotStack.rollForward();
+    }
+    
+    @Benchmark
+    public boolean inverseRollBackForward() {
+        return inverseStack.rollBack() && inverseStack.rollForward();
+    }
+}
@@ -30,12 +30,15 @@ import java.util.logging.Logger;
 
 /**
  * Abstract base class for actions. Implements do / undo counter and their update logic.
+ * 
+ * do / undo might be called from different threads, e.g. by DoUndoStack.singleUndoAsync(). 
+ * Therefore doAction() & undoAction() are synchronized and state & counters are visible to all threads.
  * @author thomas
  */
 public abstract class AbstractDoUndoAction implements IDoUndoAction {
-    private State state = State.NOT_DONE;
-    private int doneCount = 0;
-    private int undoneCount = 0;
+    private volatile State state = State.NOT_DONE;
+    private volatile int doneCount = 0;
+    private volatile int undoneCount = 0;
 
     @Override
     public State getState() { 
@@ -50,7 +53,7 @@ public abstract class AbstractDoUndoAction implements IDoUndoAction {
     public abstract boolean undoHook();
     
     @Override
-    public final boolean doAction() {
+    public final synchronized boolean doAction() {
         if (!canDo()) {
             return false;
         }
@@ -74,7 +77,7 @@ public abstract class AbstractDoUndoAction implements IDoUndoAction {
     }
 
     @Override
-    public final boolean undoAction() {
+    public final synchronized boolean undoAction() {
         if (!canUndo()) {
             return false;
         }
@@ -131,6 +134,13 @@ public abstract class AbstractDoUndoAction implements IDoUndoAction {
         return getStateFromCounter();
     }
     
+    // TFE, 20261018: state & counters as stored in a DoUndoJournal - newer than the ones of the encoded action
+    final synchronized void restoreState(final State newState, final int newDoneCount, final int newUndoneCount) {
+        state = newState;
+        doneCount = newDoneCount;
+        undoneCount = newUndoneCount;
+    }
+    
     // maybe action has been done "outside" of our tracking - e.g. if a DoUndoActionList
     protected final void setDoneCount(final int count) {
         doneCount = count;
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+
+/**
+ * What DoUndoStack & CompactDoUndoStack have in common: everything that doesn't depend on how the actions are stored.
+ * 
+ * Change notification & batches, merge window, metrics, rollback & rollforward, async calls, selective undo and descriptions.
+ * Subclasses store the actions in two IActionStacks and move them between those in undoActionAt() & doTopAction().
+ * 
+ * Stack changes are done under lock, actions are run without holding the lock, so other threads can check the stack in the meantime.
+ * Only selectiveUndo() runs its actions while holding the lock - all of them need to be undone in one go.
+ * @author thomas
+ */
+public abstract class AbstractDoUndoStack implements IDoUndoStack {
+    public final static long NO_MERGE = 0;
+    
+    private final IntegerProperty changeCountProperty = new SimpleIntegerProperty(0);
+    private final ChangeCountNotifier changeCountNotifier = new ChangeCountNotifier(changeCountProperty);
+    
+    private long myMergeWindowNanos = NO_MERGE;
+    // when the last action has been added and how the undo stack looked afterwards - any other change ends the chance to merge
+    private long lastAddedNanos = 0;
+    private int lastAddedModCount = -1;
+    
+    // TFE, 20261018: descriptions are cached - valid as long as the stack hasn't changed
+    private String doDescription = null;
+    private int doDescriptionModCount = 0;
+    private String undoDescription = null;
+    private int undoDescriptionModCount = 0;
+    
+    // TFE, 20261018: optional metrics - null means no overhead besides the check
+    private volatile IDoUndoMetricsListener myMetricsListener = null;
+    private volatile String myMetricsKey = null;
+    
+    private Executor myExecutor = null;
+    // async calls are chained to this one
+    private CompletableFuture<Boolean> lastAsync = CompletableFuture.completedFuture(true);
+    
+    abstract IActionStack getDoStack();
+    abstract IActionStack getUndoStack();
+    
+    // move the action at position of the undo stack (0 = top) to the do stack and undo it
+    // returns false without changing the stack if it can't be undone
+    abstract boolean undoActionAt(final int position);
+    // move the top action of the do stack to the undo stack and do it
+    // returns false without changing the stack if it can't be done
+    abstract boolean doTopAction();
+    
+    // memory used for the history
+    abstract public long getEstimatedSize();
+    
+    void notifyChange() {
+        changeCountNotifier.notifyChange();
+    }
+    
+    @Override
+    public synchronized boolean setMergeWindow(final long millis, String... key) {
+        myMergeWindowNanos = Math.max(millis, NO_MERGE) * 1000000L;
+        return true;
+    }
+    
+    public synchronized long getMergeWindow() {
+        return myMergeWindowNanos / 1000000L;
+    }
+    
+    // can an action added now be merged with the top of the undo stack?
+    // only if it has been added last, within the merge window and nothing has changed the undo stack since
+    synchronized boolean isMergeCandidate(final long nanos) {
+        return myMergeWindowNanos > NO_MERGE && !getUndoStack().isEmpty() && 
+                lastAddedModCount == getUndoStack().getModCount() && nanos - lastAddedNanos <= myMergeWindowNanos;
+    }
+    
+    // to be called once an action has been added to the undo stack
+    synchronized void setLastAdded(final long nanos) {
+        lastAddedNanos = nanos;
+        lastAddedModCount = getUndoStack().getModCount();
+    }
+    
+    // key is passed on to the listener to identify the stack, e.g. by DoUndoManager
+    public synchronized void setMetricsListener(final IDoUndoMetricsListener listener, final String key) {
+        myMetricsKey = key;
+        myMetricsListener = listener;
+    }
+    
+    public IDoUndoMetricsListener getMetricsListener() {
+        return myMetricsListener;
+    }
+    
+    String getMetricsKey() {
+        return myMetricsKey;
+    }
+    
+    @Override
+    public synchronized boolean clear(String... key) {
+        getDoStack().clear();
+        getUndoStack().clear();
+        
+        final IDoUndoMetricsListener listener = myMetricsListener;
+        if (listener != null) {
+            listener.stackCleared(myMetricsKey);
+        }
+        
+        changeCountNotifier.notifyChange();
+        return true;
+    }
+
+    @Override
+    public boolean clearAll() {
+        return clear();
+    }
+    
+    @Override
+    public synchronized boolean canDo(String... key) {
+        return !getDoStack().isEmpty();
+    }
+    
+    @Override
+    public synchronized boolean canUndo(String... key) {
+        return !getUndoStack().isEmpty();
+    }
+    
+    @Override
+    public synchronized int getDoStackSize(String... key) {
+        return getDoStack().size();
+    }
+    
+    @Override
+    public synchronized int getUndoStackSize(String... key) {
+        return getUndoStack().size();
+    }
+
+    // not synchronized: check & move are done under lock in undoActionAt(), the action itself is run without
+    @Override
+    public boolean singleUndo(String... key) {
+        if (!canUndo()) {
+            return false;
+        }
+
+        changeCountNotifier.notifyChange();
+        return undoActionAt(0);
+    }
+    
+    // run the undo of an action that has been moved already - and report it
+    boolean runUndo(final IDoUndoAction action) {
+        final IDoUndoMetricsListener listener = myMetricsListener;
+        final long start = (listener != null) ? System.nanoTime() : 0;
+
+        boolean result;
+        try {
+            result = action.undoAction();
+        } catch (Exception ex) {
+            Logger.getLogger(AbstractDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+            result = false;
+        }
+        
+        if (listener != null) {
+            listener.actionUndone(myMetricsKey, action, result, System.nanoTime() - start);
+        }
+        
+        return result;
+    }
+
+    @Override
+    public boolean singleDo(String... key) {
+        if (!canDo()) {
+            return false;
+        }
+        
+        changeCountNotifier.notifyChange();
+        return doTopAction();
+    }
+    
+    // run the do of an action that has been moved already - and report it
+    boolean runDo(final IDoUndoAction action) {
+        final IDoUndoMetricsListener listener = myMetricsListener;
+        final long start = (listener != null) ? System.nanoTime() : 0;
+
+        boolean result;
+        try {
+            result = action.doAction();
+        } catch (Exception ex) {
+            Logger.getLogger(AbstractDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+            result = false;
+        }
+        
+        if (listener != null) {
+            listener.actionDone(myMetricsKey, action, result, System.nanoTime() - start);
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public boolean rollBack(String... key) {
+        if (!canUndo()) {
+            return false;
+        }
+
+        final boolean result = rollBackImpl();
+        
+        changeCountNotifier.notifyChange();
+        return result;
+    }
+    private boolean rollBackImpl() {
+        boolean result = true;
+        while (canUndo()) {
+            if (!undoActionAt(0)) {
+                result = false;
+                break;
+            }
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public boolean rollForward(String... key) {
+        if (!canDo()) {
+            return false;
+        }
+
+        final boolean result = rollForwardImpl();
+        
+        changeCountNotifier.notifyChange();
+        return result;
+    }
+    private boolean rollForwardImpl() {
+        boolean result = true;
+        while (canDo()) {
+            if (!doTopAction()) {
+                result = false;
+                break;
+            }
+        }
+        
+        return result;
+    }
+    
+    public synchronized Executor getExecutor() {
+        if (myExecutor != null) {
+            return myExecutor;
+        } else {
+            return DoUndoExecutor.getDefaultExecutor();
+        }
+    }
+    
+    // null to use DoUndoExecutor.getDefaultExecutor()
+    public synchronized void setExecutor(final Executor executor) {
+        myExecutor = executor;
+    }
+    
+    public synchronized boolean isAsyncPending() {
+        return !lastAsync.isDone();
+    }
+    
+    // TFE, 20261018: the only one that runs its actions holding the lock - the dependent actions need to be undone in one go
+    @Override
+    public synchronized boolean selectiveUndo(final int position, String... key) {
+        final IActionStack undoStack = getUndoStack();
+        final List<Integer> indices = getDependentIndices(position);
+        if (indices.isEmpty()) {
+            return false;
+        }
+        for (int index : indices) {
+            if (!undoStack.canUndo(index)) {
+                // can't currently undo all of them, so don't change stack
+                return false;
+            }
+        }
+
+        changeCountNotifier.notifyChange();
+        // newest first - removing an action doesn't change the indices of the older ones
+        // same as for rollBack(): stop at the first failing action
+        for (int i = indices.size() - 1; i >= 0; i--) {
+            if (!undoActionAt(undoStack.size() - 1 - indices.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized List<Integer> getSelectiveUndoPositions(final int position, String... key) {
+        final List<Integer> indices = getDependentIndices(position);
+        
+        final List<Integer> result = new ArrayList<>(indices.size());
+        for (int i = indices.size() - 1; i >= 0; i--) {
+            result.add(getUndoStack().size() - 1 - indices.get(i));
+        }
+        return result;
+    }
+    
+    // indices in the undo stack of the action at position and all newer ones that depend on it, oldest first
+    // an action depends on the ones before if it reads or writes anything they have written
+    private List<Integer> getDependentIndices(final int position) {
+        final IActionStack undoStack = getUndoStack();
+        if (position < 0 || position >= undoStack.size()) {
+            return Collections.emptyList();
+        }
+        
+        final List<Integer> result = new ArrayList<>();
+        final int start = undoStack.size() - 1 - position;
+        result.add(start);
+        
+        // everything written by the actions found so far
+        final Set<Object> written = new HashSet<>();
+        boolean writtenAll = addWriteSet(undoStack.getWriteSet(start), written);
+        for (int i = start + 1; i < undoStack.size(); i++) {
+            if (writtenAll || dependsOn(undoStack.getReadSet(i), undoStack.getWriteSet(i), written)) {
+                result.add(i);
+                writtenAll = addWriteSet(undoStack.getWriteSet(i), written) || writtenAll;
+            }
+        }
+        
+        return result;
+    }
+    private static boolean addWriteSet(final Set<Object> writeSet, final Set<Object> written) {
+        if (writeSet == null) {
+            return true;
+        }
+        written.addAll(writeSet);
+        return false;
+    }
+    private static boolean dependsOn(final Set<Object> readSet, final Set<Object> writeSet, final Set<Object> written) {
+        if (written.isEmpty()) {
+            return false;
+        }
+        
+        if (readSet == null || writeSet == null) {
+            return true;
+        }
+        return intersects(readSet, written) || intersects(writeSet, written);
+    }
+    private static boolean intersects(final Set<Object> set, final Set<Object> written) {
+        for (Object object : set) {
+            if (written.contains(object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // run the operation on the executor after all previous async operations have finished
+    private synchronized CompletableFuture<Boolean> runAsync(final Supplier<Boolean> operation) {
+        // failure of a previous operation shouldn't stop the following ones
+        lastAsync = lastAsync.handle((result, ex) -> result).thenApplyAsync((previous) -> {
+            final boolean result = operation.get();
+            // notify after the fact - we're running in parallel to everyone else
+            changeCountNotifier.notifyChange();
+            return result;
+        }, getExecutor());
+        return lastAsync;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> singleUndoAsync(String... key) {
+        return runAsync(() -> undoActionAt(0));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> singleDoAsync(String... key) {
+        return runAsync(() -> doTopAction());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> rollBackAsync(String... key) {
+        return runAsync(() -> canUndo() && rollBackImpl());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> rollForwardAsync(String... key) {
+        return runAsync(() -> canDo() && rollForwardImpl());
+    }
+    
+    @Override
+    public IntegerProperty changeCountProperty() {
+        return changeCountProperty;
+    }
+    
+    @Override
+    public boolean beginBatch(String... key) {
+        changeCountNotifier.beginBatch();
+        return true;
+    }
+    
+    @Override
+    public boolean commitBatch(String... key) {
+        return changeCountNotifier.commitBatch();
+    }
+    
+    // update changeCountProperty at most once per FX pulse
+    public void setNotifyOncePerPulse(final boolean value) {
+        changeCountNotifier.setOncePerPulse(value);
+    }
+
+    @Override
+    public synchronized String getActionDescription(String... key) {
+        final String undoDescription = getUndoActionDescription();
+        final String doDescription = getDoActionDescription();
+        
+        if (undoDescription.isEmpty() && doDescription.isEmpty()) {
+            return "";
+        }
+        
+        // add undo actions first
+        final StringBuilder builder = new StringBuilder(undoDescription.length() + System.lineSeparator().length() + doDescription.length());
+        builder.append(undoDescription);
+        builder.append(System.lineSeparator());
+        builder.append(doDescription);
+        return builder.toString();
+    }
+
+    @Override
+    public synchronized String getDoActionDescription(String... key) {
+        final IActionStack doStack = getDoStack();
+        if (doDescription == null || doDescriptionModCount != doStack.getModCount()) {
+            doDescription = getDescription(doStack);
+            doDescriptionModCount = doStack.getModCount();
+        }
+        return doDescription;
+    }
+
+    @Override
+    public synchronized String getUndoActionDescription(String... key) {
+        final IActionStack undoStack = getUndoStack();
+        if (undoDescription == null || undoDescriptionModCount != undoStack.getModCount()) {
+            undoDescription = getDescription(undoStack);
+            undoDescriptionModCount = undoStack.getModCount();
+        }
+        return undoDescription;
+    }
+    
+    // all descriptions from oldest to newest, separated by lineSeparator
+    private static String getDescription(final IActionStack stack) {
+        final StringBuilder builder = new StringBuilder();
+        
+        for (int i = 0; i < stack.size(); i++) {
+            if (i > 0) {
+                builder.append(System.lineSeparator());
+            }
+            builder.append(stack.getDescription(i));
+        }
+        
+        return builder.toString();
+    }
+
+    @Override
+    public synchronized List<String> getDoActionDescriptions(final int first, final int count, String... key) {
+        return getDescriptions(getDoStack(), first, count);
+    }
+
+    @Override
+    public synchronized List<String> getUndoActionDescriptions(final int first, final int count, String... key) {
+        return getDescriptions(getUndoStack(), first, count);
+    }
+    
+    // descriptions from newest to oldest, starting with the first newest
+    private static List<String> getDescriptions(final IActionStack stack, final int first, final int count) {
+        if (first < 0 || count <= 0 || first >= stack.size()) {
+            return Collections.emptyList();
+        }
+        
+        final int last = first + Math.min(count, stack.size() - first);
+        final List<String> result = new ArrayList<>(last - first);
+        for (int i = first; i < last; i++) {
+            result.add(stack.getDescription(stack.size() - 1 - i));
+        }
+        return result;
+    }
+}
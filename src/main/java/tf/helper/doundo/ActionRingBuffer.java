@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Simple ring buffer of IDoUndoAction's used as storage for do & undo stacks.
+ * Top of the stack is the newest element, bottom of the stack the oldest one.
+ * 
+ * With a capacity > 0 the buffer has a fixed size and never re-allocates - callers need to make room before pushing to a full buffer.
+ * With a capacity of UNBOUNDED the buffer doubles its size when needed.
+ * 
+ * Not synchronized - no need to pay for a monitor on every push & pop as with java.util.Stack.
+ * 
+ * Descriptions of the elements are cached once requested, see getDescription().
+ * @author thomas
+ */
+class ActionRingBuffer implements IActionStack, Iterable<IDoUndoAction> {
+    public final static int UNBOUNDED = 0;
+    private final static int INITIAL_SIZE = 16;
+    
+    private final boolean isFixedSize;
+    private IDoUndoAction[] elements;
+    // cached descriptions, same index as elements
+    private String[] descriptions;
+    // index of the bottom (oldest) element
+    private int head = 0;
+    private int size = 0;
+    // incremented on every change - allows callers to cache whatever they derive from the content
+    private int modCount = 0;
+    
+    public ActionRingBuffer() {
+        this(UNBOUNDED);
+    }
+    
+    public ActionRingBuffer(final int capacity) {
+        isFixedSize = (capacity > 0);
+        elements = new IDoUndoAction[isFixedSize ? capacity : INITIAL_SIZE];
+        descriptions = new String[elements.length];
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public boolean isFull() {
+        return isFixedSize && size == elements.length;
+    }
+    
+    public int capacity() {
+        return isFixedSize ? elements.length : UNBOUNDED;
+    }
+    
+    @Override
+    public int getModCount() {
+        return modCount;
+    }
+    
+    public void push(final IDoUndoAction action) {
+        if (size == elements.length) {
+            if (isFixedSize) {
+                throw new IllegalStateException("ActionRingBuffer is full: " + elements.length);
+            }
+            grow();
+        }
+        
+        elements[index(size)] = action;
+        size++;
+        modCount++;
+    }
+    
+    public IDoUndoAction peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        return elements[index(size-1)];
+    }
+    
+    public IDoUndoAction pop() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        final int top = index(size-1);
+        final IDoUndoAction result = elements[top];
+        // don't hold on to anything we don't need anymore
+        elements[top] = null;
+        descriptions[top] = null;
+        size--;
+        modCount++;
+        
+        return result;
+    }
+    
+    // remove the bottom = oldest element
+    public IDoUndoAction removeOldest() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        final IDoUndoAction result = elements[head];
+        elements[head] = null;
+        descriptions[head] = null;
+        head = (head + 1) % elements.length;
+        size--;
+        modCount++;
+        
+        return result;
+    }
+    
+    // remove element by position, 0 = oldest, size()-1 = newest - newer elements move down by one
+    public IDoUndoAction remove(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+        
+        final IDoUndoAction result = elements[index(position)];
+        for (int i = position; i < size-1; i++) {
+            elements[index(i)] = elements[index(i+1)];
+            descriptions[index(i)] = descriptions[index(i+1)];
+        }
+        final int top = index(size-1);
+        elements[top] = null;
+        descriptions[top] = null;
+        size--;
+        modCount++;
+        
+        return result;
+    }
+    
+    // get element by position, 0 = oldest, size()-1 = newest
+    public IDoUndoAction get(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+        
+        return elements[index(position)];
+    }
+    
+    // get description of element by position, 0 = oldest, size()-1 = newest
+    // the description is only requested once from the action - later changes of it aren't seen
+    @Override
+    public String getDescription(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+        
+        final int index = index(position);
+        if (descriptions[index] == null) {
+            descriptions[index] = elements[index].getDescription();
+        }
+        return descriptions[index];
+    }
+    
+    @Override
+    public boolean canDo(final int position) {
+        return get(position).canDo();
+    }
+    
+    @Override
+    public boolean canUndo(final int position) {
+        return get(position).canUndo();
+    }
+    
+    @Override
+    public Set<Object> getReadSet(final int position) {
+        return get(position).getReadSet();
+    }
+    
+    @Override
+    public Set<Object> getWriteSet(final int position) {
+        return get(position).getWriteSet();
+    }
+    
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            elements[index(i)] = null;
+            descriptions[index(i)] = null;
+        }
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+    
+    private int index(final int position) {
+        return (head + position) % elements.length;
+    }
+
+    private void grow() {
+        final IDoUndoAction[] newElements = new IDoUndoAction[elements.length * 2];
+        final String[] newDescriptions = new String[elements.length * 2];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[index(i)];
+            newDescriptions[i] = descriptions[index(i)];
+        }
+        elements = newElements;
+        descriptions = newDescriptions;
+        head = 0;
+    }
+
+    // iterates from oldest to newest - same as iteration over java.util.Stack
+    @Override
+    public Iterator<IDoUndoAction> iterator() {
+        return new Iterator<IDoUndoAction>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public IDoUndoAction next() {
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                return elements[index(position++)];
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+/**
+ * DoUndoStack with limited history.
+ * 
+ * History can be limited by
+ * - max number of actions on do & undo stack
+ * - max estimated size in bytes of all actions on do & undo stack, see IDoUndoAction.getEstimatedSize()
+ * 
+ * If one of the limits is exceeded, the oldest actions of the undo stack are removed. 
+ * If that isn't sufficient (all actions have been undone) the "newest" actions on the do stack are removed.
+ * @author thomas
+ */
+public class BoundedDoUndoStack extends DoUndoStack {
+    public final static int UNLIMITED_COUNT = 0;
+    public final static long UNLIMITED_SIZE = 0;
+    
+    private final int myMaxCount;
+    private final long myMaxSize;
+    private long myEstimatedSize = 0;
+    
+    public BoundedDoUndoStack(final int maxCount) {
+        this(maxCount, UNLIMITED_SIZE);
+    }
+    
+    public BoundedDoUndoStack(final int maxCount, final long maxSize) {
+        // we can hold one more action than allowed until actionAdded() has done its job
+        super(maxCount > 0 ? maxCount + 1 : ActionRingBuffer.UNBOUNDED);
+        
+        myMaxCount = Math.max(maxCount, UNLIMITED_COUNT);
+        myMaxSize = Math.max(maxSize, UNLIMITED_SIZE);
+    }
+    
+    public int getMaxCount() {
+        return myMaxCount;
+    }
+    
+    public long getMaxSize() {
+        return myMaxSize;
+    }
+    
+    @Override
+    public synchronized long getEstimatedSize() {
+        return myEstimatedSize;
+    }
+
+    @Override
+    protected void actionAdded(final IDoUndoAction action) {
+        myEstimatedSize += action.getEstimatedSize();
+        
+        // never remove the action that has just been added
+        while (isLimitExceeded() && (getUndoStack().size() + getDoStack().size() > 1)) {
+            final IDoUndoAction removed;
+            if (getUndoStack().size() > 1) {
+                removed = getUndoStack().removeOldest();
+            } else {
+                // bottom of the do stack is the action that has been undone first - the last one a rollForward() would redo
+                removed = getDoStack().removeOldest();
+            }
+            myEstimatedSize = Math.max(0, myEstimatedSize - removed.getEstimatedSize());
+        }
+    }
+    
+    @Override
+    protected void actionRemoved(final IDoUndoAction action) {
+        myEstimatedSize = Math.max(0, myEstimatedSize - action.getEstimatedSize());
+    }
+    
+    private boolean isLimitExceeded() {
+        return (myMaxCount > UNLIMITED_COUNT && getUndoStack().size() + getDoStack().size() > myMaxCount) || 
+                (myMaxSize > UNLIMITED_SIZE && myEstimatedSize > myMaxSize);
+    }
+
+    @Override
+    public synchronized boolean clear(String... key) {
+        myEstimatedSize = 0;
+        return super.clear(key);
+    }
+}
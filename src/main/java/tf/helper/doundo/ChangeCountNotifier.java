@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.application.Platform;
+import javafx.beans.property.IntegerProperty;
+
+/**
+ * Helper to update a changeCountProperty from any thread.
+ * 
+ * Calls from the FX application thread update the property immediately.
+ * Calls from other threads are marshalled onto the FX application thread - and coalesced into one update 
+ * until the FX application thread has gotten around to it.
+ * 
+ * If no FX toolkit is running (e.g. in tests or command line tools) the property is updated immediately.
+ * 
+ * Further options to reduce the number of notifications:
+ * - batch: between beginBatch() and commitBatch() all changes are collected and notified once on the final commitBatch()
+ * - once per pulse: also changes on the FX application thread are deferred and coalesced until the next pulse
+ * @author thomas
+ */
+class ChangeCountNotifier {
+    // once we know there is no toolkit, we don't need to try every time
+    private static volatile boolean noFXToolkit = false;
+
+    private final IntegerProperty myProperty;
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
+    
+    private final AtomicInteger batchDepth = new AtomicInteger(0);
+    private final AtomicBoolean changedInBatch = new AtomicBoolean(false);
+    
+    private volatile boolean oncePerPulse = false;
+    
+    public ChangeCountNotifier(final IntegerProperty property) {
+        myProperty = property;
+    }
+    
+    public IntegerProperty getProperty() {
+        return myProperty;
+    }
+    
+    public boolean isOncePerPulse() {
+        return oncePerPulse;
+    }
+    
+    public void setOncePerPulse(final boolean value) {
+        oncePerPulse = value;
+    }
+    
+    // batches can be nested - only the outermost commit notifies
+    public void beginBatch() {
+        batchDepth.incrementAndGet();
+    }
+    
+    public boolean commitBatch() {
+        final int depth = batchDepth.decrementAndGet();
+        if (depth < 0) {
+            // commit without begin...
+            batchDepth.compareAndSet(depth, 0);
+            return false;
+        }
+        
+        if (depth == 0 && changedInBatch.getAndSet(false)) {
+            notifyChange();
+        }
+        return true;
+    }
+    
+    public boolean isInBatch() {
+        return batchDepth.get() > 0;
+    }
+    
+    public void notifyChange() {
+        if (batchDepth.get() > 0) {
+            changedInBatch.set(true);
+            // commitBatch() might have run in between and missed the flag - then it's up to us
+            if (batchDepth.get() > 0 || !changedInBatch.getAndSet(false)) {
+                return;
+            }
+        }
+        
+        if (noFXToolkit || (!oncePerPulse && Platform.isFxApplicationThread())) {
+            incrementProperty();
+            return;
+        }
+        
+        // only one update in the queue at a time
+        if (updatePending.compareAndSet(false, true)) {
+            try {
+                Platform.runLater(() -> {
+                    updatePending.set(false);
+                    incrementProperty();
+                });
+            } catch (IllegalStateException ex) {
+                // toolkit not initialized - nothing to marshall to
+                noFXToolkit = true;
+                updatePending.set(false);
+                incrementProperty();
+            }
+        }
+    }
+    
+    private void incrementProperty() {
+        // might be called from different threads if no toolkit is running
+        synchronized (myProperty) {
+            myProperty.set(myProperty.get()+1);
+        }
+    }
+}
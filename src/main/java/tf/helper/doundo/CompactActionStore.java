@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Columnar storage for do & undo stacks of a CompactDoUndoStack.
+ * Top of the stack is the newest element, bottom of the stack the oldest one.
+ * 
+ * Each action is a row in parallel primitive arrays: type, data, state, done count & undone count.
+ * No object per action, no box per stack entry: 21 bytes per action.
+ * IDoUndoAction objects can be stored as well - the column for them is only allocated once the first one is pushed.
+ * 
+ * Descriptions and read & write sets of the compact actions are requested from the ICompactActionHandler - they aren't cached.
+ * Descriptions of the IDoUndoActions are cached once requested, same as in ActionRingBuffer.
+ * 
+ * Not synchronized - same as ActionRingBuffer.
+ * @author thomas
+ */
+class CompactActionStore implements IActionStack {
+    private final static int INITIAL_SIZE = 16;
+    private final static IDoUndoAction.State[] STATES = IDoUndoAction.State.values();
+    // type + data + state + done count + undone count
+    public final static int BYTES_PER_ACTION = Integer.BYTES + Long.BYTES + Byte.BYTES + 2 * Integer.BYTES;
+    
+    private int[] types = new int[INITIAL_SIZE];
+    private long[] data = new long[INITIAL_SIZE];
+    private byte[] states = new byte[INITIAL_SIZE];
+    private int[] doneCounts = new int[INITIAL_SIZE];
+    private int[] undoneCounts = new int[INITIAL_SIZE];
+    // only allocated if needed
+    private IDoUndoAction[] actions = null;
+    // cached descriptions, same index as actions
+    private String[] descriptions = null;
+    private int size = 0;
+    // incremented on every change - allows callers to cache whatever they derive from the content
+    private int modCount = 0;
+    
+    private final ICompactActionHandler myHandler;
+    
+    public CompactActionStore(final ICompactActionHandler handler) {
+        myHandler = handler;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    @Override
+    public int getModCount() {
+        return modCount;
+    }
+    
+    public void push(final int type, final long value, final IDoUndoAction.State state, final int doneCount, final int undoneCount) {
+        if (size == types.length) {
+            grow();
+        }
+        
+        types[size] = type;
+        data[size] = value;
+        states[size] = (byte) state.ordinal();
+        doneCounts[size] = doneCount;
+        undoneCounts[size] = undoneCount;
+        if (actions != null) {
+            actions[size] = null;
+            descriptions[size] = null;
+        }
+        size++;
+        modCount++;
+    }
+    
+    public void push(final IDoUndoAction action) {
+        if (size == types.length) {
+            grow();
+        }
+        if (actions == null) {
+            actions = new IDoUndoAction[types.length];
+            descriptions = new String[types.length];
+        }
+
+        // state & counters are kept by the action itself
+        types[size] = 0;
+        data[size] = 0;
+        actions[size] = action;
+        descriptions[size] = null;
+        size++;
+        modCount++;
+    }
+    
+    // move the element at position to the top of the other store - newer elements move down by one
+    public void moveTo(final int position, final CompactActionStore other) {
+        checkPosition(position);
+        
+        final IDoUndoAction action = getAction(position);
+        if (action != null) {
+            other.push(action);
+        } else {
+            other.push(types[position], data[position], STATES[states[position]], doneCounts[position], undoneCounts[position]);
+        }
+        remove(position);
+    }
+    
+    // remove the top element - use getters before to see what it has been
+    public void pop() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        
+        remove(size-1);
+    }
+    
+    private void remove(final int position) {
+        final int newer = size-1 - position;
+        if (newer > 0) {
+            System.arraycopy(types, position+1, types, position, newer);
+            System.arraycopy(data, position+1, data, position, newer);
+            System.arraycopy(states, position+1, states, position, newer);
+            System.arraycopy(doneCounts, position+1, doneCounts, position, newer);
+            System.arraycopy(undoneCounts, position+1, undoneCounts, position, newer);
+            if (actions != null) {
+                System.arraycopy(actions, position+1, actions, position, newer);
+                System.arraycopy(descriptions, position+1, descriptions, position, newer);
+            }
+        }
+        if (actions != null) {
+            actions[size-1] = null;
+            descriptions[size-1] = null;
+        }
+        size--;
+        modCount++;
+    }
+    
+    // position: 0 = oldest, size()-1 = newest
+    public int getType(final int position) {
+        checkPosition(position);
+        return types[position];
+    }
+    
+    public long getData(final int position) {
+        checkPosition(position);
+        return data[position];
+    }
+    
+    public IDoUndoAction.State getState(final int position) {
+        checkPosition(position);
+        return STATES[states[position]];
+    }
+    
+    public int getDoneCount(final int position) {
+        checkPosition(position);
+        return doneCounts[position];
+    }
+    
+    public int getUndoneCount(final int position) {
+        checkPosition(position);
+        return undoneCounts[position];
+    }
+    
+    // null for compact actions
+    public IDoUndoAction getAction(final int position) {
+        checkPosition(position);
+        return (actions != null) ? actions[position] : null;
+    }
+    
+    @Override
+    public String getDescription(final int position) {
+        final IDoUndoAction action = getAction(position);
+        if (action == null) {
+            return myHandler.getDescription(types[position], data[position]);
+        }
+        
+        if (descriptions[position] == null) {
+            descriptions[position] = action.getDescription();
+        }
+        return descriptions[position];
+    }
+    
+    // same as IDoUndoAction.canDo() for the compact actions
+    @Override
+    public boolean canDo(final int position) {
+        final IDoUndoAction action = getAction(position);
+        return (action != null) ? action.canDo() : !getState(position).isStuck();
+    }
+    
+    @Override
+    public boolean canUndo(final int position) {
+        final IDoUndoAction action = getAction(position);
+        return (action != null) ? action.canUndo() : !getState(position).isStuck();
+    }
+    
+    @Override
+    public Set<Object> getReadSet(final int position) {
+        final IDoUndoAction action = getAction(position);
+        return (action != null) ? action.getReadSet() : myHandler.getReadSet(types[position], data[position]);
+    }
+    
+    @Override
+    public Set<Object> getWriteSet(final int position) {
+        final IDoUndoAction action = getAction(position);
+        return (action != null) ? action.getWriteSet() : myHandler.getWriteSet(types[position], data[position]);
+    }
+    
+    public void setState(final int position, final IDoUndoAction.State state, final int doneCount, final int undoneCount) {
+        checkPosition(position);
+        states[position] = (byte) state.ordinal();
+        doneCounts[position] = doneCount;
+        undoneCounts[position] = undoneCount;
+    }
+    
+    @Override
+    public void clear() {
+        if (actions != null) {
+            // don't hold on to anything we don't need anymore
+            Arrays.fill(actions, 0, size, null);
+            Arrays.fill(descriptions, 0, size, null);
+        }
+        size = 0;
+        modCount++;
+    }
+    
+    // memory used by the columns - not counting the IDoUndoAction objects
+    public long getEstimatedSize() {
+        return (long) types.length * BYTES_PER_ACTION + ((actions != null) ? 2L * actions.length * Integer.BYTES : 0);
+    }
+    
+    private void checkPosition(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+    }
+
+    private void grow() {
+        final int newLength = types.length * 2;
+        types = Arrays.copyOf(types, newLength);
+        data = Arrays.copyOf(data, newLength);
+        states = Arrays.copyOf(states, newLength);
+        doneCounts = Arrays.copyOf(doneCounts, newLength);
+        undoneCounts = Arrays.copyOf(undoneCounts, newLength);
+        if (actions != null) {
+            actions = Arrays.copyOf(actions, newLength);
+            descriptions = Arrays.copyOf(descriptions, newLength);
+        }
+    }
+}
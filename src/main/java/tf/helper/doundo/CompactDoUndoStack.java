@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stack for huge histories of small actions, e.g. single cell edits of a large table.
+ * 
+ * Actions are no objects but a type and a data value that are passed to an ICompactActionHandler for do / undo / description.
+ * State & counters are kept in parallel primitive arrays instead of an AbstractDoUndoAction per action, see CompactActionStore.
+ * So a history of millions of actions needs a few bytes per action only.
+ * 
+ * IDoUndoActions can be added as well, e.g. for the occasional complex action - they are stored as objects.
+ * 
+ * Same behaviour as DoUndoStack (see AbstractDoUndoStack) - merging, read & write sets and so on are provided by the handler.
+ * The only difference: descriptions of single compact actions are not cached, only the full descriptions of do & undo stack.
+ * Use with DoUndoManager via setStackSupplier().
+ * @author thomas
+ */
+public class CompactDoUndoStack extends AbstractDoUndoStack {
+    private final ICompactActionHandler myHandler;
+    
+    private final CompactActionStore doStack;
+    private final CompactActionStore undoStack;
+    
+    public CompactDoUndoStack(final ICompactActionHandler handler) {
+        myHandler = handler;
+        doStack = new CompactActionStore(handler);
+        undoStack = new CompactActionStore(handler);
+    }
+    
+    public ICompactActionHandler getHandler() {
+        return myHandler;
+    }
+    
+    // add an action that has been done already
+    public synchronized boolean addDoneAction(final int type, final long data) {
+        notifyChange();
+
+        final long now = System.nanoTime();
+        long newData = data;
+        if (isMergeCandidate(now)) {
+            final int top = undoStack.size() - 1;
+            if (undoStack.getAction(top) == null && 
+                    myHandler.canMerge(type, data, undoStack.getType(top), undoStack.getData(top))) {
+                newData = myHandler.merge(type, data, undoStack.getType(top), undoStack.getData(top));
+                undoStack.pop();
+            }
+        }
+        
+        undoStack.push(type, newData, IDoUndoAction.State.DONE, 1, 0);
+        addedAction(now);
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean addDoneAction(final IDoUndoAction action, String... key) {
+        notifyChange();
+        pushDoneAction(action);
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean addDoneActions(final List<IDoUndoAction> actions, String... key) {
+        notifyChange();
+        for (IDoUndoAction action : actions) {
+            pushDoneAction(action);
+        }
+        return !actions.isEmpty();
+    }
+    
+    private void pushDoneAction(final IDoUndoAction action) {
+        final long now = System.nanoTime();
+        IDoUndoAction newAction = action;
+        
+        if (isMergeCandidate(now)) {
+            final IDoUndoAction previous = undoStack.getAction(undoStack.size() - 1);
+            if (previous != null && action.canMergeWith(previous)) {
+                final IDoUndoAction merged = action.mergeWith(previous);
+                if (merged != null) {
+                    undoStack.pop();
+                    newAction = merged;
+                }
+            }
+        }
+
+        undoStack.push(newAction);
+        addedAction(now);
+    }
+    
+    private void addedAction(final long now) {
+        final IDoUndoMetricsListener listener = getMetricsListener();
+        if (listener != null) {
+            listener.actionAdded(getMetricsKey(), getAction(undoStack, undoStack.size() - 1));
+        }
+        
+        setLastAdded(now);
+    }
+    
+    // memory used for the history - IDoUndoActions are counted via their getEstimatedSize()
+    @Override
+    public synchronized long getEstimatedSize() {
+        long result = doStack.getEstimatedSize() + undoStack.getEstimatedSize();
+        for (int i = 0; i < undoStack.size(); i++) {
+            final IDoUndoAction action = undoStack.getAction(i);
+            if (action != null) {
+                result += action.getEstimatedSize();
+            }
+        }
+        for (int i = 0; i < doStack.size(); i++) {
+            final IDoUndoAction action = doStack.getAction(i);
+            if (action != null) {
+                result += action.getEstimatedSize();
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    CompactActionStore getDoStack() {
+        return doStack;
+    }
+    
+    @Override
+    CompactActionStore getUndoStack() {
+        return undoStack;
+    }
+    
+    // state of an action on the stack, position as for getUndoActionDescriptions() - 0 = the action that would be undone next
+    public synchronized IDoUndoAction.State getUndoActionState(final int position) {
+        return getState(undoStack, undoStack.size() - 1 - position);
+    }
+    
+    public synchronized IDoUndoAction.State getDoActionState(final int position) {
+        return getState(doStack, doStack.size() - 1 - position);
+    }
+    
+    private static IDoUndoAction.State getState(final CompactActionStore stack, final int index) {
+        final IDoUndoAction action = stack.getAction(index);
+        return (action != null) ? action.getState() : stack.getState(index);
+    }
+    
+    @Override
+    boolean undoActionAt(final int position) {
+        final IDoUndoAction action;
+        final int modCount;
+        synchronized (this) {
+            final int index = undoStack.size() - 1 - position;
+            if (index < 0 || !undoStack.canUndo(index)) {
+                // can't currently undo, so don't change stack
+                return false;
+            }
+            
+            undoStack.moveTo(index, doStack);
+            action = getAction(doStack, doStack.size() - 1);
+            modCount = doStack.getModCount();
+        }
+        
+        final boolean result = runUndo(action);
+        storeState(doStack, modCount, action);
+        return result;
+    }
+    
+    @Override
+    boolean doTopAction() {
+        final IDoUndoAction action;
+        final int modCount;
+        synchronized (this) {
+            if (doStack.isEmpty() || !doStack.canDo(doStack.size() - 1)) {
+                // can't currently do, so don't change stack
+                return false;
+            }
+            
+            doStack.moveTo(doStack.size() - 1, undoStack);
+            action = getAction(undoStack, undoStack.size() - 1);
+            modCount = undoStack.getModCount();
+        }
+        
+        final boolean result = runDo(action);
+        storeState(undoStack, modCount, action);
+        return result;
+    }
+    
+    // the IDoUndoAction as stored or a temporary one for a compact action
+    private IDoUndoAction getAction(final CompactActionStore stack, final int index) {
+        final IDoUndoAction action = stack.getAction(index);
+        if (action != null) {
+            return action;
+        }
+        return new CompactAction(myHandler, stack.getType(index), stack.getData(index), 
+                stack.getState(index), stack.getDoneCount(index), stack.getUndoneCount(index));
+    }
+    
+    // write back the state of a compact action after it has been run on top of the stack
+    // if the stack has been changed in the meantime (sync & async calls mixed) we can't tell where it is anymore
+    private synchronized void storeState(final CompactActionStore stack, final int modCount, final IDoUndoAction action) {
+        if (!(action instanceof CompactAction) || stack.getModCount() != modCount) {
+            return;
+        }
+        
+        stack.setState(stack.size() - 1, action.getState(), action.doneCount(), action.undoneCount());
+    }
+    
+    // view of a compact action for the time it is done / undone - state & counters are written back to the store afterwards
+    // same logic as in AbstractDoUndoAction
+    private static class CompactAction implements IDoUndoAction {
+        private final ICompactActionHandler myHandler;
+        private final int myType;
+        private final long myData;
+        private volatile State myState;
+        private volatile int myDoneCount;
+        private volatile int myUndoneCount;
+        
+        private CompactAction(final ICompactActionHandler handler, final int type, final long data, 
+                final State state, final int doneCount, final int undoneCount) {
+            myHandler = handler;
+            myType = type;
+            myData = data;
+            myState = state;
+            myDoneCount = doneCount;
+            myUndoneCount = undoneCount;
+        }
+
+        @Override
+        public State getState() {
+            return myState;
+        }
+
+        @Override
+        public boolean doAction() {
+            boolean result;
+            try {
+                result = myHandler.doAction(myType, myData);
+            } catch (Exception ex) {
+                Logger.getLogger(CompactDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+                result = false;
+            }
+            
+            if (result) {
+                myDoneCount++;
+                myState = getStateFromCounter();
+            } else {
+                myState = getStateForFailedDo();
+            }
+            return result;
+        }
+
+        @Override
+        public boolean undoAction() {
+            boolean result;
+            try {
+                result = myHandler.undoAction(myType, myData);
+            } catch (Exception ex) {
+                Logger.getLogger(CompactDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+                result = false;
+            }
+            
+            if (result) {
+                myUndoneCount++;
+                myState = getStateFromCounter();
+            } else {
+                myState = getStateForFailedUndo();
+            }
+            return result;
+        }
+        
+        private State getStateFromCounter() {
+            if (myDoneCount > myUndoneCount) {
+                return State.DONE;
+            } else {
+                return State.NOT_DONE;
+            }
+        }
+
+        @Override
+        public int doneCount() {
+            return myDoneCount;
+        }
+
+        @Override
+        public int undoneCount() {
+            return myUndoneCount;
+        }
+
+        @Override
+        public State getStateForFailedDo() {
+            return myHandler.getStateForFailedDo(myType, myData, getStateFromCounter());
+        }
+
+        @Override
+        public State getStateForFailedUndo() {
+            return myHandler.getStateForFailedUndo(myType, myData, getStateFromCounter());
+        }
+
+        @Override
+        public String getDescription() {
+            return myHandler.getDescription(myType, myData);
+        }
+    }
+}
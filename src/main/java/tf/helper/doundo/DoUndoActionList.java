@@ -27,7 +27,14 @@ package tf.helper.doundo;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +42,11 @@ import java.util.logging.Logger;
  * Action that consists of a list of actions.
  * Handles incomplete do / undo by trying to "roll-back" the actions that have run successfully.
  * If not possible, an DoUndoException is thrown.
+ * 
+ * Optionally, independent actions can be run in parallel on a ForkJoinPool. 
+ * Actions are independent if they have different conflict keys, see IDoUndoAction.getConflictKey().
+ * Actions with the same conflict key are run in sequence. If any action has no conflict key, all actions are run in sequence.
+ * Roll-back of successful actions in case of errors is done per group of actions with the same conflict key.
  * @author thomas
  */
 public class DoUndoActionList extends AbstractDoUndoAction {
@@ -42,6 +54,12 @@ public class DoUndoActionList extends AbstractDoUndoAction {
     
     private boolean undoInReverseOrder = true;
     
+    private boolean runParallel = false;
+    private ForkJoinPool myPool = null;
+    
+    // cached description of all actions - reset whenever actions are added
+    private String myDescription = null;
+    
     public DoUndoActionList() {
         super();
     }
@@ -62,10 +80,12 @@ public class DoUndoActionList extends AbstractDoUndoAction {
 
     public void addAction(final IDoUndoAction action) {
         myActions.add(action);
+        myDescription = null;
     }
     
     public void addActions(final List<IDoUndoAction> actions) {
         myActions.addAll(actions);
+        myDescription = null;
     }
     
     public boolean undoInReverseOrder() {
@@ -76,13 +96,27 @@ public class DoUndoActionList extends AbstractDoUndoAction {
         undoInReverseOrder = order;
     }
     
+    public boolean runParallel() {
+        return runParallel;
+    }
+    
+    public void setRunParallel(final boolean parallel) {
+        runParallel = parallel;
+    }
+    
+    // null to use ForkJoinPool.commonPool()
+    public void setForkJoinPool(final ForkJoinPool pool) {
+        myPool = pool;
+    }
+    
     @Override
     public boolean canDo() {
         // I'm only the sum of my actions...
+        // TFE, 20261018: iterate by index - no iterator required
         boolean result = true;
         
-        for (IDoUndoAction action : myActions) {
-            if (!action.canDo()) {
+        for (int i = 0; i < myActions.size(); i++) {
+            if (!myActions.get(i).canDo()) {
                 result = false;
                 break;
             }
@@ -96,8 +130,8 @@ public class DoUndoActionList extends AbstractDoUndoAction {
         // I'm only the sum of my actions...
         boolean result = true;
         
-        for (IDoUndoAction action : myActions) {
-            if (!action.canUndo()) {
+        for (int i = 0; i < myActions.size(); i++) {
+            if (!myActions.get(i).canUndo()) {
                 result = false;
                 break;
             }
@@ -106,41 +140,61 @@ public class DoUndoActionList extends AbstractDoUndoAction {
         return result;
     }
     
+    // TFE, 20261018: no more copying & reversing of lists - we only walk through myActions in the required direction
+    // actions are adressed by index ranges [first, last] where first > last means "in reverse order"
+    
     @Override
     public boolean undoHook() throws DoUndoException {
+        if (myActions.isEmpty()) {
+            return true;
+        }
+
+        final List<List<IDoUndoAction>> groups = getParallelGroups();
+        if (groups != null) {
+            return parallelUndoHook(groups);
+        }
+        
+        return undoHook(myActions);
+    }
+    // undo all actions and redo the undone ones in case of errors
+    private boolean undoHook(final List<IDoUndoAction> actions) throws DoUndoException {
         boolean result = true;
         
-        final List<IDoUndoAction> undoActions = new ArrayList<>(myActions);
-        if (undoInReverseOrder) {
-            Collections.reverse(undoActions);
-        }
+        final int last = actions.size() - 1;
+        final int undoFirst = undoInReverseOrder ? last : 0;
+        final int undoLast = undoInReverseOrder ? 0 : last;
         
-        final int undoCount = internalUndo(undoActions);
-        if (undoCount < undoActions.size()) {
+        final int undoCount = internalUndo(actions, undoFirst, undoLast);
+        if (undoCount < actions.size()) {
             result = false;
             
-            // restore meaningful state - redo the previous ones
-            final List<IDoUndoAction> redoActions = undoActions.subList(0, undoCount+1);
-            if (undoInReverseOrder) {
-                Collections.reverse(redoActions);
-            }
+            // restore meaningful state - redo the previous ones, including the failed one
+            // undoFirst + step*undoCount is the failed one, redo in original order
+            final int failed = undoInReverseOrder ? last - undoCount : undoCount;
+            final int redoFirst = undoInReverseOrder ? failed : 0;
+            final int redoLast = undoInReverseOrder ? last : failed;
 
-            final int redoCount = internalDo(redoActions);
-            if (redoCount < redoActions.size()) {
+            final int redoCount = internalDo(actions, redoFirst, redoLast);
+            if (redoCount < undoCount+1) {
                 // redo has also failed - where screwed
+                final List<IDoUndoAction> undoActions = new ArrayList<>(actions);
+                if (undoInReverseOrder) {
+                    Collections.reverse(undoActions);
+                }
                 throw new DoUndoException("Partial redo for undo failed", undoActions, undoCount, redoCount);
             }
         }
         
         return result;
     }
-    // do the undos and count the number of successful ones - allows caller to do a partial redo in case of errors
-    private int internalUndo(final List<IDoUndoAction> actions) {
+    // do the undos from first to last and count the number of successful ones - allows caller to do a partial redo in case of errors
+    private static int internalUndo(final List<IDoUndoAction> actions, final int first, final int last) {
         int result = 0;
         
+        final int step = (first <= last) ? 1 : -1;
         try {
-            for (IDoUndoAction action : actions) {
-                if (action.undoAction()) {
+            for (int i = first; i != last + step; i += step) {
+                if (actions.get(i).undoAction()) {
                     result++;
                 } else {
                     break;
@@ -155,34 +209,46 @@ public class DoUndoActionList extends AbstractDoUndoAction {
     
     @Override
     public boolean doHook() throws DoUndoException {
+        if (myActions.isEmpty()) {
+            return true;
+        }
+
+        final List<List<IDoUndoAction>> groups = getParallelGroups();
+        if (groups != null) {
+            return parallelDoHook(groups);
+        }
+        
+        return doHook(myActions);
+    }
+    // do all actions and undo the done ones in case of errors
+    private boolean doHook(final List<IDoUndoAction> actions) throws DoUndoException {
         boolean result = true;
         
-        final int doCount = internalDo(myActions);
-        if (doCount < myActions.size()) {
+        final int doCount = internalDo(actions, 0, actions.size() - 1);
+        if (doCount < actions.size()) {
             result = false;
 
-            // restore meaningful state - undo the previous ones
-            final List<IDoUndoAction> undoActions = myActions.subList(0, doCount+1);
-            if (undoInReverseOrder) {
-                Collections.reverse(undoActions);
-            }
+            // restore meaningful state - undo the previous ones, including the failed one
+            final int undoFirst = undoInReverseOrder ? doCount : 0;
+            final int undoLast = undoInReverseOrder ? 0 : doCount;
 
-            final int undoCount = internalUndo(undoActions);
-            if (undoCount < undoActions.size()) {
-                // redo has also failed - where screwed
-                throw new DoUndoException("Partial undo for do failed", myActions, doCount, undoCount);
+            final int undoCount = internalUndo(actions, undoFirst, undoLast);
+            if (undoCount < doCount+1) {
+                // undo has also failed - where screwed
+                throw new DoUndoException("Partial undo for do failed", actions, doCount, undoCount);
             }
         }
         
         return result;
     }
-    // do the redos and count the number of successful ones - allows caller to do a partial undo in case of errors
-    private int internalDo(final List<IDoUndoAction> actions) {
+    // do the redos from first to last and count the number of successful ones - allows caller to do a partial undo in case of errors
+    private static int internalDo(final List<IDoUndoAction> actions, final int first, final int last) {
         int result = 0;
         
+        final int step = (first <= last) ? 1 : -1;
         try {
-            for (IDoUndoAction action : actions) {
-                if (action.doAction()) {
+            for (int i = first; i != last + step; i += step) {
+                if (actions.get(i).doAction()) {
                     result++;
                 } else {
                     break;
@@ -194,16 +260,169 @@ public class DoUndoActionList extends AbstractDoUndoAction {
         
         return result;
     }
+    
+    // groups of actions with the same conflict key - null if actions need to be run in sequence
+    private List<List<IDoUndoAction>> getParallelGroups() {
+        if (!runParallel || myActions.size() < 2) {
+            return null;
+        }
+        
+        final Map<Object, List<IDoUndoAction>> groups = new LinkedHashMap<>();
+        for (IDoUndoAction action : myActions) {
+            final Object conflictKey = action.getConflictKey();
+            if (conflictKey == null) {
+                // might conflict with anything...
+                return null;
+            }
+            groups.computeIfAbsent(conflictKey, (key) -> new ArrayList<>()).add(action);
+        }
+        
+        if (groups.size() < 2) {
+            return null;
+        }
+        return new ArrayList<>(groups.values());
+    }
+    
+    private boolean parallelDoHook(final List<List<IDoUndoAction>> groups) throws DoUndoException {
+        final int[] doCounts = runParallel(groups.size(), (index) -> {
+            final List<IDoUndoAction> group = groups.get(index);
+            return internalDo(group, 0, group.size() - 1);
+        });
+        if (isComplete(groups, doCounts)) {
+            return true;
+        }
+        
+        // restore meaningful state - undo the previous ones in each group, including the failed one
+        final int[] undoCounts = runParallel(groups.size(), (index) -> {
+            final List<IDoUndoAction> group = groups.get(index);
+            final int failed = Math.min(doCounts[index], group.size() - 1);
+            return internalUndo(group, undoInReverseOrder ? failed : 0, undoInReverseOrder ? 0 : failed);
+        });
+        for (int i = 0; i < groups.size(); i++) {
+            if (undoCounts[i] < Math.min(doCounts[i]+1, groups.get(i).size())) {
+                // undo has also failed - where screwed
+                throw new DoUndoException("Partial undo for parallel do failed", myActions, sum(doCounts), sum(undoCounts));
+            }
+        }
+        
+        return false;
+    }
+    
+    private boolean parallelUndoHook(final List<List<IDoUndoAction>> groups) throws DoUndoException {
+        final int[] undoCounts = runParallel(groups.size(), (index) -> {
+            final List<IDoUndoAction> group = groups.get(index);
+            final int last = group.size() - 1;
+            return internalUndo(group, undoInReverseOrder ? last : 0, undoInReverseOrder ? 0 : last);
+        });
+        if (isComplete(groups, undoCounts)) {
+            return true;
+        }
+        
+        // restore meaningful state - redo the previous ones in each group, including the failed one, in original order
+        final int[] redoCounts = runParallel(groups.size(), (index) -> {
+            final List<IDoUndoAction> group = groups.get(index);
+            final int undoCount = undoCounts[index];
+            final int last = group.size() - 1;
+            if (undoInReverseOrder) {
+                return internalDo(group, Math.max(last - undoCount, 0), last);
+            } else {
+                return internalDo(group, 0, Math.min(undoCount, last));
+            }
+        });
+        for (int i = 0; i < groups.size(); i++) {
+            if (redoCounts[i] < Math.min(undoCounts[i]+1, groups.get(i).size())) {
+                // redo has also failed - where screwed
+                throw new DoUndoException("Partial redo for parallel undo failed", myActions, sum(undoCounts), sum(redoCounts));
+            }
+        }
+        
+        return false;
+    }
+    
+    // run function for all group indices on the fork join pool and return the counts of successful actions per group
+    private int[] runParallel(final int groupCount, final IntUnaryOperator function) {
+        final ForkJoinPool pool = (myPool != null) ? myPool : ForkJoinPool.commonPool();
+        
+        final List<ForkJoinTask<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < groupCount; i++) {
+            final int index = i;
+            tasks.add(pool.submit(() -> function.applyAsInt(index)));
+        }
+        
+        final int[] result = new int[groupCount];
+        for (int i = 0; i < tasks.size(); i++) {
+            result[i] = tasks.get(i).join();
+        }
+        return result;
+    }
+    
+    private static boolean isComplete(final List<List<IDoUndoAction>> groups, final int[] counts) {
+        for (int i = 0; i < groups.size(); i++) {
+            if (counts[i] < groups.get(i).size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int sum(final int[] counts) {
+        int result = 0;
+        for (int count : counts) {
+            result += count;
+        }
+        return result;
+    }
 
     @Override
     public String getDescription() {
-        // concat descriptions of actions
-        String result = "";
-        for (IDoUndoAction action : myActions) {
-            if (!result.isEmpty()) {
-                result += System.lineSeparator();
+        // TFE, 20261018: build only once - and only if someone asks for it
+        if (myDescription == null) {
+            // concat descriptions of actions
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < myActions.size(); i++) {
+                if (i > 0) {
+                    builder.append(System.lineSeparator());
+                }
+                builder.append(myActions.get(i).getDescription());
+            }
+            myDescription = builder.toString();
+        }
+        return myDescription;
+    }
+    
+    @Override
+    public long getEstimatedSize() {
+        // I'm only the sum of my actions...
+        long result = 0;
+        for (int i = 0; i < myActions.size(); i++) {
+            result += myActions.get(i).getEstimatedSize();
+        }
+        return result;
+    }
+    
+    @Override
+    public Set<Object> getReadSet() {
+        final Set<Object> result = new HashSet<>();
+        for (int i = 0; i < myActions.size(); i++) {
+            final Set<Object> readSet = myActions.get(i).getReadSet();
+            if (readSet == null) {
+                // one who reads anything makes all of us read anything
+                return null;
+            }
+            result.addAll(readSet);
+        }
+        return result;
+    }
+    
+    @Override
+    public Set<Object> getWriteSet() {
+        final Set<Object> result = new HashSet<>();
+        for (int i = 0; i < myActions.size(); i++) {
+            final Set<Object> writeSet = myActions.get(i).getWriteSet();
+            if (writeSet == null) {
+                return null;
             }
-            result += action.getDescription();
+            result.addAll(writeSet);
         }
         return result;
     }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default executor for async do / undo calls.
+ * 
+ * Uses virtual threads where available (java 21+) - otherwise a cached pool of daemon threads.
+ * Can be replaced with any other executor, e.g. for tests or to limit the number of threads.
+ * @author thomas
+ */
+public class DoUndoExecutor {
+    private static volatile Executor defaultExecutor = null;
+    
+    private DoUndoExecutor() {
+        // Exists only to defeat instantiation.
+    }
+    
+    public static Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (DoUndoExecutor.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = createDefaultExecutor();
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+    
+    // null to revert to the default
+    public static void setDefaultExecutor(final Executor executor) {
+        defaultExecutor = executor;
+    }
+    
+    private static Executor createDefaultExecutor() {
+        // don't want to require java 21 for this - so lets ask politely
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            // nothing to worry about: older java version
+        } catch (Exception ex) {
+            // e.g. UnsupportedOperationException in java versions with virtual threads as preview feature
+            Logger.getLogger(DoUndoExecutor.class.getName()).log(Level.FINE, null, ex);
+        }
+        
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        return Executors.newCachedThreadPool((runnable) -> {
+            final Thread thread = new Thread(runnable, "DoUndoExecutor-" + threadCount.incrementAndGet());
+            // don't keep the application alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * Handle for the stack of a key in the DoUndoManager, see DoUndoManager.getHandle().
+ * 
+ * Same as calling the DoUndoManager with the key - but cheaper:
+ * - the key has been verified when the handle was created
+ * - the lock for the key (only needed to create the stack) has been looked up already
+ * - no varargs array is created per call
+ * - calls for non-existing stacks are only counted, see DoUndoManager.getFailureCount()
+ * 
+ * A handle stays valid after DoUndoManager.clearAll() - the stack is created again when needed.
+ * @author thomas
+ */
+public final class DoUndoHandle {
+    private final DoUndoManager myManager;
+    private final String myKey;
+    // passed on to the stack - so that we don't need a new array for every call
+    private final String[] myKeyArray;
+    private final Object myLock;
+    
+    DoUndoHandle(final DoUndoManager manager, final String key, final Object lock) {
+        myManager = manager;
+        myKey = key;
+        myKeyArray = new String[] {key};
+        myLock = lock;
+    }
+    
+    public String getKey() {
+        return myKey;
+    }
+    
+    // run function on the existing stack - defaultValue if there is no stack
+    // same as in DoUndoManager the lock for the key isn't held, the stack is synchronized itself
+    // functions must not capture anything, so that no new lambda instance is needed per call
+    private <T> T withStack(final boolean countMissing, final T defaultValue, final BiFunction<IDoUndoStack, String[], T> function) {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        if (stack == null) {
+            if (countMissing) {
+                myManager.countFailure();
+            }
+            return defaultValue;
+        }
+
+        return function.apply(stack, myKeyArray);
+    }
+    
+    // existing or new stack - only creation needs the lock for the key
+    private IDoUndoStack getOrCreateStack() {
+        synchronized (myLock) {
+            return myManager.getOrCreateStack(myKey);
+        }
+    }
+    
+    // run a do / undo function on an existing stack and notify listeners afterwards
+    private boolean changeStack(final boolean countMissing, final BiFunction<IDoUndoStack, String[], Boolean> function) {
+        final Boolean result = withStack(countMissing, null, function);
+        if (result == null) {
+            return false;
+        }
+        
+        myManager.notifyChange(myKey);
+        return result;
+    }
+
+    // run an async do / undo function on an existing stack and notify listeners after completion
+    private CompletableFuture<Boolean> changeStackAsync(final BiFunction<IDoUndoStack, String[], CompletableFuture<Boolean>> function) {
+        final CompletableFuture<Boolean> result = withStack(true, null, function);
+        if (result == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        return result.thenApply((value) -> {
+            myManager.notifyChange(myKey);
+            return value;
+        });
+    }
+    
+    public boolean addDoneAction(final IDoUndoAction action) {
+        getOrCreateStack().addDoneAction(action, myKeyArray);
+        
+        myManager.notifyChange(myKey);
+        return true;
+    }
+    
+    public boolean addDoneActions(final List<IDoUndoAction> actions) {
+        getOrCreateStack().addDoneActions(actions, myKeyArray);
+        
+        myManager.notifyChange(myKey);
+        return true;
+    }
+    
+    public boolean clear() {
+        return changeStack(false, (stack, key) -> stack.clear(key));
+    }
+    
+    public boolean canDo() {
+        return withStack(false, false, (stack, key) -> stack.canDo(key));
+    }
+    
+    public boolean canUndo() {
+        return withStack(false, false, (stack, key) -> stack.canUndo(key));
+    }
+    
+    // no function here - would require boxing of int
+    public int getDoStackSize() {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        return (stack != null) ? stack.getDoStackSize(myKeyArray) : 0;
+    }
+    
+    public int getUndoStackSize() {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        return (stack != null) ? stack.getUndoStackSize(myKeyArray) : 0;
+    }
+    
+    public boolean singleUndo() {
+        return changeStack(true, (stack, key) -> stack.singleUndo(key));
+    }
+    
+    public boolean singleDo() {
+        return changeStack(true, (stack, key) -> stack.singleDo(key));
+    }
+    
+    public boolean rollBack() {
+        return changeStack(true, (stack, key) -> stack.rollBack(key));
+    }
+    
+    public boolean rollForward() {
+        return changeStack(true, (stack, key) -> stack.rollForward(key));
+    }
+    
+    public CompletableFuture<Boolean> singleUndoAsync() {
+        return changeStackAsync((stack, key) -> stack.singleUndoAsync(key));
+    }
+    
+    public CompletableFuture<Boolean> singleDoAsync() {
+        return changeStackAsync((stack, key) -> stack.singleDoAsync(key));
+    }
+    
+    public CompletableFuture<Boolean> rollBackAsync() {
+        return changeStackAsync((stack, key) -> stack.rollBackAsync(key));
+    }
+    
+    public CompletableFuture<Boolean> rollForwardAsync() {
+        return changeStackAsync((stack, key) -> stack.rollForwardAsync(key));
+    }
+    
+    public boolean beginBatch() {
+        return myManager.beginBatch(myKeyArray);
+    }
+    
+    public boolean commitBatch() {
+        return myManager.commitBatch(myKeyArray);
+    }
+    
+    public String getActionDescription() {
+        return withStack(false, "", (stack, key) -> stack.getActionDescription(key));
+    }
+    
+    public String getDoActionDescription() {
+        return withStack(false, "", (stack, key) -> stack.getDoActionDescription(key));
+    }
+    
+    public String getUndoActionDescription() {
+        return withStack(false, "", (stack, key) -> stack.getUndoActionDescription(key));
+    }
+    
+    public List<String> getDoActionDescriptions(final int first, final int count) {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        return (stack != null) ? stack.getDoActionDescriptions(first, count, myKeyArray) : Collections.emptyList();
+    }
+    
+    public List<String> getUndoActionDescriptions(final int first, final int count) {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        return (stack != null) ? stack.getUndoActionDescriptions(first, count, myKeyArray) : Collections.emptyList();
+    }
+    
+    // no function here - would need to capture position
+    public boolean selectiveUndo(final int position) {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        if (stack == null) {
+            myManager.countFailure();
+            return false;
+        }
+        final boolean result = stack.selectiveUndo(position, myKeyArray);
+        
+        myManager.notifyChange(myKey);
+        return result;
+    }
+    
+    public List<Integer> getSelectiveUndoPositions(final int position) {
+        final IDoUndoStack stack = myManager.getStack(myKey);
+        return (stack != null) ? stack.getSelectiveUndoPositions(position, myKeyArray) : Collections.emptyList();
+    }
+}
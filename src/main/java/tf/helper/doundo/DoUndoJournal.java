@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Append-only journal of changes to a do / undo stack in a memory-mapped file.
+ * 
+ * Record layout: int length (of everything after it) | byte record type | int reference | byte[] data
+ * Records are terminated by a length of 0 - the file grows in chunks and the unused part is filled with 0.
+ * Records are adressed by their offset in the file, max file size is therefore Integer.MAX_VALUE.
+ * 
+ * Nothing is ever overwritten, except on reset() where the whole journal starts from scratch.
+ * @author thomas
+ */
+class DoUndoJournal implements Closeable {
+    public enum RecordType {
+        // new action on the undo stack, data = encoded action
+        ADD,
+        // top of undo stack has been removed, e.g. because it has been merged
+        REMOVE,
+        // top of undo stack has been moved to the do stack
+        UNDO,
+        // top of do stack has been moved to the undo stack
+        DO,
+        // new state of an action, reference = offset of its ADD record, data = encoded action
+        STATE,
+        // new state & counters of an action after do / undo, reference = offset of its ADD record, data = state + done count + undone count
+        COUNTERS;
+    }
+    private final static RecordType[] RECORD_TYPES = RecordType.values();
+    
+    public final static int NO_REFERENCE = -1;
+    
+    private final static int INITIAL_SIZE = 1 << 20;
+    // length + type + reference
+    private final static int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+
+    private final FileChannel myChannel;
+    private MappedByteBuffer myBuffer;
+    // where the next record goes
+    private int myPosition = 0;
+    
+    public DoUndoJournal(final Path path) throws IOException {
+        myChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map((int) Math.min(Math.max(INITIAL_SIZE, myChannel.size()), Integer.MAX_VALUE));
+        
+        // find the end of the existing records - a record that doesn't fit is the result of a crash while writing
+        while (myPosition + Integer.BYTES <= myBuffer.capacity()) {
+            final int length = myBuffer.getInt(myPosition);
+            if (length < HEADER_SIZE - Integer.BYTES || 
+                    (long) myPosition + Integer.BYTES + length > myBuffer.capacity() ||
+                    myBuffer.get(myPosition + Integer.BYTES) >= RECORD_TYPES.length) {
+                break;
+            }
+            myPosition += Integer.BYTES + length;
+        }
+        terminate();
+    }
+    
+    private void map(final int size) throws IOException {
+        myBuffer = myChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+    
+    private void terminate() {
+        if (myPosition + Integer.BYTES <= myBuffer.capacity()) {
+            myBuffer.putInt(myPosition, 0);
+        }
+    }
+    
+    private void ensureCapacity(final long required) throws IOException {
+        if (required <= myBuffer.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException("DoUndoJournal is full: " + myBuffer.capacity());
+        }
+        
+        map((int) Math.min(Math.max(required, 2L * myBuffer.capacity()), Integer.MAX_VALUE));
+    }
+    
+    // append a record and return its offset
+    public synchronized int append(final RecordType type, final int reference, final byte[] data) throws IOException {
+        final int dataLength = (data != null) ? data.length : 0;
+        ensureCapacity((long) myPosition + HEADER_SIZE + dataLength + Integer.BYTES);
+
+        final int result = myPosition;
+        myBuffer.put(result + Integer.BYTES, (byte) type.ordinal());
+        myBuffer.putInt(result + Integer.BYTES + Byte.BYTES, reference);
+        if (dataLength > 0) {
+            final ByteBuffer view = myBuffer.duplicate();
+            view.position(result + HEADER_SIZE);
+            view.put(data);
+        }
+        myPosition += HEADER_SIZE + dataLength;
+        terminate();
+        // length goes last - until then the old terminator marks the end of the journal
+        myBuffer.putInt(result, HEADER_SIZE - Integer.BYTES + dataLength);
+        
+        return result;
+    }
+    
+    public synchronized RecordType getType(final int offset) {
+        return RECORD_TYPES[myBuffer.get(offset + Integer.BYTES)];
+    }
+    
+    public synchronized int getReference(final int offset) {
+        return myBuffer.getInt(offset + Integer.BYTES + Byte.BYTES);
+    }
+    
+    public synchronized byte[] getData(final int offset) {
+        final byte[] result = new byte[myBuffer.getInt(offset) - (HEADER_SIZE - Integer.BYTES)];
+        
+        final ByteBuffer view = myBuffer.duplicate();
+        view.position(offset + HEADER_SIZE);
+        view.get(result);
+        
+        return result;
+    }
+    
+    // call consumer with type & offset of all records, oldest first
+    public synchronized void replay(final ObjIntConsumer<RecordType> consumer) {
+        int offset = 0;
+        while (offset < myPosition) {
+            consumer.accept(getType(offset), offset);
+            offset += Integer.BYTES + myBuffer.getInt(offset);
+        }
+    }
+    
+    public synchronized int size() {
+        return myPosition;
+    }
+    
+    public synchronized boolean isOpen() {
+        return myChannel.isOpen();
+    }
+    
+    // start from scratch
+    public synchronized void reset() {
+        myPosition = 0;
+        terminate();
+    }
+    
+    // write everything to the storage device - not only to the OS file cache
+    public synchronized void force() {
+        myBuffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        myBuffer.force();
+        myChannel.close();
+    }
+}
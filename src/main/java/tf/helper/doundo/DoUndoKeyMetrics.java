@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics for one key of the DoUndoManager, collected by DoUndoMetricsRegistry.
+ * 
+ * Stack sizes are read from the DoUndoManager when requested, everything else is counted as it happens.
+ * @author thomas
+ */
+public class DoUndoKeyMetrics implements DoUndoKeyMetricsMBean {
+    private final static double MEDIAN = 50.0;
+    private final static double PERCENTILE_99 = 99.0;
+    
+    private final DoUndoManager myManager;
+    private final String myKey;
+    
+    private final LongAdder addedCount = new LongAdder();
+    private final LongAdder clearedCount = new LongAdder();
+    private final LongAdder doFailedCount = new LongAdder();
+    private final LongAdder undoFailedCount = new LongAdder();
+    // failures by state of the action afterwards
+    private final AtomicLongArray failedStates = new AtomicLongArray(IDoUndoAction.State.values().length);
+    
+    private final LatencyHistogram doLatency = new LatencyHistogram();
+    private final LatencyHistogram undoLatency = new LatencyHistogram();
+    
+    public DoUndoKeyMetrics(final DoUndoManager manager, final String key) {
+        myManager = manager;
+        myKey = key;
+    }
+    
+    void actionAdded() {
+        addedCount.increment();
+    }
+    
+    void stackCleared() {
+        clearedCount.increment();
+    }
+    
+    void actionDone(final IDoUndoAction action, final boolean result, final long nanos) {
+        doLatency.record(nanos);
+        if (!result) {
+            doFailedCount.increment();
+            failedStates.incrementAndGet(action.getState().ordinal());
+        }
+    }
+    
+    void actionUndone(final IDoUndoAction action, final boolean result, final long nanos) {
+        undoLatency.record(nanos);
+        if (!result) {
+            undoFailedCount.increment();
+            failedStates.incrementAndGet(action.getState().ordinal());
+        }
+    }
+    
+    public LatencyHistogram getDoLatency() {
+        return doLatency;
+    }
+    
+    public LatencyHistogram getUndoLatency() {
+        return undoLatency;
+    }
+    
+    public long getFailedCount(final IDoUndoAction.State state) {
+        return failedStates.get(state.ordinal());
+    }
+
+    @Override
+    public String getKey() {
+        return myKey;
+    }
+
+    @Override
+    public int getUndoStackSize() {
+        return myManager.getHandle(myKey).getUndoStackSize();
+    }
+
+    @Override
+    public int getDoStackSize() {
+        return myManager.getHandle(myKey).getDoStackSize();
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return myManager.getEstimatedSize(myKey);
+    }
+
+    @Override
+    public long getAddedCount() {
+        return addedCount.sum();
+    }
+
+    @Override
+    public long getClearedCount() {
+        return clearedCount.sum();
+    }
+
+    @Override
+    public long getDoCount() {
+        return doLatency.getCount();
+    }
+
+    @Override
+    public long getDoFailedCount() {
+        return doFailedCount.sum();
+    }
+
+    @Override
+    public long getDoMeanNanos() {
+        return doLatency.getMean();
+    }
+
+    @Override
+    public long getDoMedianNanos() {
+        return doLatency.getPercentile(MEDIAN);
+    }
+
+    @Override
+    public long getDo99thPercentileNanos() {
+        return doLatency.getPercentile(PERCENTILE_99);
+    }
+
+    @Override
+    public long getDoMaxNanos() {
+        return doLatency.getMax();
+    }
+
+    @Override
+    public long getUndoCount() {
+        return undoLatency.getCount();
+    }
+
+    @Override
+    public long getUndoFailedCount() {
+        return undoFailedCount.sum();
+    }
+
+    @Override
+    public long getUndoMeanNanos() {
+        return undoLatency.getMean();
+    }
+
+    @Override
+    public long getUndoMedianNanos() {
+        return undoLatency.getPercentile(MEDIAN);
+    }
+
+    @Override
+    public long getUndo99thPercentileNanos() {
+        return undoLatency.getPercentile(PERCENTILE_99);
+    }
+
+    @Override
+    public long getUndoMaxNanos() {
+        return undoLatency.getMax();
+    }
+
+    @Override
+    public long getStuckInDoCount() {
+        return getFailedCount(IDoUndoAction.State.STUCK_IN_DO);
+    }
+
+    @Override
+    public long getStuckInUndoCount() {
+        return getFailedCount(IDoUndoAction.State.STUCK_IN_UNDO);
+    }
+
+    @Override
+    public void reset() {
+        addedCount.reset();
+        clearedCount.reset();
+        doFailedCount.reset();
+        undoFailedCount.reset();
+        for (int i = 0; i < failedStates.length(); i++) {
+            failedStates.set(i, 0);
+        }
+        doLatency.reset();
+        undoLatency.reset();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+/**
+ * JMX view of the metrics for one key of the DoUndoManager, see DoUndoMetricsRegistry.
+ * All latencies in nanoseconds.
+ * @author thomas
+ */
+public interface DoUndoKeyMetricsMBean {
+    abstract public String getKey();
+    
+    abstract public int getUndoStackSize();
+    abstract public int getDoStackSize();
+    // sum of IDoUndoAction.getEstimatedSize() of all actions in memory
+    abstract public long getEstimatedSize();
+    
+    abstract public long getAddedCount();
+    abstract public long getClearedCount();
+    
+    abstract public long getDoCount();
+    abstract public long getDoFailedCount();
+    abstract public long getDoMeanNanos();
+    abstract public long getDoMedianNanos();
+    abstract public long getDo99thPercentileNanos();
+    abstract public long getDoMaxNanos();
+    
+    abstract public long getUndoCount();
+    abstract public long getUndoFailedCount();
+    abstract public long getUndoMeanNanos();
+    abstract public long getUndoMedianNanos();
+    abstract public long getUndo99thPercentileNanos();
+    abstract public long getUndoMaxNanos();
+    
+    // failed do / undo by state of the action afterwards
+    abstract public long getStuckInDoCount();
+    abstract public long getStuckInUndoCount();
+    
+    abstract public void reset();
+}
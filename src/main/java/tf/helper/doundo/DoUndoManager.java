@@ -25,219 +25,510 @@
  */
 package tf.helper.doundo;
 
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 
 /**
  * Manager for multiple DoUndoStacks in parallel.
  * Holds a map of key / DoUndoStack pairs for which all DoUndoStack methods are available.
+ * 
+ * By default an unlimited DoUndoStack is used for each key. 
+ * Use setStackSupplier() / setHistoryLimit() to use a different IDoUndoStack for a key, e.g. a BoundedDoUndoStack.
+ * Use setMergeWindow() to merge consecutive actions for a key, e.g. from typing or dragging.
+ * Use setJournal() to keep the history for a key in a file, e.g. to restore it after a crash.
+ * Use setCompactHandler() for keys with huge histories of small actions, see CompactDoUndoStack.
+ * 
+ * For frequent calls use getHandle() once per key and call do / undo on the DoUndoHandle.
+ * Calls for invalid keys & non-existing stacks are counted, see getFailureCount().
+ * Use setMetricsListener() to get notified of everything that happens on the DoUndoStacks, e.g. with a DoUndoMetricsRegistry.
+ * 
+ * Can be called from any thread, e.g. from background workers that register actions:
+ * Stacks are looked up & created under a lock for their key. Locks are striped, so different keys (nearly) never contend.
+ * The stacks themselves are called without holding that lock - they are synchronized on their own.
+ * So a long rollback for one key doesn't block any other key.
+ * Updates of changeCountProperty are always done on the FX application thread, see ChangeCountNotifier.
+ * Async do / undo calls are serialized per key by the stack for the key.
+ * 
+ * A batch for a key suppresses notifications of the manager as well as of the stack for the key.
+ * TFE, 20261018: only for changes of that key - changes of other keys are notified as usual, e.g. during a bulk import in the background.
  * @author thomas
  */
 public class DoUndoManager implements IDoUndoStack {
     private final static DoUndoManager INSTANCE = new DoUndoManager();
+    
+    // needs to be a power of 2
+    private final static int LOCK_STRIPES = 64;
+    
+    private final static String JOURNAL_EXT = ".journal";
+
+    private final Map<String, IDoUndoStack> stackMap = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<? extends IDoUndoStack>> supplierMap = new ConcurrentHashMap<>();
+    private final Map<String, Long> mergeWindowMap = new ConcurrentHashMap<>();
+    private final Object[] keyLocks = new Object[LOCK_STRIPES];
+    private final Map<String, DoUndoHandle> handleMap = new ConcurrentHashMap<>();
+    
+    // calls for invalid keys & non-existing stacks
+    private final LongAdder failureCount = new LongAdder();
+    
+    private volatile IDoUndoMetricsListener metricsListener = null;
 
-    private final Map<String, DoUndoStack> stackMap = new HashMap<>();
     private final IntegerProperty changeCountProperty = new SimpleIntegerProperty(0);
+    private final ChangeCountNotifier changeCountNotifier = new ChangeCountNotifier(changeCountProperty);
+    // keys in a batch - guarded by lockFor(key)
+    private final Map<String, KeyBatch> batchMap = new ConcurrentHashMap<>();
+    
+    private static class KeyBatch {
+        // batches can be nested - only the outermost commit notifies
+        private int depth = 0;
+        private boolean changed = false;
+    }
     
     private DoUndoManager() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            keyLocks[i] = new Object();
+        }
     }
 
     public static DoUndoManager getInstance() {
         return INSTANCE;
     }
     
-    private boolean verifyKey(final boolean mustExist, final boolean nonExistMessage, String... key) {
+    // TFE, 20261018: handle for a key - no key checks & array allocations on every call, no messages for non-existing stacks
+    // there is one handle per key, it stays valid as long as the manager lives
+    public DoUndoHandle getHandle(final String key) {
+        if (key == null) {
+            failureCount.increment();
+            return null;
+        }
+        return handleMap.computeIfAbsent(key, (handleKey) -> new DoUndoHandle(this, handleKey, lockFor(handleKey)));
+    }
+    
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+    
+    void countFailure() {
+        failureCount.increment();
+    }
+    
+    // no lock needed for looking up an existing stack - only for creating one, see getOrCreateStack()
+    IDoUndoStack getStack(final String key) {
+        return stackMap.get(key);
+    }
+    
+    // notification for a change of a key - deferred to the final commitBatch() if the key is in a batch
+    void notifyChange(final String key) {
+        if (!batchMap.isEmpty()) {
+            synchronized (lockFor(key)) {
+                final KeyBatch batch = batchMap.get(key);
+                if (batch != null) {
+                    batch.changed = true;
+                    return;
+                }
+            }
+        }
+        changeCountNotifier.notifyChange();
+    }
+    
+    // set the supplier of the stack to be used for a key - null reverts to the default DoUndoStack
+    // only applies to stacks created afterwards - so call before the first action is added for the key
+    // the stacks need to be thread safe on their own, same as DoUndoStack
+    public boolean setStackSupplier(final Supplier<? extends IDoUndoStack> supplier, String... key) {
+        if (!verifyKey(key)) {
+            return false;
+        }
+        
+        if (supplier != null) {
+            supplierMap.put(key[0], supplier);
+        } else {
+            supplierMap.remove(key[0]);
+        }
+        return true;
+    }
+    
+    // limit history for a key by using a BoundedDoUndoStack - see there for the meaning of maxCount & maxSize
+    public boolean setHistoryLimit(final int maxCount, final long maxSize, String... key) {
+        return setStackSupplier(() -> new BoundedDoUndoStack(maxCount, maxSize), key);
+    }
+    
+    // keep history for a key in a journal file in the given directory by using a JournaledDoUndoStack - see there for the meaning of maxInMemory
+    // an existing journal for the key is replayed when the key is used for the first time
+    public boolean setJournal(final Path directory, final IDoUndoActionCodec codec, final int maxInMemory, String... key) {
+        if (!verifyKey(key)) {
+            return false;
+        }
+        
+        final Path path = directory.resolve(key[0].replaceAll("[^a-zA-Z0-9._-]", "_") + JOURNAL_EXT);
+        return setStackSupplier(() -> new JournaledDoUndoStack(path, codec, maxInMemory), key);
+    }
+    
+    // use a CompactDoUndoStack for a key - add its actions with addDoneAction(type, data, key)
+    public boolean setCompactHandler(final ICompactActionHandler handler, String... key) {
+        return setStackSupplier(() -> new CompactDoUndoStack(handler), key);
+    }
+    
+    // merge window is kept for the key - also applies to stacks created later on, e.g. after clearAll()
+    @Override
+    public boolean setMergeWindow(final long millis, String... key) {
+        if (!verifyKey(key)) {
+            return false;
+        }
+        
+        synchronized (lockFor(key[0])) {
+            mergeWindowMap.put(key[0], millis);
+            
+            final IDoUndoStack stack = stackMap.get(key[0]);
+            if (stack != null) {
+                stack.setMergeWindow(millis, key);
+            }
+        }
+        return true;
+    }
+    
+    // listener for all DoUndoStacks (incl. subclasses) & CompactDoUndoStacks - existing ones & those created later on, null to switch off
+    public void setMetricsListener(final IDoUndoMetricsListener listener) {
+        metricsListener = listener;
+        
+        for (String key : stackMap.keySet()) {
+            synchronized (lockFor(key)) {
+                final IDoUndoStack stack = stackMap.get(key);
+                if (stack instanceof AbstractDoUndoStack) {
+                    ((AbstractDoUndoStack) stack).setMetricsListener(listener, key);
+                }
+            }
+        }
+    }
+    
+    public IDoUndoMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+    
+    // sum of IDoUndoAction.getEstimatedSize() of all actions for a key - 0 for stacks that aren't DoUndoStacks or CompactDoUndoStacks
+    public long getEstimatedSize(String... key) {
+        return withStack(false, 0L, (stack) -> {
+            if (stack instanceof AbstractDoUndoStack) {
+                return ((AbstractDoUndoStack) stack).getEstimatedSize();
+            } else {
+                return 0L;
+            }
+        }, key);
+    }
+    
+    Object lockFor(final String key) {
+        // spread the hash a bit, same as HashMap does
+        final int hash = key.hashCode();
+        return keyLocks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+    
+    // only to be called while holding the lock for the key
+    IDoUndoStack getOrCreateStack(final String key) {
+        IDoUndoStack stack = stackMap.get(key);
+        if (stack == null) {
+            final Supplier<? extends IDoUndoStack> supplier = supplierMap.get(key);
+            if (supplier != null) {
+                stack = supplier.get();
+            } else {
+                stack = new DoUndoStack();
+            }
+            final Long mergeWindow = mergeWindowMap.get(key);
+            if (mergeWindow != null) {
+                stack.setMergeWindow(mergeWindow, key);
+            }
+            final IDoUndoMetricsListener listener = metricsListener;
+            if (listener != null && stack instanceof AbstractDoUndoStack) {
+                ((AbstractDoUndoStack) stack).setMetricsListener(listener, key);
+            }
+            stackMap.put(key, stack);
+        }
+        return stack;
+    }
+    
+    private boolean verifyKey(String... key) {
         // see http://robertmarkbramprogrammer.blogspot.com/2013/03/nulls-and-varargs.html for what to expect
         if (key == null) {
+            failureCount.increment();
             System.out.println("DoUndoManager called with null key");
             Thread.dumpStack();
             return false;
         }
         if (key.length != 1 || key[0] == null) {
+            failureCount.increment();
             System.out.println("DoUndoManager called with incorrect key array: " + key + ", " + key.length);
             Thread.dumpStack();
             return false;
         }
-        if (mustExist && !stackMap.containsKey(key[0])) {
+
+        return true;
+    }
+    
+    // run a function on an existing stack - without holding the lock for its key, the stack is synchronized itself
+    private <T> T withStack(final boolean nonExistMessage, final T defaultValue, final Function<IDoUndoStack, T> function, String... key) {
+        if (!verifyKey(key)) {
+            return defaultValue;
+        }
+        
+        final IDoUndoStack stack = stackMap.get(key[0]);
+        if (stack == null) {
             if (nonExistMessage) {
+                failureCount.increment();
                 // no message on case of canDo()... calls to avoid that the callers have to check first if we have any do/undo stack at all for a key
                 System.out.println("DoUndoManager called for non-existing key: " + key[0]);
                 Thread.dumpStack();
             }
+            return defaultValue;
+        }
+
+        return function.apply(stack);
+    }
+    
+    // existing or new stack for a key - only creation needs the lock for the key
+    private IDoUndoStack lockedGetOrCreateStack(final String key) {
+        synchronized (lockFor(key)) {
+            return getOrCreateStack(key);
+        }
+    }
+    
+    // run a do / undo function on an existing stack and notify listeners afterwards
+    private boolean changeStack(final boolean nonExistMessage, final Function<IDoUndoStack, Boolean> function, String... key) {
+        final Boolean result = withStack(nonExistMessage, null, function, key);
+        if (result == null) {
             return false;
         }
+        
+        notifyChange(key[0]);
+        return result;
+    }
 
-        return true;
+    // run an async do / undo function on an existing stack and notify listeners after completion
+    private CompletableFuture<Boolean> changeStackAsync(final Function<IDoUndoStack, CompletableFuture<Boolean>> function, String... key) {
+        final CompletableFuture<Boolean> result = withStack(true, null, function, key);
+        if (result == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        return result.thenApply((value) -> {
+            notifyChange(key[0]);
+            return value;
+        });
     }
 
     @Override
     public boolean addDoneAction(IDoUndoAction action, String... key) {
-        if (!verifyKey(false, false, key)) {
+        if (!verifyKey(key)) {
             return false;
         }
         
-        if (!stackMap.containsKey(key[0])) {
-            stackMap.put(key[0], new DoUndoStack(action));
-        } else {
-            final DoUndoStack stack = stackMap.get(key[0]);
-            stack.addDoneAction(action, key);
-            stackMap.replace(key[0], stack);
+        lockedGetOrCreateStack(key[0]).addDoneAction(action, key);
+        
+        notifyChange(key[0]);
+        return true;
+    }
+
+    // add a compact action for a key that uses a CompactDoUndoStack, see setCompactHandler()
+    public boolean addDoneAction(final int type, final long data, String... key) {
+        if (!verifyKey(key)) {
+            return false;
+        }
+        
+        final IDoUndoStack stack = lockedGetOrCreateStack(key[0]);
+        if (!(stack instanceof CompactDoUndoStack)) {
+            // same as a wrong key - see getFailureCount()
+            failureCount.increment();
+            return false;
         }
+        ((CompactDoUndoStack) stack).addDoneAction(type, data);
         
-        changeCountProperty.set(changeCountProperty.get()+1);
+        notifyChange(key[0]);
         return true;
     }
 
     @Override
     public boolean addDoneActions(List<IDoUndoAction> actions, String... key) {
-        if (!verifyKey(false, false, key)) {
+        if (!verifyKey(key)) {
             return false;
         }
-        if (!stackMap.containsKey(key[0])) {
-            stackMap.put(key[0], new DoUndoStack(actions));
-        } else {
-            final DoUndoStack stack = stackMap.get(key[0]);
-            stack.addDoneActions(actions, key);
-            stackMap.replace(key[0], stack);
-        }
+
+        lockedGetOrCreateStack(key[0]).addDoneActions(actions, key);
         
-        changeCountProperty.set(changeCountProperty.get()+1);
+        notifyChange(key[0]);
         return true;
     }
 
     @Override
     public boolean clear(String... key) {
         // TFE, 20200607: clear without any stack is also OK
-        if (!verifyKey(true, false, key)) {
-            return false;
-        }
-        
-        final boolean result = stackMap.get(key[0]).clear(key);
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+        return changeStack(false, (stack) -> stack.clear(key), key);
     }
 
     @Override
     public boolean clearAll() {
-        stackMap.values().forEach((stack) -> {
-            stack.clearAll();
-        });
-        stackMap.clear();
+        for (String key : stackMap.keySet()) {
+            final IDoUndoStack stack;
+            synchronized (lockFor(key)) {
+                stack = stackMap.remove(key);
+            }
+            if (stack != null) {
+                stack.clearAll();
+            }
+        }
         
-        changeCountProperty.set(changeCountProperty.get()+1);
+        changeCountNotifier.notifyChange();
         return true;
     }
 
     @Override
     public boolean canDo(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return false;
-        }
-        
-        return stackMap.get(key[0]).canDo(key);
+        return withStack(false, false, (stack) -> stack.canDo(key), key);
     }
 
     @Override
     public boolean canUndo(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return false;
-        }
-        
-        return stackMap.get(key[0]).canUndo(key);
+        return withStack(false, false, (stack) -> stack.canUndo(key), key);
     }
 
     @Override
     public int getDoStackSize(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return 0;
-        }
-        
-        return stackMap.get(key[0]).getDoStackSize(key);
+        return withStack(false, 0, (stack) -> stack.getDoStackSize(key), key);
     }
 
     @Override
     public int getUndoStackSize(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return 0;
-        }
-        
-        return stackMap.get(key[0]).getUndoStackSize(key);
+        return withStack(false, 0, (stack) -> stack.getUndoStackSize(key), key);
     }
 
     @Override
     public boolean singleUndo(String... key) {
-        if (!verifyKey(true, true, key)) {
-            return false;
-        }
-        
-        final boolean result = stackMap.get(key[0]).singleUndo(key);
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+        return changeStack(true, (stack) -> stack.singleUndo(key), key);
     }
 
     @Override
     public boolean singleDo(String... key) {
-        if (!verifyKey(true, true, key)) {
-            return false;
-        }
-        
-        final boolean result = stackMap.get(key[0]).singleDo(key);
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+        return changeStack(true, (stack) -> stack.singleDo(key), key);
     }
 
     @Override
     public boolean rollBack(String... key) {
-        if (!verifyKey(true, true, key)) {
-            return false;
-        }
-        
-        final boolean result = stackMap.get(key[0]).rollBack(key);
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+        return changeStack(true, (stack) -> stack.rollBack(key), key);
     }
 
     @Override
     public boolean rollForward(String... key) {
-        if (!verifyKey(true, true, key)) {
-            return false;
-        }
-        
-        final boolean result = stackMap.get(key[0]).rollForward(key);
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+        return changeStack(true, (stack) -> stack.rollForward(key), key);
+    }
+    
+    @Override
+    public CompletableFuture<Boolean> singleUndoAsync(String... key) {
+        return changeStackAsync((stack) -> stack.singleUndoAsync(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> singleDoAsync(String... key) {
+        return changeStackAsync((stack) -> stack.singleDoAsync(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> rollBackAsync(String... key) {
+        return changeStackAsync((stack) -> stack.rollBackAsync(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> rollForwardAsync(String... key) {
+        return changeStackAsync((stack) -> stack.rollForwardAsync(key), key);
     }
     
     @Override
     public IntegerProperty changeCountProperty() {
         return changeCountProperty;
     }
+    
+    @Override
+    public boolean beginBatch(String... key) {
+        if (!verifyKey(key)) {
+            return false;
+        }
 
+        // stack needs to be there to be in the batch for the first addDoneAction()
+        lockedGetOrCreateStack(key[0]).beginBatch(key);
+        synchronized (lockFor(key[0])) {
+            batchMap.computeIfAbsent(key[0], (batchKey) -> new KeyBatch()).depth++;
+        }
+        return true;
+    }
+    
     @Override
-    public String getActionDescription(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return "";
+    public boolean commitBatch(String... key) {
+        if (!verifyKey(key)) {
+            return false;
         }
+
+        // stack might be gone in the meantime due to clearAll() - but the manager batch needs to be committed anyways
+        withStack(false, false, (stack) -> stack.commitBatch(key), key);
         
-        return stackMap.get(key[0]).getActionDescription(key);
+        final boolean changed;
+        synchronized (lockFor(key[0])) {
+            final KeyBatch batch = batchMap.get(key[0]);
+            if (batch == null) {
+                // commit without begin...
+                return false;
+            }
+            if (--batch.depth > 0) {
+                return true;
+            }
+            batchMap.remove(key[0]);
+            changed = batch.changed;
+        }
+        if (changed) {
+            changeCountNotifier.notifyChange();
+        }
+        return true;
+    }
+    
+    // update changeCountProperty at most once per FX pulse
+    public void setNotifyOncePerPulse(final boolean value) {
+        changeCountNotifier.setOncePerPulse(value);
+    }
+
+    @Override
+    public String getActionDescription(String... key) {
+        return withStack(false, "", (stack) -> stack.getActionDescription(key), key);
     }
 
+    @Override
     public String getDoActionDescription(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return "";
-        }
-        
-        return stackMap.get(key[0]).getDoActionDescription(key);
+        return withStack(false, "", (stack) -> stack.getDoActionDescription(key), key);
     }
 
+    @Override
     public String getUndoActionDescription(String... key) {
-        if (!verifyKey(true, false, key)) {
-            return "";
-        }
-        
-        return stackMap.get(key[0]).getUndoActionDescription(key);
+        return withStack(false, "", (stack) -> stack.getUndoActionDescription(key), key);
+    }
+
+    @Override
+    public List<String> getDoActionDescriptions(final int first, final int count, String... key) {
+        return withStack(false, Collections.emptyList(), (stack) -> stack.getDoActionDescriptions(first, count, key), key);
+    }
+
+    @Override
+    public List<String> getUndoActionDescriptions(final int first, final int count, String... key) {
+        return withStack(false, Collections.emptyList(), (stack) -> stack.getUndoActionDescriptions(first, count, key), key);
+    }
+
+    @Override
+    public boolean selectiveUndo(final int position, String... key) {
+        return changeStack(true, (stack) -> stack.selectiveUndo(position, key), key);
+    }
+
+    @Override
+    public List<Integer> getSelectiveUndoPositions(final int position, String... key) {
+        return withStack(false, Collections.emptyList(), (stack) -> stack.getSelectiveUndoPositions(position, key), key);
     }
 }
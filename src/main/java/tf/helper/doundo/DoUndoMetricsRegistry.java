@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * IDoUndoMetricsListener that collects DoUndoKeyMetrics per key and optionally registers them as JMX MBeans.
+ * 
+ * Usage: DoUndoManager.getInstance().setMetricsListener(new DoUndoMetricsRegistry(DoUndoManager.getInstance(), true));
+ * MBeans are registered as "tf.helper.doundo:type=DoUndoManager,key=..." when a key is used for the first time.
+ * close() unregisters all MBeans.
+ * @author thomas
+ */
+public class DoUndoMetricsRegistry implements IDoUndoMetricsListener, Closeable {
+    public final static String JMX_DOMAIN = "tf.helper.doundo";
+    
+    private final DoUndoManager myManager;
+    private final boolean registerMBeans;
+    private final Map<String, DoUndoKeyMetrics> metricsMap = new ConcurrentHashMap<>();
+    
+    public DoUndoMetricsRegistry(final DoUndoManager manager, final boolean mbeans) {
+        myManager = manager;
+        registerMBeans = mbeans;
+    }
+    
+    public DoUndoKeyMetrics getMetrics(final String key) {
+        return metricsMap.computeIfAbsent(key, (metricsKey) -> {
+            final DoUndoKeyMetrics result = new DoUndoKeyMetrics(myManager, metricsKey);
+            if (registerMBeans) {
+                registerMBean(result);
+            }
+            return result;
+        });
+    }
+    
+    public Map<String, DoUndoKeyMetrics> getAllMetrics() {
+        return Collections.unmodifiableMap(metricsMap);
+    }
+    
+    public static ObjectName getObjectName(final String key) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=DoUndoManager,key=" + ObjectName.quote(key));
+    }
+    
+    private void registerMBean(final DoUndoKeyMetrics metrics) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName(metrics.getKey());
+            if (server.isRegistered(name)) {
+                // e.g. from a previous registry
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException ex) {
+            Logger.getLogger(DoUndoMetricsRegistry.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void actionAdded(final String key, final IDoUndoAction action) {
+        if (key != null) {
+            getMetrics(key).actionAdded();
+        }
+    }
+
+    @Override
+    public void actionDone(final String key, final IDoUndoAction action, final boolean result, final long nanos) {
+        if (key != null) {
+            getMetrics(key).actionDone(action, result, nanos);
+        }
+    }
+
+    @Override
+    public void actionUndone(final String key, final IDoUndoAction action, final boolean result, final long nanos) {
+        if (key != null) {
+            getMetrics(key).actionUndone(action, result, nanos);
+        }
+    }
+
+    @Override
+    public void stackCleared(final String key) {
+        if (key != null) {
+            getMetrics(key).stackCleared();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (registerMBeans) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (String key : metricsMap.keySet()) {
+                try {
+                    final ObjectName name = getObjectName(key);
+                    if (server.isRegistered(name)) {
+                        server.unregisterMBean(name);
+                    }
+                } catch (JMException ex) {
+                    Logger.getLogger(DoUndoMetricsRegistry.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        metricsMap.clear();
+    }
+}
@@ -26,229 +26,190 @@
 package tf.helper.doundo;
 
 import java.util.List;
-import java.util.Stack;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
 
 /**
  * Stack of IDoUndoAction's that support single do / undo and rollback & rollforward
  * Doesn't intent to revert to previous state in case a single do / undo of an action fails.
  * Instead FALSE is returned to the caller and leaves it at that.
+ * 
+ * Stack size is unlimited - see BoundedDoUndoStack for a version with limited history.
+ * 
+ * Consecutive actions can be merged into one if they are added within the merge window, see setMergeWindow().
+ * Only the action added last can be merged with - after any do / undo / clear the next action is added as a new entry.
+ * 
+ * Async variants of do / undo run the actions on an executor, see DoUndoExecutor. 
+ * Async calls are run one after the other in the order they have been called.
+ * Stack changes are done under lock, actions are run without holding the lock, so other threads can check the stack in the meantime.
+ * Don't mix sync and async calls that change the stack while async calls are still pending - see isAsyncPending().
+ * 
+ * Selective undo: any action on the undo stack can be undone together with the newer actions that depend on it, see selectiveUndo().
+ * Dependencies are determined from the read & write sets of the actions when needed - actions without them depend on everything.
+ * 
+ * Adding, doing, undoing and clearing can be reported to an IDoUndoMetricsListener, see setMetricsListener().
+ * 
+ * TFE, 20261018: everything that doesn't depend on the storage of the actions is shared with CompactDoUndoStack, see AbstractDoUndoStack.
  * @author thomas
  */
-public class DoUndoStack implements IDoUndoStack {
-    private final Stack<IDoUndoAction> doStack = new Stack<>();
-    private final Stack<IDoUndoAction> undoStack = new Stack<>();
-
-    private final IntegerProperty changeCountProperty = new SimpleIntegerProperty(0);
+public class DoUndoStack extends AbstractDoUndoStack {
+    // TFE, 20261018: ring buffers instead of java.util.Stack - synchronization is done on stack level
+    private final ActionRingBuffer doStack;
+    private final ActionRingBuffer undoStack;
+    
+    // the action added last - only this one is a candidate for merging
+    // whats on the stack for it might be something else, e.g. for JournaledDoUndoStack
+    private IDoUndoAction lastAdded = null;
     
     public DoUndoStack() {
+        this(ActionRingBuffer.UNBOUNDED);
     }
     
     public DoUndoStack(final IDoUndoAction action) {
-        undoStack.add(action);
+        this();
+        undoStack.push(action);
     }
     
     public DoUndoStack(final List<IDoUndoAction> actions) {
-        undoStack.addAll(actions);
+        this();
+        for (IDoUndoAction action : actions) {
+            undoStack.push(action);
+        }
     }
     
-    @Override
-    public boolean addDoneAction(final IDoUndoAction action, String... key) {
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return undoStack.add(action);
+    // for subclasses that want to use fixed size stacks
+    protected DoUndoStack(final int capacity) {
+        doStack = new ActionRingBuffer(capacity);
+        undoStack = new ActionRingBuffer(capacity);
     }
     
     @Override
-    public boolean addDoneActions(final List<IDoUndoAction> actions, String... key) {
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return undoStack.addAll(actions);
+    public synchronized boolean addDoneAction(final IDoUndoAction action, String... key) {
+        notifyChange();
+        pushDoneAction(action);
+        return true;
     }
     
     @Override
-    public boolean clear(String... key) {
-        doStack.clear();
-        undoStack.clear();
-        
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return true;
+    public synchronized boolean addDoneActions(final List<IDoUndoAction> actions, String... key) {
+        notifyChange();
+        for (IDoUndoAction action : actions) {
+            pushDoneAction(action);
+        }
+        return !actions.isEmpty();
     }
+    
+    private void pushDoneAction(final IDoUndoAction action) {
+        final long now = System.nanoTime();
+        IDoUndoAction newAction = action;
+        
+        if (lastAdded != null && isMergeCandidate(now) && action.canMergeWith(lastAdded)) {
+            final IDoUndoAction merged = action.mergeWith(lastAdded);
+            if (merged != null) {
+                actionRemoved(undoStack.pop());
+                newAction = merged;
+            }
+        }
+        
+        undoStack.push(newAction);
+        actionAdded(newAction);
+        
+        final IDoUndoMetricsListener listener = getMetricsListener();
+        if (listener != null) {
+            listener.actionAdded(getMetricsKey(), newAction);
+        }
 
-    @Override
-    public boolean clearAll() {
-        return clear();
+        lastAdded = newAction;
+        setLastAdded(now);
     }
     
-    @Override
-    public boolean canDo(String... key) {
-        return !doStack.empty();
+    // hook for subclasses, called after a new action has been added to the undo stack
+    protected void actionAdded(final IDoUndoAction action) {
     }
     
-    @Override
-    public boolean canUndo(String... key) {
-        return !undoStack.empty();
+    // hook for subclasses, called after an action has been replaced by a merged one
+    protected void actionRemoved(final IDoUndoAction action) {
     }
     
-    @Override
-    public int getDoStackSize(String... key) {
-        return doStack.size();
+    // hook for subclasses, called after an action has been moved from undo to do stack - before it is undone
+    protected void actionUndone(final IDoUndoAction action) {
     }
     
-    @Override
-    public int getUndoStackSize(String... key) {
-        return undoStack.size();
+    // hook for subclasses, called after an action from below the top of the undo stack has been moved to the do stack - before it is undone
+    // position is where it has been on the undo stack, counted from the top
+    protected void actionUndoneSelectively(final IDoUndoAction action, final int position) {
+        actionUndone(action);
     }
-
-    @Override
-    public boolean singleUndo(String... key) {
-        if (!canUndo()) {
-            return false;
-        }
-
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return singleUndoImpl();
-    }
-    private boolean singleUndoImpl() {
-        final IDoUndoAction action = undoStack.peek();
-        if (!action.canUndo()) {
-            // can't currently undo, so don't change stack
-            return false;
-        }
-        
-        undoStack.pop();
-        doStack.push(action);
-        
-        
-        boolean result;
-        try {
-            result = action.undoAction();
-        } catch (Exception ex) {
-            Logger.getLogger(DoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
-            result = false;
-        }
-        
-        return result;
+    
+    // hook for subclasses, called after an action has been moved from do to undo stack - before it is done
+    protected void actionRedone(final IDoUndoAction action) {
     }
-
+    
+    // sum of IDoUndoAction.getEstimatedSize() of all actions on do & undo stack
     @Override
-    public boolean singleDo(String... key) {
-        if (!canDo()) {
-            return false;
-        }
-        
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return singleDoImpl();
-    }
-    private boolean singleDoImpl() {
-        final IDoUndoAction action = doStack.peek();
-        if (!action.canDo()) {
-            // can't currently do, so don't change stack
-            return false;
+    public synchronized long getEstimatedSize() {
+        long result = 0;
+        for (IDoUndoAction action : undoStack) {
+            result += action.getEstimatedSize();
         }
-        
-        doStack.pop();
-        undoStack.push(action);
-        
-        boolean result;
-        try {
-            result = action.doAction();
-        } catch (Exception ex) {
-            Logger.getLogger(DoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
-            result = false;
+        for (IDoUndoAction action : doStack) {
+            result += action.getEstimatedSize();
         }
-        
         return result;
     }
     
     @Override
-    public boolean rollBack(String... key) {
-        if (!canUndo()) {
-            return false;
-        }
-
-        boolean result = true;
-        while (!undoStack.empty()) {
-            if (!singleUndoImpl()) {
-                result = false;
-                break;
-            }
-        }
-        
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+    ActionRingBuffer getDoStack() {
+        return doStack;
     }
     
     @Override
-    public boolean rollForward(String... key) {
-        if (!canDo()) {
-            return false;
-        }
-
-        boolean result = true;
-        while (!doStack.empty()) {
-            if (!singleDoImpl()) {
-                result = false;
-                break;
-            }
-        }
-        
-        changeCountProperty.set(changeCountProperty.get()+1);
-        return result;
+    ActionRingBuffer getUndoStack() {
+        return undoStack;
     }
     
     @Override
-    public IntegerProperty changeCountProperty() {
-        return changeCountProperty;
+    public synchronized boolean clear(String... key) {
+        lastAdded = null;
+        return super.clear(key);
     }
-
+    
     @Override
-    public String getActionDescription(String... key) {
-        String result = "";
-        
-        // add undo actions first
-        result = getUndoActionDescription();
-        result += System.lineSeparator();
-        result += getDoActionDescription();
-        
-        // return anything up to the last lineSeparator
-        if (result.length() > System.lineSeparator().length()) {
-            return result;
-        } else {
-            return "";
-        }
-    }
+    boolean undoActionAt(final int position) {
+        final IDoUndoAction action;
+        synchronized (this) {
+            final int index = undoStack.size() - 1 - position;
+            if (index < 0 || !undoStack.get(index).canUndo()) {
+                // can't currently undo, so don't change stack
+                return false;
+            }
 
-    public String getDoActionDescription(String... key) {
-        final StringBuilder builder = new StringBuilder();
-        
-        for (IDoUndoAction action : doStack) {
-            builder.append(action.getDescription());
-            builder.append(System.lineSeparator());
+            action = undoStack.remove(index);
+            doStack.push(action);
+            lastAdded = null;
+            if (position == 0) {
+                actionUndone(action);
+            } else {
+                actionUndoneSelectively(action, position);
+            }
         }
         
-        // return anything up to the last lineSeparator
-        if (builder.length() > System.lineSeparator().length()) {
-            return builder.substring(0, builder.length()-System.lineSeparator().length());
-        } else {
-            return "";
-        }
+        return runUndo(action);
     }
+    
+    @Override
+    boolean doTopAction() {
+        final IDoUndoAction action;
+        synchronized (this) {
+            if (doStack.isEmpty() || !doStack.peek().canDo()) {
+                // can't currently do, so don't change stack
+                return false;
+            }
 
-    public String getUndoActionDescription(String... key) {
-        final StringBuilder builder = new StringBuilder();
-        
-        for (IDoUndoAction action : undoStack) {
-            builder.append(action.getDescription());
-            builder.append(System.lineSeparator());
+            action = doStack.pop();
+            undoStack.push(action);
+            lastAdded = null;
+            actionRedone(action);
         }
         
-        // return anything up to the last lineSeparator
-        if (builder.length() > System.lineSeparator().length()) {
-            return builder.substring(0, builder.length()-System.lineSeparator().length());
-        } else {
-            return "";
-        }
+        return runDo(action);
     }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.Set;
+
+/**
+ * What AbstractDoUndoStack needs to know about its do & undo stacks - see ActionRingBuffer & CompactActionStore.
+ * Top of the stack is the newest element, bottom of the stack the oldest one.
+ * 
+ * position: 0 = oldest, size()-1 = newest
+ * @author thomas
+ */
+interface IActionStack {
+    abstract public int size();
+    abstract public boolean isEmpty();
+    // incremented on every change - allows callers to cache whatever they derive from the content
+    abstract public int getModCount();
+    abstract public void clear();
+    
+    abstract public String getDescription(final int position);
+    
+    // same as IDoUndoAction.canDo() & canUndo() for the element at position
+    abstract public boolean canDo(final int position);
+    abstract public boolean canUndo(final int position);
+    
+    // same as IDoUndoAction.getReadSet() & getWriteSet() for the element at position
+    abstract public Set<Object> getReadSet(final int position);
+    abstract public Set<Object> getWriteSet(final int position);
+}
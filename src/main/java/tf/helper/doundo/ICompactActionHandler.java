@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.Set;
+
+/**
+ * Does & undoes the actions of a CompactDoUndoStack.
+ * 
+ * Actions on a CompactDoUndoStack aren't objects - only a type and a data value, e.g. an opcode and the index of the element that has been changed.
+ * One handler knows what to do for all of them. 
+ * State & do / undo counters are kept by the stack, same logic as in AbstractDoUndoAction.
+ * @author thomas
+ */
+public interface ICompactActionHandler {
+    // do the action and return result
+    abstract public boolean doAction(final int type, final long data);
+    // undo the action and return result
+    abstract public boolean undoAction(final int type, final long data);
+    
+    abstract public String getDescription(final int type, final long data);
+    
+    // what is your state if do fails? stateFromCounter is what AbstractDoUndoAction would do - not being stuck
+    default public IDoUndoAction.State getStateForFailedDo(final int type, final long data, final IDoUndoAction.State stateFromCounter) {
+        return stateFromCounter;
+    }
+    // what is your state if undo fails?
+    default public IDoUndoAction.State getStateForFailedUndo(final int type, final long data, final IDoUndoAction.State stateFromCounter) {
+        return stateFromCounter;
+    }
+    
+    // data read & written by the action, see IDoUndoAction.getReadSet() - null means "might read / write anything"
+    default public Set<Object> getReadSet(final int type, final long data) {
+        return null;
+    }
+    default public Set<Object> getWriteSet(final int type, final long data) {
+        return null;
+    }
+    
+    // can the action be merged with the previous one on the undo stack? see IDoUndoAction.canMergeWith()
+    default public boolean canMerge(final int type, final long data, final int previousType, final long previousData) {
+        return false;
+    }
+    // data of the one action that undoes / redoes previous & this one - it keeps the type of this one
+    // only called if canMerge() returned true
+    default public long merge(final int type, final long data, final int previousType, final long previousData) {
+        return data;
+    }
+}
@@ -25,6 +25,8 @@
  */
 package tf.helper.doundo;
 
+import java.util.Set;
+
 /**
  * See also http://sourcephile.blogspot.com/2011/04/how-to-do-undo-and-redo.html
  * @author thomas
@@ -70,4 +72,36 @@ public interface IDoUndoAction {
     public abstract State getStateForFailedUndo();
     
     abstract public String getDescription();
+    
+    // estimated memory footprint of the action in bytes - used e.g. by BoundedDoUndoStack to limit its history
+    // 0 means "don't know / don't care"
+    default public long getEstimatedSize() {
+        return 0;
+    }
+    
+    // actions with different conflict keys don't touch the same data and can be run in parallel, e.g. in a DoUndoActionList
+    // null means "might conflict with anything" - so needs to be run in sequence
+    default public Object getConflictKey() {
+        return null;
+    }
+    
+    // TFE, 20261018: data read & written by the action, e.g. ids of the elements of a document - see DoUndoStack.selectiveUndo()
+    // an action depends on an older one if it reads or writes anything the older one has written
+    // null means "might read / write anything" - so the action depends on / is a dependency of all others
+    default public Set<Object> getReadSet() {
+        return null;
+    }
+    default public Set<Object> getWriteSet() {
+        return null;
+    }
+    
+    // TFE, 20261018: merging of consecutive actions, e.g. from typing or dragging - see DoUndoStack.setMergeWindow()
+    // can this action be merged with the previous action on the undo stack?
+    default public boolean canMergeWith(final IDoUndoAction previous) {
+        return false;
+    }
+    // one action that undoes / redoes previous & this one - null if merge isn't possible after all
+    default public IDoUndoAction mergeWith(final IDoUndoAction previous) {
+        return null;
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+/**
+ * Listener for everything that happens on do / undo stacks - e.g. to collect metrics, see DoUndoMetricsRegistry.
+ * 
+ * Set via DoUndoManager.setMetricsListener() for all keys or DoUndoStack.setMetricsListener() for a single stack.
+ * Methods are called from whatever thread is using the stack - so implementations need to be thread safe and fast.
+ * Without a listener nothing is measured.
+ * @author thomas
+ */
+public interface IDoUndoMetricsListener {
+    // action has been added to the stack for key
+    default public void actionAdded(final String key, final IDoUndoAction action) {
+    }
+    
+    // action has been done by the stack for key, nanos is the time doAction() took
+    default public void actionDone(final String key, final IDoUndoAction action, final boolean result, final long nanos) {
+    }
+    
+    // action has been undone by the stack for key, nanos is the time undoAction() took
+    default public void actionUndone(final String key, final IDoUndoAction action, final boolean result, final long nanos) {
+    }
+    
+    // stack for key has been cleared
+    default public void stackCleared(final String key) {
+    }
+}
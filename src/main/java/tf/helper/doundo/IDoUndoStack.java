@@ -26,17 +26,30 @@
 package tf.helper.doundo;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javafx.beans.property.IntegerProperty;
 
 /**
  * Methods a vaild stack of do / undo actions needs to have.
  * The optional parameter key allows to have different sets of stacks for different keys, e.g. as done in DoUndoManager
+ * 
+ * Batches: between beginBatch() and commitBatch() no changes are notified via changeCountProperty. 
+ * commitBatch() notifies once if anything has changed in between.
+ * 
+ * Async variants of do / undo: run in the background and are completed with the same result as their sync counterparts.
+ * 
+ * Merge window: actions added within the given time of the previous one are merged with it, if they support it - see IDoUndoAction.canMergeWith().
+ * 
+ * Selective undo: undo any action on the undo stack together with the newer actions that depend on it - see IDoUndoAction.getWriteSet().
  * @author thomas
  */
 public interface IDoUndoStack {
     abstract public boolean addDoneAction(final IDoUndoAction action, String... key);
     abstract public boolean addDoneActions(final List<IDoUndoAction> actions, String... key);
     
+    // 0 = no merging of actions
+    abstract public boolean setMergeWindow(final long millis, String... key);
+    
     abstract public boolean clear(String... key);
     abstract public boolean clearAll();
     
@@ -52,7 +65,29 @@ public interface IDoUndoStack {
     abstract public boolean rollBack(String... key);
     abstract public boolean rollForward(String... key);
     
+    abstract public CompletableFuture<Boolean> singleUndoAsync(String... key);
+    abstract public CompletableFuture<Boolean> singleDoAsync(String... key);
+    
+    abstract public CompletableFuture<Boolean> rollBackAsync(String... key);
+    abstract public CompletableFuture<Boolean> rollForwardAsync(String... key);
+    
     abstract public IntegerProperty changeCountProperty();
     
+    abstract public boolean beginBatch(String... key);
+    abstract public boolean commitBatch(String... key);
+    
     abstract public String getActionDescription(String... key);
+    abstract public String getDoActionDescription(String... key);
+    abstract public String getUndoActionDescription(String... key);
+    
+    // descriptions for long histories, e.g. for undo menus: count descriptions starting with first
+    // newest first - first = 0 is the action that would be done / undone next
+    abstract public List<String> getDoActionDescriptions(final int first, final int count, String... key);
+    abstract public List<String> getUndoActionDescriptions(final int first, final int count, String... key);
+    
+    // position as for getUndoActionDescriptions() - 0 = the action that would be undone next
+    // undoes the action at position and all newer actions that depend on it, newest first
+    abstract public boolean selectiveUndo(final int position, String... key);
+    // positions of the actions selectiveUndo() would undo, newest first - empty for invalid positions
+    abstract public List<Integer> getSelectiveUndoPositions(final int position, String... key);
 }
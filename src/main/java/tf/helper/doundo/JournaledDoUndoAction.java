@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for an action that has been stored in a DoUndoJournal.
+ * The action is loaded lazily from the journal on first use and can be unloaded again to free memory.
+ * 
+ * After each do & undo only state & counters are stored in a small COUNTERS record - so that a replay after a crash gets them back.
+ * The action is only encoded again when it is unloaded and has changed since it has been encoded.
+ * Actions that aren't AbstractDoUndoActions can't get their counters back, they are encoded again after each do & undo.
+ * An action that can't be loaded from the journal is stuck.
+ * @author thomas
+ */
+class JournaledDoUndoAction implements IDoUndoAction {
+    private final static IDoUndoAction.State[] STATES = IDoUndoAction.State.values();
+    // state + done count + undone count
+    private final static int COUNTERS_SIZE = Byte.BYTES + 2 * Integer.BYTES;
+    private final static int NO_OFFSET = -1;
+    
+    private final DoUndoJournal myJournal;
+    private final IDoUndoActionCodec myCodec;
+    // offset of the ADD record - identifies the action in the journal
+    private final int myAddOffset;
+    // offset of the record with the latest encoded action
+    private int myOffset;
+    // offset of a COUNTERS record newer than the encoded action - only set during replay
+    private int myCountersOffset = NO_OFFSET;
+    
+    private IDoUndoAction myAction;
+    // state & counters of the encoded action
+    private State myEncodedState;
+    private int myEncodedDoneCount;
+    private int myEncodedUndoneCount;
+    // state & counters as last written to the journal - encoded or as COUNTERS record
+    private State myStoredState;
+    private int myStoredDoneCount;
+    private int myStoredUndoneCount;
+    
+    JournaledDoUndoAction(final DoUndoJournal journal, final IDoUndoActionCodec codec, final int offset, final IDoUndoAction action) {
+        myJournal = journal;
+        myCodec = codec;
+        myAddOffset = offset;
+        myOffset = offset;
+        myAction = action;
+        if (action != null) {
+            rememberEncodedState();
+        }
+    }
+    
+    private void rememberEncodedState() {
+        myEncodedState = myAction.getState();
+        myEncodedDoneCount = myAction.doneCount();
+        myEncodedUndoneCount = myAction.undoneCount();
+        rememberStoredState();
+    }
+    
+    private void rememberStoredState() {
+        myStoredState = myAction.getState();
+        myStoredDoneCount = myAction.doneCount();
+        myStoredUndoneCount = myAction.undoneCount();
+    }
+    
+    int getAddOffset() {
+        return myAddOffset;
+    }
+    
+    // used during replay of the journal: STATE record
+    synchronized void setOffset(final int offset) {
+        myOffset = offset;
+        myCountersOffset = NO_OFFSET;
+    }
+    
+    // used during replay of the journal: COUNTERS record
+    synchronized void setCountersOffset(final int offset) {
+        myCountersOffset = offset;
+    }
+    
+    synchronized IDoUndoAction getAction() {
+        if (myAction == null) {
+            myAction = myCodec.decode(myJournal.getData(myOffset));
+            if (myAction != null) {
+                rememberEncodedState();
+                restoreCounters();
+            }
+        }
+        return myAction;
+    }
+    
+    // apply the COUNTERS record found during replay - the encoded action doesn't know about it
+    private void restoreCounters() {
+        if (myCountersOffset == NO_OFFSET || !(myAction instanceof AbstractDoUndoAction)) {
+            return;
+        }
+        
+        final ByteBuffer data = ByteBuffer.wrap(myJournal.getData(myCountersOffset));
+        final byte state = data.get();
+        if (state < 0 || state >= STATES.length) {
+            return;
+        }
+        ((AbstractDoUndoAction) myAction).restoreState(STATES[state], data.getInt(), data.getInt());
+        rememberStoredState();
+    }
+    
+    synchronized boolean isLoaded() {
+        return myAction != null;
+    }
+    
+    // drop the action from memory - returns false if it can't be stored in its current state
+    synchronized boolean unload() {
+        if (!storeAction()) {
+            return false;
+        }
+        
+        myAction = null;
+        myCountersOffset = NO_OFFSET;
+        return true;
+    }
+    
+    // append a STATE record if the action has changed since it has been encoded
+    private boolean storeAction() {
+        if (myAction == null) {
+            return true;
+        }
+        if (myAction.getState().equals(myEncodedState) && 
+                myAction.doneCount() == myEncodedDoneCount && 
+                myAction.undoneCount() == myEncodedUndoneCount) {
+            return true;
+        }
+        if (!myJournal.isOpen()) {
+            return false;
+        }
+        
+        final byte[] data = myCodec.encode(myAction);
+        if (data == null) {
+            return false;
+        }
+        try {
+            myOffset = myJournal.append(DoUndoJournal.RecordType.STATE, myAddOffset, data);
+        } catch (IOException ex) {
+            Logger.getLogger(JournaledDoUndoAction.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        rememberEncodedState();
+        return true;
+    }
+    
+    // append a COUNTERS record if state or counters have changed since they have been stored
+    private void storeCounters() {
+        if (myAction == null || !myJournal.isOpen()) {
+            return;
+        }
+        if (myAction.getState().equals(myStoredState) && 
+                myAction.doneCount() == myStoredDoneCount && 
+                myAction.undoneCount() == myStoredUndoneCount) {
+            return;
+        }
+        if (!(myAction instanceof AbstractDoUndoAction)) {
+            // no way to set the counters after decoding
+            storeAction();
+            return;
+        }
+        
+        final byte[] data = ByteBuffer.allocate(COUNTERS_SIZE).
+                put((byte) myAction.getState().ordinal()).putInt(myAction.doneCount()).putInt(myAction.undoneCount()).array();
+        try {
+            myJournal.append(DoUndoJournal.RecordType.COUNTERS, myAddOffset, data);
+        } catch (IOException ex) {
+            Logger.getLogger(JournaledDoUndoAction.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        rememberStoredState();
+    }
+
+    @Override
+    public State getState() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getState() : State.STUCK_IN_UNDO;
+    }
+
+    @Override
+    public boolean canDo() {
+        final IDoUndoAction action = getAction();
+        return (action != null) && action.canDo();
+    }
+
+    @Override
+    public boolean canUndo() {
+        final IDoUndoAction action = getAction();
+        return (action != null) && action.canUndo();
+    }
+
+    @Override
+    public synchronized boolean doAction() {
+        final IDoUndoAction action = getAction();
+        final boolean result = (action != null) && action.doAction();
+        // the DO record has been written by the stack already
+        storeCounters();
+        return result;
+    }
+
+    @Override
+    public synchronized boolean undoAction() {
+        final IDoUndoAction action = getAction();
+        final boolean result = (action != null) && action.undoAction();
+        // the UNDO record has been written by the stack already
+        storeCounters();
+        return result;
+    }
+
+    @Override
+    public int doneCount() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.doneCount() : 0;
+    }
+
+    @Override
+    public int undoneCount() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.undoneCount() : 0;
+    }
+
+    @Override
+    public State getStateForFailedDo() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getStateForFailedDo() : State.STUCK_IN_DO;
+    }
+
+    @Override
+    public State getStateForFailedUndo() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getStateForFailedUndo() : State.STUCK_IN_UNDO;
+    }
+
+    @Override
+    public String getDescription() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getDescription() : "Action not found in journal at " + myOffset;
+    }
+
+    @Override
+    public synchronized long getEstimatedSize() {
+        // we only count if loaded
+        return (myAction != null) ? myAction.getEstimatedSize() : 0;
+    }
+
+    @Override
+    public Object getConflictKey() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getConflictKey() : null;
+    }
+
+    @Override
+    public Set<Object> getReadSet() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getReadSet() : null;
+    }
+
+    @Override
+    public Set<Object> getWriteSet() {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.getWriteSet() : null;
+    }
+
+    @Override
+    public boolean canMergeWith(final IDoUndoAction previous) {
+        final IDoUndoAction action = getAction();
+        return (action != null) && action.canMergeWith(unwrap(previous));
+    }
+
+    @Override
+    public IDoUndoAction mergeWith(final IDoUndoAction previous) {
+        final IDoUndoAction action = getAction();
+        return (action != null) ? action.mergeWith(unwrap(previous)) : null;
+    }
+    
+    static IDoUndoAction unwrap(final IDoUndoAction action) {
+        if (action instanceof JournaledDoUndoAction) {
+            return ((JournaledDoUndoAction) action).getAction();
+        } else {
+            return action;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DoUndoStack that writes all its changes to a DoUndoJournal.
+ * 
+ * - Actions are encoded with an IDoUndoActionCodec, e.g. XStreamDoUndoActionCodec.
+ * - Only the newest maxInMemory actions of the do & undo stack are kept in memory, older ones are loaded from the journal when needed.
+ * - If the journal file exists already, the stacks are restored from it - e.g. after a crash.
+ * 
+ * The journal only grows, it starts from scratch on clear(). clearAll() also closes the journal.
+ * If the journal can't be written, the stack continues without it - and the journal can't be used to restore the stack anymore.
+ * @author thomas
+ */
+public class JournaledDoUndoStack extends DoUndoStack implements Closeable {
+    public final static int KEEP_ALL = 0;
+    
+    private final Path myPath;
+    private final IDoUndoActionCodec myCodec;
+    private final int myMaxInMemory;
+    private DoUndoJournal myJournal = null;
+    
+    // number of the oldest actions on the stacks that have been unloaded
+    private int undoUnloaded = 0;
+    private int doUnloaded = 0;
+    
+    public JournaledDoUndoStack(final Path path, final IDoUndoActionCodec codec, final int maxInMemory) {
+        super();
+        
+        myPath = path;
+        myCodec = codec;
+        myMaxInMemory = Math.max(maxInMemory, KEEP_ALL);
+        
+        try {
+            myJournal = new DoUndoJournal(path);
+            replay();
+        } catch (IOException ex) {
+            Logger.getLogger(JournaledDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+            myJournal = null;
+        }
+    }
+    
+    public Path getPath() {
+        return myPath;
+    }
+    
+    public synchronized boolean isJournaled() {
+        return myJournal != null;
+    }
+    
+    // restore do & undo stack from the journal - all actions stay unloaded until needed
+    private void replay() {
+        final ActionRingBuffer undoStack = getUndoStack();
+        final ActionRingBuffer doStack = getDoStack();
+        // only needed to find the actions for STATE & COUNTERS records
+        final Map<Integer, JournaledDoUndoAction> actions = new HashMap<>();
+        
+        myJournal.replay((type, offset) -> {
+            switch (type) {
+                case ADD:
+                    final JournaledDoUndoAction action = new JournaledDoUndoAction(myJournal, myCodec, offset, null);
+                    actions.put(offset, action);
+                    undoStack.push(action);
+                    break;
+                case REMOVE:
+                    if (!undoStack.isEmpty()) {
+                        undoStack.pop();
+                    }
+                    break;
+                case UNDO:
+                    // selective undo: reference is the position counted from the top
+                    final int position = myJournal.getReference(offset);
+                    if (position > 0 && position < undoStack.size()) {
+                        doStack.push(undoStack.remove(undoStack.size() - 1 - position));
+                    } else if (!undoStack.isEmpty()) {
+                        doStack.push(undoStack.pop());
+                    }
+                    break;
+                case DO:
+                    if (!doStack.isEmpty()) {
+                        undoStack.push(doStack.pop());
+                    }
+                    break;
+                case STATE:
+                    final JournaledDoUndoAction stateAction = actions.get(myJournal.getReference(offset));
+                    if (stateAction != null) {
+                        stateAction.setOffset(offset);
+                    }
+                    break;
+                case COUNTERS:
+                    final JournaledDoUndoAction countersAction = actions.get(myJournal.getReference(offset));
+                    if (countersAction != null) {
+                        countersAction.setCountersOffset(offset);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        });
+        
+        undoUnloaded = undoStack.size();
+        doUnloaded = doStack.size();
+    }
+    
+    private boolean append(final DoUndoJournal.RecordType type, final byte[] data) {
+        return append(type, DoUndoJournal.NO_REFERENCE, data);
+    }
+    private boolean append(final DoUndoJournal.RecordType type, final int reference, final byte[] data) {
+        if (myJournal == null) {
+            return false;
+        }
+        
+        try {
+            myJournal.append(type, reference, data);
+            return true;
+        } catch (IOException ex) {
+            journalFailed(ex);
+            return false;
+        }
+    }
+    
+    private void journalFailed(final IOException ex) {
+        Logger.getLogger(JournaledDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+        
+        // from here on we're a simple in-memory stack - unloaded actions can still be read from the mapped file
+        close();
+    }
+
+    @Override
+    protected void actionAdded(final IDoUndoAction action) {
+        if (myJournal == null) {
+            return;
+        }
+
+        // an action that can't be encoded is kept in memory - after a replay it will be stuck
+        final byte[] data = myCodec.encode(action);
+        try {
+            final int offset = myJournal.append(DoUndoJournal.RecordType.ADD, DoUndoJournal.NO_REFERENCE, data);
+            if (data != null) {
+                getUndoStack().pop();
+                getUndoStack().push(new JournaledDoUndoAction(myJournal, myCodec, offset, action));
+            }
+        } catch (IOException ex) {
+            journalFailed(ex);
+        }
+        
+        unloadOldest();
+    }
+
+    @Override
+    protected void actionRemoved(final IDoUndoAction action) {
+        append(DoUndoJournal.RecordType.REMOVE, null);
+    }
+
+    @Override
+    protected void actionUndone(final IDoUndoAction action) {
+        append(DoUndoJournal.RecordType.UNDO, null);
+        unloadOldest();
+    }
+
+    @Override
+    protected void actionUndoneSelectively(final IDoUndoAction action, final int position) {
+        append(DoUndoJournal.RecordType.UNDO, position, null);
+        unloadOldest();
+    }
+
+    @Override
+    protected void actionRedone(final IDoUndoAction action) {
+        append(DoUndoJournal.RecordType.DO, null);
+        unloadOldest();
+    }
+    
+    private void unloadOldest() {
+        if (myMaxInMemory == KEEP_ALL || myJournal == null) {
+            return;
+        }
+        
+        undoUnloaded = unloadOldest(getUndoStack(), undoUnloaded);
+        doUnloaded = unloadOldest(getDoStack(), doUnloaded);
+    }
+    private int unloadOldest(final ActionRingBuffer stack, final int unloaded) {
+        // actions below "unloaded" are still unloaded - only the ones above might have been loaded in the meantime
+        int result = Math.min(unloaded, stack.size());
+        
+        for (; result < stack.size() - myMaxInMemory; result++) {
+            final IDoUndoAction action = stack.get(result);
+            if (action instanceof JournaledDoUndoAction) {
+                ((JournaledDoUndoAction) action).unload();
+            }
+        }
+        
+        return result;
+    }
+    
+    // write the journal to the storage device - not only to the OS file cache
+    public synchronized void force() {
+        if (myJournal != null) {
+            myJournal.force();
+        }
+    }
+
+    @Override
+    public synchronized String getDoActionDescription(String... key) {
+        final String result = super.getDoActionDescription(key);
+        // all actions might have been loaded for the description
+        doUnloaded = 0;
+        unloadOldest();
+        return result;
+    }
+
+    @Override
+    public synchronized String getUndoActionDescription(String... key) {
+        final String result = super.getUndoActionDescription(key);
+        // all actions might have been loaded for the description
+        undoUnloaded = 0;
+        unloadOldest();
+        return result;
+    }
+
+    @Override
+    public synchronized List<String> getDoActionDescriptions(final int first, final int count, String... key) {
+        final List<String> result = super.getDoActionDescriptions(first, count, key);
+        // actions of the page might have been loaded for the description
+        doUnloaded = (int) Math.min(doUnloaded, Math.max(0L, (long) getDoStack().size() - first - count));
+        unloadOldest();
+        return result;
+    }
+
+    @Override
+    public synchronized List<String> getUndoActionDescriptions(final int first, final int count, String... key) {
+        final List<String> result = super.getUndoActionDescriptions(first, count, key);
+        // actions of the page might have been loaded for the description
+        undoUnloaded = (int) Math.min(undoUnloaded, Math.max(0L, (long) getUndoStack().size() - first - count));
+        unloadOldest();
+        return result;
+    }
+
+    @Override
+    public synchronized boolean selectiveUndo(final int position, String... key) {
+        // actions above position might get loaded to check their dependencies
+        undoUnloaded = (int) Math.min(undoUnloaded, Math.max(0L, (long) getUndoStack().size() - 1 - position));
+        final boolean result = super.selectiveUndo(position, key);
+        unloadOldest();
+        return result;
+    }
+
+    @Override
+    public synchronized List<Integer> getSelectiveUndoPositions(final int position, String... key) {
+        // actions above position might get loaded to check their dependencies
+        undoUnloaded = (int) Math.min(undoUnloaded, Math.max(0L, (long) getUndoStack().size() - 1 - position));
+        final List<Integer> result = super.getSelectiveUndoPositions(position, key);
+        unloadOldest();
+        return result;
+    }
+
+    @Override
+    public synchronized boolean clear(String... key) {
+        if (myJournal != null) {
+            myJournal.reset();
+        }
+        undoUnloaded = 0;
+        doUnloaded = 0;
+        
+        return super.clear(key);
+    }
+
+    @Override
+    public synchronized boolean clearAll() {
+        final boolean result = clear();
+        close();
+        return result;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (myJournal == null) {
+            return;
+        }
+
+        try {
+            myJournal.close();
+        } catch (IOException ex) {
+            Logger.getLogger(JournaledDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        myJournal = null;
+    }
+}
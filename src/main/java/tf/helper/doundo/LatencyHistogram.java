@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * 
+ * Values are counted in buckets by power of 2 - so percentiles are only accurate up to a factor of 2.
+ * That is good enough to see if an undo takes micro- or milliseconds and costs next to nothing to record.
+ * @author thomas
+ */
+public class LatencyHistogram {
+    private final static int BUCKETS = Long.SIZE;
+    
+    // bucket i holds values in [2^(i-1), 2^i), bucket 0 holds 0
+    private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder myCount = new LongAdder();
+    private final LongAdder mySum = new LongAdder();
+    private final LongAccumulator myMax = new LongAccumulator(Math::max, 0);
+    
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        
+        // number of significant bits = bucket
+        myBuckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        myCount.increment();
+        mySum.add(value);
+        myMax.accumulate(value);
+    }
+    
+    public long getCount() {
+        return myCount.sum();
+    }
+    
+    public long getMax() {
+        return myMax.get();
+    }
+    
+    public long getMean() {
+        final long count = myCount.sum();
+        return (count > 0) ? mySum.sum() / count : 0;
+    }
+    
+    // upper bound of the bucket that contains the given percentile (0 - 100)
+    public long getPercentile(final double percentile) {
+        final long count = myCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        
+        final long limit = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100.0);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += myBuckets.get(i);
+            if (sum >= limit && sum > 0) {
+                // no need to report more than we have seen
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+    
+    private static long upperBound(final int bucket) {
+        return (bucket >= BUCKETS - 1) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+    
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            myBuckets.set(i, 0);
+        }
+        myCount.reset();
+        mySum.reset();
+        myMax.reset();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list with structural sharing, e.g. as snapshot for SnapshotDoUndoAction.
+ * 
+ * Elements are stored in a trie with 32 elements per node, same as Clojure's PersistentVector.
+ * Changes (with(), withAppended(), withoutLast()) return a new vector that shares all unchanged nodes with the old one.
+ * So a change costs O(log32(size)) time & memory - the old vector stays valid & unchanged.
+ * 
+ * All methods of java.util.List that would change the list throw an UnsupportedOperationException.
+ * @author thomas
+ */
+public class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    private final static int BITS = 5;
+    private final static int WIDTH = 1 << BITS;
+    private final static int MASK = WIDTH - 1;
+
+    private final static PersistentVector<?> EMPTY = new PersistentVector<>(0, 0, new Object[WIDTH]);
+    
+    private final int mySize;
+    // number of bits to shift the index for the root level - 0 means root is a leaf
+    private final int myShift;
+    private final Object[] myRoot;
+    
+    private PersistentVector(final int size, final int shift, final Object[] root) {
+        mySize = size;
+        myShift = shift;
+        myRoot = root;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+    
+    public static <E> PersistentVector<E> of(final Collection<? extends E> elements) {
+        PersistentVector<E> result = empty();
+        for (E element : elements) {
+            result = result.withAppended(element);
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return mySize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(final int index) {
+        checkIndex(index);
+        
+        Object[] node = myRoot;
+        for (int level = myShift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (E) node[index & MASK];
+    }
+    
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= mySize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+        }
+    }
+    
+    // new vector with element at index replaced by value
+    public PersistentVector<E> with(final int index, final E value) {
+        checkIndex(index);
+        
+        return new PersistentVector<>(mySize, myShift, setInNode(myShift, myRoot, index, value));
+    }
+    
+    // new vector with value appended at the end
+    public PersistentVector<E> withAppended(final E value) {
+        Object[] root = myRoot;
+        int shift = myShift;
+        
+        if (mySize == (1 << (myShift + BITS))) {
+            // root is full - we need another level
+            root = new Object[WIDTH];
+            root[0] = myRoot;
+            shift += BITS;
+        }
+        
+        return new PersistentVector<>(mySize + 1, shift, setInNode(shift, root, mySize, value));
+    }
+    
+    // new vector without the last element
+    public PersistentVector<E> withoutLast() {
+        if (mySize == 0) {
+            throw new NoSuchElementException();
+        }
+        if (mySize == 1) {
+            return empty();
+        }
+        
+        final int index = mySize - 1;
+        Object[] root = removeFromNode(myShift, myRoot, index);
+        int shift = myShift;
+        
+        if (shift > 0 && root[1] == null) {
+            // only the first child of root is left - we don't need this level anymore
+            root = (Object[]) root[0];
+            shift -= BITS;
+        }
+        
+        return new PersistentVector<>(index, shift, root);
+    }
+    
+    // copy the path to index and set value - missing nodes are created
+    private static Object[] setInNode(final int level, final Object[] node, final int index, final Object value) {
+        final Object[] result = (node != null) ? node.clone() : new Object[WIDTH];
+        
+        if (level == 0) {
+            result[index & MASK] = value;
+        } else {
+            final int child = (index >>> level) & MASK;
+            result[child] = setInNode(level - BITS, (Object[]) result[child], index, value);
+        }
+        
+        return result;
+    }
+    
+    // copy the path to the last element at index and remove it - nodes that get empty are removed
+    private static Object[] removeFromNode(final int level, final Object[] node, final int index) {
+        final Object[] result = node.clone();
+        
+        if (level == 0) {
+            result[index & MASK] = null;
+        } else {
+            final int child = (index >>> level) & MASK;
+            if ((index & ((1 << level) - 1)) == 0) {
+                // the element was the only one in the child node
+                result[child] = null;
+            } else {
+                result[child] = removeFromNode(level - BITS, (Object[]) result[child], index);
+            }
+        }
+        
+        return result;
+    }
+}
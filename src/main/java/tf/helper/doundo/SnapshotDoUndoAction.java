@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+/**
+ * Action that switches a model between two snapshots of its state instead of running inverse operations.
+ * 
+ * With immutable snapshots that share their unchanged parts, e.g. PersistentVector, do & undo are a simple swap of references
+ * and each action only costs the memory for the parts that have been changed.
+ * 
+ * Consecutive actions for the same model with the same (non-null) merge key can be merged, see DoUndoStack.setMergeWindow().
+ * @author thomas
+ */
+public class SnapshotDoUndoAction<T> extends AbstractDoUndoAction {
+    private final ISnapshotModel<T> myModel;
+    private final T myBefore;
+    private final T myAfter;
+    private final String myDescription;
+    private final Object myMergeKey;
+    
+    // before is the current snapshot of the model
+    public SnapshotDoUndoAction(final ISnapshotModel<T> model, final T after, final String description) {
+        this(model, model.getSnapshot(), after, description, null);
+    }
+    
+    public SnapshotDoUndoAction(final ISnapshotModel<T> model, final T before, final T after, final String description, final Object mergeKey) {
+        myModel = model;
+        myBefore = before;
+        myAfter = after;
+        myDescription = description;
+        myMergeKey = mergeKey;
+    }
+    
+    public ISnapshotModel<T> getModel() {
+        return myModel;
+    }
+    
+    public T getBefore() {
+        return myBefore;
+    }
+    
+    public T getAfter() {
+        return myAfter;
+    }
+
+    @Override
+    public boolean doHook() {
+        myModel.setSnapshot(myAfter);
+        return true;
+    }
+
+    @Override
+    public boolean undoHook() {
+        myModel.setSnapshot(myBefore);
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return myDescription;
+    }
+
+    @Override
+    public boolean canMergeWith(final IDoUndoAction previous) {
+        if (myMergeKey == null || !(previous instanceof SnapshotDoUndoAction)) {
+            return false;
+        }
+        
+        final SnapshotDoUndoAction<?> other = (SnapshotDoUndoAction<?>) previous;
+        // we need to start where the previous one has ended
+        return myModel == other.myModel && myMergeKey.equals(other.myMergeKey) && myBefore == other.myAfter && 
+                getState().equals(other.getState());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public IDoUndoAction mergeWith(final IDoUndoAction previous) {
+        final SnapshotDoUndoAction<T> other = (SnapshotDoUndoAction<T>) previous;
+        
+        final SnapshotDoUndoAction<T> result = new SnapshotDoUndoAction<>(myModel, other.myBefore, myAfter, myDescription, myMergeKey);
+        if (State.DONE.equals(getState())) {
+            // model is already in the after state - so this only sets the state of the merged action
+            result.doAction();
+        }
+        return result;
+    }
+}
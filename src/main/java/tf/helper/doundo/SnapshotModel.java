@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Simple ISnapshotModel that only holds the current snapshot.
+ * @author thomas
+ */
+public class SnapshotModel<T> implements ISnapshotModel<T> {
+    private volatile T mySnapshot;
+    
+    public SnapshotModel(final T snapshot) {
+        mySnapshot = snapshot;
+    }
+
+    @Override
+    public T getSnapshot() {
+        return mySnapshot;
+    }
+
+    @Override
+    public void setSnapshot(final T snapshot) {
+        mySnapshot = snapshot;
+    }
+    
+    // change the model and return the action that has done it - ready to be added to a do / undo stack
+    public SnapshotDoUndoAction<T> change(final UnaryOperator<T> change, final String description) {
+        return change(change, description, null);
+    }
+    
+    // same with merge key - see SnapshotDoUndoAction
+    public SnapshotDoUndoAction<T> change(final UnaryOperator<T> change, final String description, final Object mergeKey) {
+        final T before = mySnapshot;
+        final SnapshotDoUndoAction<T> result = new SnapshotDoUndoAction<>(this, before, change.apply(before), description, mergeKey);
+        result.doAction();
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.doundo;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import tf.helper.xstreamfx.FXConverters;
+
+/**
+ * Default IDoUndoActionCodec: XML via XStream, including the JavaFX property converters from FXConverters.
+ * 
+ * XStream security requires that all types to be deserialized are allowed explicitly.
+ * Pass the wildcard patterns for your action classes & the data they reference, e.g. "tf.gpx.edit.**".
+ * @author thomas
+ */
+public class XStreamDoUndoActionCodec implements IDoUndoActionCodec {
+    private final XStream xstream;
+    
+    public XStreamDoUndoActionCodec(final String... allowedTypes) {
+        xstream = new XStream(new DomDriver(StandardCharsets.UTF_8.name()));
+        xstream.setMode(XStream.XPATH_RELATIVE_REFERENCES);
+        XStream.setupDefaultSecurity(xstream);
+        xstream.allowTypesByWildcard(new String[] {"tf.helper.doundo.**"});
+        xstream.allowTypesByWildcard(allowedTypes);
+
+        FXConverters.configure(xstream);
+    }
+    
+    // in case anyone needs to register more aliases / converters / ...
+    public XStream getXStream() {
+        return xstream;
+    }
+
+    @Override
+    public byte[] encode(final IDoUndoAction action) {
+        try {
+            return xstream.toXML(action).getBytes(StandardCharsets.UTF_8);
+        } catch (Exception ex) {
+            Logger.getLogger(XStreamDoUndoActionCodec.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    @Override
+    public IDoUndoAction decode(final byte[] data) {
+        try {
+            return (IDoUndoAction) xstream.fromXML(new String(data, StandardCharsets.UTF_8));
+        } catch (Exception ex) {
+            Logger.getLogger(XStreamDoUndoActionCodec.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+}
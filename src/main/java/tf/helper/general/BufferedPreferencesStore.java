@@ -0,0 +1,317 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind decorator for any IPreferencesStore.
+ * 
+ * put() & remove() only go to an in-memory buffer - repeated writes to the same key are coalesced.
+ * The buffer is written to the wrapped store in one batch after flushDelay, on flush() / close() and on shutdown of the JVM.
+ * get() sees the buffered values, so callers don't notice the delay.
+ * Prefixes are supported if the wrapped store supports them.
+ * 
+ * Helpful for stores like java.util.prefs where each put() might end up in a file / registry write, 
+ * e.g. RecentFiles or TableViewPreferences that write many values at once.
+ * 
+ * One shutdown hook for all instances that only holds them weakly - close() isn't required to get rid of an instance.
+ * Pending changes keep it alive until they have been flushed.
+ * 
+ * @author thomas
+ */
+public class BufferedPreferencesStore implements IPreferencesStore, Flushable, Closeable {
+    public final static long DEFAULT_FLUSH_DELAY = 1000;
+    
+    // marker for removed keys in the buffer
+    private final static Object REMOVED = new Object();
+    
+    // one thread for all instances - flushes are short
+    private final static ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        final Thread thread = new Thread(runnable, "BufferedPreferencesStore-Flusher");
+        // don't keep the application alive - shutdown hook takes care of the rest
+        thread.setDaemon(true);
+        return thread;
+    });
+    // guarded by itself: all instances that haven't been closed - for the shutdown hook
+    private final static Set<BufferedPreferencesStore> INSTANCES = Collections.newSetFromMap(new WeakHashMap<>());
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(BufferedPreferencesStore::flushAll, "BufferedPreferencesStore-Shutdown"));
+    }
+
+    private final IPreferencesStore myStore;
+    private final long myFlushDelay;
+    
+    // guarded by itself: values to be written in order of first change, REMOVED for removed keys
+    private Map<String, Object> myPending = new LinkedHashMap<>();
+    // batch that is currently written to the store - still needs to be visible for get()
+    private Map<String, Object> myFlushing = new LinkedHashMap<>();
+    private boolean myFlushScheduled = false;
+    private boolean myClosed = false;
+    // only one flush / clear at a time - so the order of writes to the store is kept
+    private final Object myFlushLock = new Object();
+
+    public BufferedPreferencesStore(final IPreferencesStore store) {
+        this(store, DEFAULT_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    public BufferedPreferencesStore(final IPreferencesStore store, final long flushDelay, final TimeUnit unit) {
+        myStore = store;
+        myFlushDelay = unit.toMillis(flushDelay);
+        
+        synchronized (INSTANCES) {
+            INSTANCES.add(this);
+        }
+    }
+    
+    public IPreferencesStore getStore() {
+        return myStore;
+    }
+    
+    public long getFlushDelay() {
+        return myFlushDelay;
+    }
+    
+    // number of changes not yet written to the store
+    public synchronized int getPendingCount() {
+        return myPending.size();
+    }
+
+    @Override
+    public String get(final String key, final String defaultValue) {
+        synchronized (this) {
+            Object value = myPending.get(key);
+            if (value == null) {
+                value = myFlushing.get(key);
+            }
+            if (value == REMOVED) {
+                return defaultValue;
+            }
+            if (value != null) {
+                return (String) value;
+            }
+        }
+        return myStore.get(key, defaultValue);
+    }
+
+    @Override
+    public void put(final String key, final String value) {
+        if (value == null) {
+            // nothing to write - same as remove
+            remove(key);
+            return;
+        }
+        buffer(key, value);
+    }
+
+    @Override
+    public void remove(final String key) {
+        buffer(key, REMOVED);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (myFlushLock) {
+            synchronized (this) {
+                myPending.clear();
+            }
+            myStore.clear();
+        }
+    }
+
+    @Override
+    public void exportPreferences(final OutputStream os) {
+        flush();
+        myStore.exportPreferences(os);
+    }
+
+    @Override
+    public void importPreferences(final InputStream is) {
+        // imported values win over buffered ones
+        flush();
+        myStore.importPreferences(is);
+    }
+    
+    @Override
+    public boolean supportsPrefixes() {
+        return myStore.supportsPrefixes();
+    }
+
+    @Override
+    public SortedMap<String, String> getAll(final String prefix) {
+        // no flush in between - otherwise we might miss values that are neither in the store nor buffered
+        synchronized (myFlushLock) {
+            final SortedMap<String, String> result = new TreeMap<>(myStore.getAll(prefix));
+            synchronized (this) {
+                for (Map.Entry<String, Object> entry : myPending.entrySet()) {
+                    if (!entry.getKey().startsWith(prefix)) {
+                        continue;
+                    }
+                    if (entry.getValue() == REMOVED) {
+                        result.remove(entry.getKey());
+                    } else {
+                        result.put(entry.getKey(), (String) entry.getValue());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void putAll(final Map<String, String> values) {
+        synchronized (this) {
+            if (!myClosed) {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    myPending.put(entry.getKey(), (entry.getValue() != null) ? entry.getValue() : REMOVED);
+                }
+                scheduleFlush();
+                return;
+            }
+        }
+        myStore.putAll(values);
+    }
+
+    @Override
+    public void removePrefix(final String prefix) {
+        synchronized (myFlushLock) {
+            // buffered as removal of all keys we currently have
+            final Set<String> keys = getAll(prefix).keySet();
+            synchronized (this) {
+                if (!myClosed) {
+                    for (String key : keys) {
+                        myPending.put(key, REMOVED);
+                    }
+                    scheduleFlush();
+                    return;
+                }
+            }
+            myStore.removePrefix(prefix);
+        }
+    }
+    
+    // write all buffered changes to the store now
+    @Override
+    public void flush() {
+        synchronized (myFlushLock) {
+            final Map<String, Object> batch;
+            synchronized (this) {
+                myFlushScheduled = false;
+                if (myPending.isEmpty()) {
+                    return;
+                }
+                batch = myPending;
+                myPending = myFlushing;
+                myFlushing = batch;
+            }
+
+            try {
+                // one bulk call - null values for removed keys
+                final Map<String, String> values = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                    values.put(entry.getKey(), (entry.getValue() != REMOVED) ? (String) entry.getValue() : null);
+                }
+                myStore.putAll(values);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(BufferedPreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+                // try again later - but don't overwrite anything that has been changed in the meantime
+                synchronized (this) {
+                    for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                        myPending.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                    scheduleFlush();
+                }
+            } finally {
+                synchronized (this) {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    // flush and stop buffering - further changes go directly to the store
+    @Override
+    public void close() {
+        synchronized (this) {
+            myClosed = true;
+        }
+        flush();
+        synchronized (INSTANCES) {
+            INSTANCES.remove(this);
+        }
+    }
+    
+    private static void flushAll() {
+        final List<BufferedPreferencesStore> instances;
+        synchronized (INSTANCES) {
+            instances = new ArrayList<>(INSTANCES);
+        }
+        for (BufferedPreferencesStore instance : instances) {
+            instance.flush();
+        }
+    }
+    
+    private void buffer(final String key, final Object value) {
+        synchronized (this) {
+            if (!myClosed) {
+                myPending.put(key, value);
+                scheduleFlush();
+                return;
+            }
+        }
+        
+        if (value == REMOVED) {
+            myStore.remove(key);
+        } else {
+            myStore.put(key, (String) value);
+        }
+    }
+    
+    // called with lock held
+    private void scheduleFlush() {
+        if (!myFlushScheduled && !myClosed) {
+            myFlushScheduled = true;
+            FLUSHER.schedule(this::flush, myFlushDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Lenient parsing of LocalDate, LocalDateTime, OffsetDateTime & ZonedDateTime values in various formats.
+ * 
+ * The format is detected once - from the first values of a column or the first value parsed - and then used for all following values.
+ * A value that doesn't match the detected format is tried with the other formats - but the detected format stays the same.
+ * ISO values (yyyy-MM-dd[THH:mm[:ss[.S]]][offset]) are parsed without DateTimeFormatter.
+ * 
+ * Lenient means:
+ * - any of the known formats, e.g. 01.04.2016 or 04/01/2016 10:15
+ * - date only values for date time types (at midnight), date time values for LocalDate (time is ignored)
+ * - values without zone for zoned types (in the default zone)
+ * 
+ * Thread safe - if parallel threads detect the format from their first value at the same time, the first one wins.
+ * 
+ * @author thomas
+ */
+public class DateTimeParser<T> {
+    // number of values used by parseColumn() to detect the format
+    public final static int SAMPLE_SIZE = 10;
+
+    // order of day, month & year in numeric formats
+    private final static int DAY_MONTH_YEAR = 0;
+    private final static int MONTH_DAY_YEAR = 1;
+    private final static int YEAR_MONTH_DAY = 2;
+    // max digits per number - yyyy is always 4 digits, d & M are 1 or 2 digits
+    private final static int[] YEAR_FIRST_WIDTHS = {4, 2, 2};
+    private final static int[] YEAR_LAST_WIDTHS = {2, 2, 4};
+
+    // known formats in the order they are tried - d/M before M/d, ambiguous columns need to be resolved by detectFormat()
+    // the frequent ones by hand, the rest with DateTimeFormatter
+    private final static List<IFormat> DEFAULT_FORMATS = Collections.unmodifiableList(Arrays.asList(
+            (value) -> parseIso(value, true),
+            (value) -> parseFormatter(value, DateTimeFormatter.ISO_DATE_TIME),
+            (value) -> parseFormatter(value, DateTimeFormatter.ISO_DATE),
+            (value) -> parseNumeric(value, DAY_MONTH_YEAR, '.'),
+            (value) -> parseNumeric(value, DAY_MONTH_YEAR, '/'),
+            (value) -> parseNumeric(value, MONTH_DAY_YEAR, '/'),
+            (value) -> parseNumeric(value, YEAR_MONTH_DAY, '/'),
+            (value) -> parseCompact(value),
+            (value) -> parseFormatter(value, DateTimeFormatter.RFC_1123_DATE_TIME)));
+    
+    // parse a value into its fields - null if the value doesn't match
+    @FunctionalInterface
+    private interface IFormat {
+        Fields parse(final CharSequence value);
+    }
+    
+    // what we have found in a value - time & zone are null if not part of the value
+    private static class Fields {
+        private final LocalDate date;
+        private final LocalTime time;
+        private final ZoneId zone;
+        
+        private Fields(final LocalDate date, final LocalTime time, final ZoneId zone) {
+            this.date = date;
+            this.time = time;
+            this.zone = zone;
+        }
+    }
+    
+    private final Class<T> myType;
+    private final List<IFormat> myFormats = new ArrayList<>();
+    private volatile ZoneId myDefaultZone = ZoneId.systemDefault();
+    private final AtomicReference<IFormat> myFormat = new AtomicReference<>();
+    
+    public DateTimeParser(final Class<T> type) {
+        this(type, new DateTimeFormatter[0]);
+    }
+    
+    // additional formats are tried before the default ones
+    public DateTimeParser(final Class<T> type, final DateTimeFormatter... formats) {
+        if (!isSupported(type)) {
+            throw new UnsupportedOperationException("Cannot parse date / time to " + type.getName());
+        }
+        myType = type;
+        
+        for (DateTimeFormatter format : formats) {
+            myFormats.add((value) -> parseFormatter(value, format));
+        }
+        myFormats.addAll(DEFAULT_FORMATS);
+    }
+    
+    public static boolean isSupported(final Class<?> type) {
+        return LocalDate.class.equals(type) || LocalDateTime.class.equals(type) || 
+                OffsetDateTime.class.equals(type) || ZonedDateTime.class.equals(type);
+    }
+    
+    public Class<T> getType() {
+        return myType;
+    }
+    
+    // zone for values without zone or offset - system default if not set
+    public ZoneId getDefaultZone() {
+        return myDefaultZone;
+    }
+    
+    public void setDefaultZone(final ZoneId zone) {
+        myDefaultZone = zone;
+    }
+    
+    public boolean isFormatDetected() {
+        return myFormat.get() != null;
+    }
+    
+    // forget the detected format, e.g. before parsing an other column
+    public void reset() {
+        myFormat.set(null);
+    }
+    
+    // use the first format that matches all values of the sample
+    public boolean detectFormat(final List<? extends CharSequence> sample) {
+        for (IFormat format : myFormats) {
+            boolean matches = false;
+            for (CharSequence value : sample) {
+                if (value == null || value.length() == 0) {
+                    continue;
+                }
+                matches = (format.parse(value) != null);
+                if (!matches) {
+                    break;
+                }
+            }
+            if (matches) {
+                myFormat.set(format);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public T parse(final CharSequence value) {
+        final Fields fields = parseFields(value, true);
+        if (fields == null) {
+            throw new DateTimeParseException("Text '" + value + "' could not be parsed to " + myType.getSimpleName(), (value != null) ? value : "", 0);
+        }
+        return convert(fields);
+    }
+    
+    // null if value can't be parsed - no exceptions & log messages
+    public T parse(final CharSequence value, final ParseStatus status) {
+        return parse(value, status, true);
+    }
+    private T parse(final CharSequence value, final ParseStatus status, final boolean detect) {
+        if (value == null || value.length() == 0) {
+            if (status != null) {
+                status.set(ParseStatus.EMPTY, 0);
+            }
+            return null;
+        }
+
+        final Fields fields = parseFields(value, detect);
+        if (fields == null) {
+            if (status != null) {
+                status.set(ParseStatus.INVALID, 0);
+            }
+            return null;
+        }
+        if (status != null) {
+            status.setOk();
+        }
+        return convert(fields);
+    }
+    
+    // format detected from the first SAMPLE_SIZE values, see GeneralParser.parseIntColumn() for pool & status
+    // if the sample doesn't give a format, none is detected from the other values - that would depend on the timing of the threads
+    public List<T> parseColumn(final List<? extends CharSequence> values, final ForkJoinPool pool, final ParseStatus status) {
+        detectFormat(values.subList(0, Math.min(SAMPLE_SIZE, values.size())));
+        
+        final Object[] result = new Object[values.size()];
+        GeneralParser.parseColumn(values.size(), pool, status, (index, valueStatus) -> {
+            result[index] = parse(values.get(index), valueStatus, false);
+        });
+        return ObjectsHelper.uncheckedCast(Arrays.asList(result));
+    }
+    
+    private Fields parseFields(final CharSequence value, final boolean detect) {
+        if (value == null || value.length() == 0) {
+            return null;
+        }
+        
+        final IFormat format = myFormat.get();
+        if (format != null) {
+            final Fields result = format.parse(value);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        // nothing detected yet or value doesn't match - try all formats
+        // TFE, 20261018: a detected format is kept - otherwise one 13/05/2016 would turn all following M/d/yyyy values into d/M/yyyy
+        for (IFormat candidate : myFormats) {
+            if (candidate == format) {
+                continue;
+            }
+            final Fields result = candidate.parse(value);
+            if (result != null) {
+                if (detect && format == null) {
+                    myFormat.compareAndSet(null, candidate);
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+    
+    private T convert(final Fields fields) {
+        final Object result;
+        if (LocalDate.class.equals(myType)) {
+            result = fields.date;
+        } else {
+            final LocalTime time = (fields.time != null) ? fields.time : LocalTime.MIDNIGHT;
+            if (LocalDateTime.class.equals(myType)) {
+                result = LocalDateTime.of(fields.date, time);
+            } else {
+                final ZonedDateTime zoned = ZonedDateTime.of(fields.date, time, (fields.zone != null) ? fields.zone : myDefaultZone);
+                result = ZonedDateTime.class.equals(myType) ? zoned : zoned.toOffsetDateTime();
+            }
+        }
+        return myType.cast(result);
+    }
+    
+    // strict ISO parser for GeneralParser - same results as LocalDate::parse & co but faster, fallback for anything not handled here
+    static <T> Function<String, T> getIsoParser(final Class<T> type, final Function<String, T> fallback) {
+        final boolean withTime = !LocalDate.class.equals(type);
+        final boolean withZone = OffsetDateTime.class.equals(type) || ZonedDateTime.class.equals(type);
+        final DateTimeParser<T> converter = new DateTimeParser<>(type);
+        
+        return (value) -> {
+            final Fields fields = parseIso(value, false);
+            if (fields != null && (fields.time != null) == withTime && (fields.zone != null) == withZone) {
+                return converter.convert(fields);
+            }
+            return fallback.apply(value);
+        };
+    }
+    
+    private static Fields parseFormatter(final CharSequence value, final DateTimeFormatter format) {
+        try {
+            final TemporalAccessor parsed = format.parse(value);
+            final LocalDate date = parsed.query(TemporalQueries.localDate());
+            if (date == null) {
+                return null;
+            }
+            return new Fields(date, parsed.query(TemporalQueries.localTime()), parsed.query(TemporalQueries.zone()));
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+    
+    // yyyy-MM-dd[THH:mm[:ss[.S{1,9}]][Z|+HH:mm|-HH:mm]] by hand - lenient also allows ' ' instead of 'T'
+    private static Fields parseIso(final CharSequence value, final boolean lenient) {
+        final int length = value.length();
+        if (length < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return null;
+        }
+        final int year = getDigits(value, 0, 4);
+        final int month = getDigits(value, 5, 2);
+        final int day = getDigits(value, 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return null;
+        }
+        
+        try {
+            final LocalDate date = LocalDate.of(year, month, day);
+            if (length == 10) {
+                return new Fields(date, null, null);
+            }
+            
+            final char separator = value.charAt(10);
+            if (length < 16 || (separator != 'T' && !(lenient && separator == ' ')) || value.charAt(13) != ':') {
+                return null;
+            }
+            final int hour = getDigits(value, 11, 2);
+            final int minute = getDigits(value, 14, 2);
+            int second = 0;
+            int nano = 0;
+            int pos = 16;
+            if (pos < length && value.charAt(pos) == ':') {
+                second = getDigits(value, pos + 1, 2);
+                pos += 3;
+                if (pos < length && value.charAt(pos) == '.') {
+                    pos++;
+                    final int start = pos;
+                    while (pos < length && pos - start < 9 && isDigit(value.charAt(pos))) {
+                        nano = nano * 10 + (value.charAt(pos) - '0');
+                        pos++;
+                    }
+                    if (pos == start || (pos < length && isDigit(value.charAt(pos)))) {
+                        return null;
+                    }
+                    for (int i = pos - start; i < 9; i++) {
+                        nano *= 10;
+                    }
+                }
+            }
+            if (hour < 0 || minute < 0 || second < 0) {
+                return null;
+            }
+            final LocalTime time = LocalTime.of(hour, minute, second, nano);
+            if (pos == length) {
+                return new Fields(date, time, null);
+            }
+
+            final char sign = value.charAt(pos);
+            if (sign == 'Z' && pos + 1 == length) {
+                return new Fields(date, time, ZoneOffset.UTC);
+            }
+            if ((sign == '+' || sign == '-') && pos + 6 == length && value.charAt(pos + 3) == ':') {
+                final int offsetHour = getDigits(value, pos + 1, 2);
+                final int offsetMinute = getDigits(value, pos + 4, 2);
+                if (offsetHour < 0 || offsetMinute < 0) {
+                    return null;
+                }
+                final int factor = (sign == '-') ? -1 : 1;
+                return new Fields(date, time, ZoneOffset.ofHoursMinutes(factor * offsetHour, factor * offsetMinute));
+            }
+            return null;
+        } catch (DateTimeException ex) {
+            // e.g. 2016-02-30 or 25:00
+            return null;
+        }
+    }
+    
+    // d.M.yyyy[ H:mm[:ss]] and friends by hand - as DateTimeFormatter with ResolverStyle.STRICT, but d, M & H have at most 2 digits
+    private static Fields parseNumeric(final CharSequence value, final int order, final char separator) {
+        final int length = value.length();
+        final int[] widths = (order == YEAR_MONTH_DAY) ? YEAR_FIRST_WIDTHS : YEAR_LAST_WIDTHS;
+        final int[] numbers = new int[3];
+        int pos = 0;
+        for (int i = 0; i < 3; i++) {
+            if (i > 0) {
+                if (pos >= length || value.charAt(pos) != separator) {
+                    return null;
+                }
+                pos++;
+            }
+            final int start = pos;
+            int number = 0;
+            while (pos < length && pos - start < widths[i] && isDigit(value.charAt(pos))) {
+                number = number * 10 + (value.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == start || (widths[i] == 4 && pos - start < 4)) {
+                return null;
+            }
+            numbers[i] = number;
+        }
+        
+        try {
+            final LocalDate date;
+            switch (order) {
+                case DAY_MONTH_YEAR:
+                    date = LocalDate.of(numbers[2], numbers[1], numbers[0]);
+                    break;
+                case MONTH_DAY_YEAR:
+                    date = LocalDate.of(numbers[2], numbers[0], numbers[1]);
+                    break;
+                default:
+                    date = LocalDate.of(numbers[0], numbers[1], numbers[2]);
+                    break;
+            }
+            if (pos == length) {
+                return new Fields(date, null, null);
+            }
+            
+            // time: ' ' H:mm[:ss]
+            if (value.charAt(pos) != ' ') {
+                return null;
+            }
+            pos++;
+            final int start = pos;
+            int hour = 0;
+            while (pos < length && pos - start < 2 && isDigit(value.charAt(pos))) {
+                hour = hour * 10 + (value.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == start || pos >= length || value.charAt(pos) != ':') {
+                return null;
+            }
+            final int minute = getDigits(value, pos + 1, 2);
+            pos += 3;
+            int second = 0;
+            if (pos < length && value.charAt(pos) == ':') {
+                second = getDigits(value, pos + 1, 2);
+                pos += 3;
+            }
+            if (minute < 0 || second < 0 || pos != length) {
+                return null;
+            }
+            return new Fields(date, LocalTime.of(hour, minute, second), null);
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+    
+    // yyyyMMdd[HHmmss]
+    private static Fields parseCompact(final CharSequence value) {
+        final int length = value.length();
+        if (length != 8 && length != 14) {
+            return null;
+        }
+        final int year = getDigits(value, 0, 4);
+        final int month = getDigits(value, 4, 2);
+        final int day = getDigits(value, 6, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return null;
+        }
+
+        try {
+            final LocalDate date = LocalDate.of(year, month, day);
+            if (length == 8) {
+                return new Fields(date, null, null);
+            }
+            final int hour = getDigits(value, 8, 2);
+            final int minute = getDigits(value, 10, 2);
+            final int second = getDigits(value, 12, 2);
+            if (hour < 0 || minute < 0 || second < 0) {
+                return null;
+            }
+            return new Fields(date, LocalTime.of(hour, minute, second), null);
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+    
+    // value of count digits starting at offset, -1 if not all digits
+    private static int getDigits(final CharSequence value, final int offset, final int count) {
+        if (offset + count > value.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+    
+    // only ASCII digits - Character.isDigit() also accepts other scripts
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+}
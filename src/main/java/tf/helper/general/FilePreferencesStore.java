@@ -0,0 +1,429 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * IPreferencesStore that keeps all keys in one compact binary file.
+ * 
+ * The file is memory-mapped on startup and keys are looked up lazily with a binary search in the mapped index - 
+ * so startup only walks the index once to validate it and only the keys that are used are ever read.
+ * Changes are kept in memory until flush() / close() where the file is rewritten to a temp file and moved into place atomically.
+ * 
+ * File format (all ints big endian):
+ * - header: magic, version, number of entries, length of file
+ * - index: keyOffset, keyLength, valueOffset, valueLength per entry - sorted by key (unsigned UTF-8 bytes)
+ * - data: UTF-8 bytes of keys & values
+ * 
+ * Some OS (windows...) don't allow to replace a file that is still mapped - and java can't unmap explicitly.
+ * In that case the new content is left next to it as "name.new" and moved into place on next startup.
+ * 
+ * export / importPreferences use the XML format of java.util.Properties.
+ * Prefixes are supported - keys with the same prefix are next to each other in the index.
+ * 
+ * @author thomas
+ */
+public class FilePreferencesStore implements IPreferencesStore, Flushable, Closeable {
+    private final static int MAGIC = 0x54465053;
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 16;
+    private final static int INDEX_ENTRY_SIZE = 16;
+    private final static String NEW_SUFFIX = ".new";
+    private final static String TEMP_SUFFIX = ".tmp";
+    
+    // marker for removed keys in the changes
+    private final static Object REMOVED = new Object();
+    private final static ByteBuffer EMPTY = createSnapshot(new HashMap<>());
+
+    private final Path myPath;
+    // mapped file or what we have written last - only accessed with absolute get()
+    private ByteBuffer mySnapshot;
+    // changes since last flush, REMOVED for removed keys
+    private final Map<String, Object> myChanges = new HashMap<>();
+    // snapshot is to be ignored after clear()
+    private boolean myCleared = false;
+
+    public FilePreferencesStore(final Path path) {
+        myPath = path;
+        mySnapshot = loadSnapshot();
+    }
+    
+    public Path getPath() {
+        return myPath;
+    }
+    
+    // number of keys in the store - requires a walk through the snapshot if there are changes
+    public synchronized int size() {
+        if (myChanges.isEmpty()) {
+            return myCleared ? 0 : getEntryCount(mySnapshot);
+        }
+        return getAll("").size();
+    }
+    
+    public synchronized boolean isDirty() {
+        return myCleared || !myChanges.isEmpty();
+    }
+
+    @Override
+    public synchronized String get(final String key, final String defaultValue) {
+        final Object value = myChanges.get(key);
+        if (value == REMOVED) {
+            return defaultValue;
+        }
+        if (value != null) {
+            return (String) value;
+        }
+        if (myCleared) {
+            return defaultValue;
+        }
+        
+        final String result = lookup(mySnapshot, key.getBytes(StandardCharsets.UTF_8));
+        return (result != null) ? result : defaultValue;
+    }
+
+    @Override
+    public synchronized void put(final String key, final String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        myChanges.put(key, value);
+    }
+
+    @Override
+    public synchronized void remove(final String key) {
+        myChanges.put(key, REMOVED);
+    }
+
+    @Override
+    public synchronized void clear() {
+        myChanges.clear();
+        myCleared = true;
+    }
+
+    @Override
+    public void exportPreferences(final OutputStream os) {
+        MemoryPreferencesStore.exportProperties(getAll(""), os);
+    }
+
+    @Override
+    public void importPreferences(final InputStream is) {
+        putAll(MemoryPreferencesStore.importProperties(is));
+    }
+
+    @Override
+    public boolean supportsPrefixes() {
+        return true;
+    }
+    
+    // snapshot plus changes - the sorted index gives us the first key with prefix, the rest follow
+    @Override
+    public synchronized SortedMap<String, String> getAll(final String prefix) {
+        final SortedMap<String, String> result = new TreeMap<>();
+        if (!myCleared) {
+            final byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+            final int count = getEntryCount(mySnapshot);
+            for (int i = lowerBound(mySnapshot, prefixBytes); i < count; i++) {
+                final int index = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+                final int keyOffset = mySnapshot.getInt(index);
+                final int keyLength = mySnapshot.getInt(index + 4);
+                if (keyLength < prefixBytes.length || compare(mySnapshot, keyOffset, prefixBytes.length, prefixBytes) != 0) {
+                    break;
+                }
+                result.put(getString(mySnapshot, keyOffset, keyLength), getString(mySnapshot, mySnapshot.getInt(index + 8), mySnapshot.getInt(index + 12)));
+            }
+        }
+        for (Map.Entry<String, Object> entry : myChanges.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            if (entry.getValue() == REMOVED) {
+                result.remove(entry.getKey());
+            } else {
+                result.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void putAll(final Map<String, String> values) {
+        IPreferencesStore.super.putAll(values);
+    }
+
+    @Override
+    public synchronized void removePrefix(final String prefix) {
+        for (String key : getAll(prefix).keySet()) {
+            myChanges.put(key, REMOVED);
+        }
+    }
+
+    // rewrite the file with all changes - nothing to do if there aren't any
+    @Override
+    public synchronized void flush() {
+        if (!isDirty()) {
+            return;
+        }
+        
+        final ByteBuffer snapshot = createSnapshot(getAll(""));
+        final Path temp = myPath.resolveSibling(myPath.getFileName() + TEMP_SUFFIX);
+        try {
+            if (myPath.getParent() != null) {
+                Files.createDirectories(myPath.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                final ByteBuffer data = snapshot.duplicate();
+                data.rewind();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                // on disk before we move it into place
+                channel.force(true);
+            }
+            
+            try {
+                moveFile(temp, myPath);
+                // don't want an older version to win on next startup
+                Files.deleteIfExists(myPath.resolveSibling(myPath.getFileName() + NEW_SUFFIX));
+            } catch (FileSystemException ex) {
+                // current file is still mapped - try again on next startup
+                Logger.getLogger(FilePreferencesStore.class.getName()).log(Level.FINE, null, ex);
+                moveFile(temp, myPath.resolveSibling(myPath.getFileName() + NEW_SUFFIX));
+            }
+            
+            // no need to map again - we already have everything in memory
+            mySnapshot = snapshot;
+            myChanges.clear();
+            myCleared = false;
+        } catch (IOException ex) {
+            Logger.getLogger(FilePreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+    
+    private ByteBuffer loadSnapshot() {
+        // left over from last flush?
+        final Path newPath = myPath.resolveSibling(myPath.getFileName() + NEW_SUFFIX);
+        if (Files.exists(newPath)) {
+            try {
+                if (isValid(newPath)) {
+                    moveFile(newPath, myPath);
+                } else {
+                    Files.delete(newPath);
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(FilePreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        
+        if (!Files.exists(myPath)) {
+            return EMPTY;
+        }
+        try (FileChannel channel = FileChannel.open(myPath, StandardOpenOption.READ)) {
+            // mapping stays valid after the channel is closed
+            final ByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!isValid(result, channel.size())) {
+                Logger.getLogger(FilePreferencesStore.class.getName()).log(Level.SEVERE, "Invalid preferences file {0}", myPath);
+                return EMPTY;
+            }
+            return result;
+        } catch (IOException ex) {
+            Logger.getLogger(FilePreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+            return EMPTY;
+        }
+    }
+    
+    private static boolean isValid(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read until full or end of file
+            }
+            // index is checked once the file is loaded
+            return isValidHeader(header, channel.size());
+        }
+    }
+    
+    // complete files only - a crash while writing leaves a shorter file
+    private static boolean isValidHeader(final ByteBuffer snapshot, final long size) {
+        return size >= HEADER_SIZE && 
+                snapshot.getInt(0) == MAGIC && 
+                snapshot.getInt(4) == VERSION && 
+                snapshot.getInt(12) == size;
+    }
+    
+    // TFE, 20261018: and no index entry pointing outside of the data - otherwise a single broken byte shows up as exception on get()
+    private static boolean isValid(final ByteBuffer snapshot, final long size) {
+        if (!isValidHeader(snapshot, size)) {
+            return false;
+        }
+        
+        final int count = getEntryCount(snapshot);
+        final long dataOffset = HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE;
+        if (count < 0 || dataOffset > size) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            final int index = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            if (!isInData(snapshot.getInt(index), snapshot.getInt(index + 4), dataOffset, size) || 
+                    !isInData(snapshot.getInt(index + 8), snapshot.getInt(index + 12), dataOffset, size)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isInData(final int offset, final int length, final long dataOffset, final long size) {
+        return offset >= dataOffset && length >= 0 && (long) offset + length <= size;
+    }
+    
+    private static void moveFile(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private static int getEntryCount(final ByteBuffer snapshot) {
+        return snapshot.getInt(8);
+    }
+    
+    // index of the first key that isn't less than key
+    private static int lowerBound(final ByteBuffer snapshot, final byte[] key) {
+        int low = 0;
+        int high = getEntryCount(snapshot);
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int index = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+            if (compare(snapshot, snapshot.getInt(index), snapshot.getInt(index + 4), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // binary search in the sorted index
+    private static String lookup(final ByteBuffer snapshot, final byte[] key) {
+        int low = 0;
+        int high = getEntryCount(snapshot) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int index = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+            final int compare = compare(snapshot, snapshot.getInt(index), snapshot.getInt(index + 4), key);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return getString(snapshot, snapshot.getInt(index + 8), snapshot.getInt(index + 12));
+            }
+        }
+        return null;
+    }
+    
+    // same order as Arrays.compareUnsigned() that is used for sorting
+    private static int compare(final ByteBuffer snapshot, final int offset, final int length, final byte[] key) {
+        final int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            final int compare = Byte.toUnsignedInt(snapshot.get(offset + i)) - Byte.toUnsignedInt(key[i]);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - key.length;
+    }
+    
+    private static String getString(final ByteBuffer snapshot, final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = snapshot.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static ByteBuffer createSnapshot(final Map<String, String> values) {
+        final List<byte[][]> entries = new ArrayList<>();
+        int dataSize = 0;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            final byte[][] bytes = new byte[][] {entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue().getBytes(StandardCharsets.UTF_8)};
+            entries.add(bytes);
+            dataSize += bytes[0].length + bytes[1].length;
+        }
+        entries.sort((o1, o2) -> Arrays.compareUnsigned(o1[0], o2[0]));
+        
+        final int dataOffset = HEADER_SIZE + entries.size() * INDEX_ENTRY_SIZE;
+        final ByteBuffer result = ByteBuffer.allocate(dataOffset + dataSize);
+        result.putInt(MAGIC);
+        result.putInt(VERSION);
+        result.putInt(entries.size());
+        result.putInt(result.capacity());
+        
+        int offset = dataOffset;
+        for (byte[][] entry : entries) {
+            result.putInt(offset);
+            result.putInt(entry[0].length);
+            offset += entry[0].length;
+            result.putInt(offset);
+            result.putInt(entry[1].length);
+            offset += entry[1].length;
+        }
+        for (byte[][] entry : entries) {
+            result.put(entry[0]);
+            result.put(entry[1]);
+        }
+        return result;
+    }
+}
@@ -25,6 +25,16 @@
  */
 package tf.helper.general;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.time.LocalDate;
@@ -38,8 +48,18 @@ import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.HashMap;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,6 +67,15 @@ import java.util.logging.Logger;
  * General parser from string to various java data types.
  * 
  * Based on the idea of https://ideone.com/WtNDN2
+ * 
+ * Rows of strings, e.g. from CSV files, can be parsed into records & beans, see getRowParser().
+ * The parser for a class is generated once and cached - no reflection per row.
+ * Additional types can be added with registerParser() - for single values as well as for columns of rows.
+ * 
+ * For bulk parsing of numbers there are primitive versions that work on slices of any CharSequence (e.g. a CharBuffer), 
+ * don't allocate and report errors via ParseStatus instead of exceptions & log messages - see parseInt() & co.
+ * Whole columns - a list of values or a delimited CharSequence - can be parsed in one call, optionally in parallel - see parseIntColumn() & co.
+ * Date & time columns are parsed leniently in any format that DateTimeParser detects from the first values.
  * @author thomas
  */
 public class GeneralParser {
@@ -70,7 +99,675 @@ public class GeneralParser {
         throw new UnsupportedOperationException("Cannot parse string to " + param.getName());
     }
 
-    private final static HashMap<Class<?>, Function<String,?>> parser = new HashMap<>();
+    // TFE, 20261018: primitive parsing without String, boxing & exceptions
+    // same syntax as Integer.parseInt() & co without leading / trailing whitespace, 0 / false in case of errors
+    // status may be null if the caller isn't interested
+    
+    // 10^0 ... 10^22 are exact as double
+    private final static double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    // more digits might not fit into a long
+    private final static int MAX_MANTISSA_DIGITS = 18;
+    
+    public static int parseInt(final CharSequence chars, final ParseStatus status) {
+        return parseInt(chars, 0, chars.length(), status);
+    }
+    
+    public static int parseInt(final CharSequence chars, final int offset, final int length, final ParseStatus status) {
+        return (int) parseLong(chars, offset, length, Integer.MIN_VALUE, Integer.MAX_VALUE, status);
+    }
+    
+    public static long parseLong(final CharSequence chars, final ParseStatus status) {
+        return parseLong(chars, 0, chars.length(), status);
+    }
+    
+    public static long parseLong(final CharSequence chars, final int offset, final int length, final ParseStatus status) {
+        return parseLong(chars, offset, length, Long.MIN_VALUE, Long.MAX_VALUE, status);
+    }
+    
+    private static long parseLong(final CharSequence chars, final int offset, final int length, final long min, final long max, final ParseStatus status) {
+        Objects.checkFromIndexSize(offset, length, chars.length());
+        if (length == 0) {
+            return setStatus(status, ParseStatus.EMPTY, offset);
+        }
+        
+        final int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        final char first = chars.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = (first == '-');
+            i++;
+            if (i == end) {
+                return setStatus(status, ParseStatus.INVALID, i);
+            }
+        }
+        
+        // accumulate negatively - same as Long.parseLong(), since -min > max
+        final long limit = negative ? min : -max;
+        final long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            final int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return setStatus(status, ParseStatus.INVALID, i);
+            }
+            if (result < multmin) {
+                return setStatus(status, ParseStatus.OVERFLOW, i);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return setStatus(status, ParseStatus.OVERFLOW, i);
+            }
+            result -= digit;
+        }
+        
+        if (status != null) {
+            status.setOk();
+        }
+        return negative ? result : -result;
+    }
+    
+    public static double parseDouble(final CharSequence chars, final ParseStatus status) {
+        return parseDouble(chars, 0, chars.length(), status);
+    }
+    
+    // decimal notation with optional exponent, NaN, Infinity - no hex notation & no type suffixes
+    // OVERFLOW is reported for values that are too large, the result is +/-Infinity in that case
+    public static double parseDouble(final CharSequence chars, final int offset, final int length, final ParseStatus status) {
+        Objects.checkFromIndexSize(offset, length, chars.length());
+        if (length == 0) {
+            return setStatus(status, ParseStatus.EMPTY, offset);
+        }
+        
+        final int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        final char first = chars.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = (first == '-');
+            i++;
+        }
+        
+        // significant digits & their decimal exponent
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean truncated = false;
+        for (; i < end; i++) {
+            final int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            anyDigit = true;
+            if (mantissa == 0 && digit == 0) {
+                // leading zero
+                continue;
+            }
+            if (digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                digits++;
+            } else {
+                truncated = true;
+                exponent++;
+            }
+        }
+        if (i < end && chars.charAt(i) == '.') {
+            i++;
+            for (; i < end; i++) {
+                final int digit = chars.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                anyDigit = true;
+                if (mantissa == 0 && digit == 0) {
+                    exponent--;
+                    continue;
+                }
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    digits++;
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+        
+        if (!anyDigit) {
+            if (matches(chars, i, end, "NaN", false)) {
+                return setOk(status, Double.NaN);
+            }
+            if (matches(chars, i, end, "Infinity", false)) {
+                return setOk(status, negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+            }
+            return setStatus(status, ParseStatus.INVALID, i);
+        }
+        
+        if (i < end && (chars.charAt(i) == 'e' || chars.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+                negativeExponent = (chars.charAt(i) == '-');
+                i++;
+            }
+            final int exponentStart = i;
+            int value = 0;
+            for (; i < end; i++) {
+                final int digit = chars.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                // anything above is 0 or Infinity anyways
+                if (value < 100000) {
+                    value = value * 10 + digit;
+                }
+            }
+            if (i == exponentStart) {
+                return setStatus(status, ParseStatus.INVALID, i);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != end) {
+            return setStatus(status, ParseStatus.INVALID, i);
+        }
+        
+        if (mantissa == 0) {
+            return setOk(status, negative ? -0.0 : 0.0);
+        }
+        
+        double result;
+        if (!truncated && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            // mantissa & power of ten are exact doubles - so one multiplication / division is correctly rounded
+            result = (double) mantissa;
+            result = (exponent < 0) ? result / POWERS_OF_TEN[-exponent] : result * POWERS_OF_TEN[exponent];
+            result = negative ? -result : result;
+        } else {
+            // rare: long mantissas & large exponents need more work for correct rounding - leave it to the JDK
+            result = Double.parseDouble(chars.subSequence(offset, end).toString());
+        }
+        
+        if (Double.isInfinite(result)) {
+            if (status != null) {
+                status.set(ParseStatus.OVERFLOW, offset);
+            }
+            return result;
+        }
+        return setOk(status, result);
+    }
+    
+    public static boolean parseBoolean(final CharSequence chars, final ParseStatus status) {
+        return parseBoolean(chars, 0, chars.length(), status);
+    }
+    
+    // "true" or "false", ignoring case - unlike Boolean.parseBoolean() anything else is INVALID
+    public static boolean parseBoolean(final CharSequence chars, final int offset, final int length, final ParseStatus status) {
+        Objects.checkFromIndexSize(offset, length, chars.length());
+        if (length == 0) {
+            setStatus(status, ParseStatus.EMPTY, offset);
+            return false;
+        }
+        
+        final int end = offset + length;
+        if (matches(chars, offset, end, "true", true)) {
+            setOk(status, 0);
+            return true;
+        }
+        if (matches(chars, offset, end, "false", true)) {
+            setOk(status, 0);
+            return false;
+        }
+        setStatus(status, ParseStatus.INVALID, offset);
+        return false;
+    }
+    
+    // is chars[start, end) the text?
+    private static boolean matches(final CharSequence chars, final int start, final int end, final String text, final boolean ignoreCase) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            final char c = chars.charAt(start + i);
+            if (c != text.charAt(i) && (!ignoreCase || Character.toLowerCase(c) != text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int setStatus(final ParseStatus status, final int code, final int errorIndex) {
+        if (status != null) {
+            status.set(code, errorIndex);
+        }
+        return 0;
+    }
+    
+    private static double setOk(final ParseStatus status, final double result) {
+        if (status != null) {
+            status.setOk();
+        }
+        return result;
+    }
+    
+    // TFE, 20261018: parse whole columns at once - into primitive arrays or typed lists
+    // values that can't be parsed are 0 / null, status reports the first error with the index of the value (not of the character) as error index
+    // with a pool, columns of PARALLEL_THRESHOLD or more values are parsed in chunks in parallel - null to parse in the calling thread
+    // delimited columns: values separated by delimiter, e.g. '\n' - a delimiter at the end doesn't start another value
+    public final static int PARALLEL_THRESHOLD = 10000;
+    // chunks per thread of the pool - so that threads that are done early can help out
+    private final static int CHUNKS_PER_THREAD = 4;
+    
+    // parse the value at index and report the result in status
+    @FunctionalInterface
+    interface IValueParser {
+        void parse(final int index, final ParseStatus status);
+    }
+    
+    public static int[] parseIntColumn(final List<? extends CharSequence> values, final ForkJoinPool pool, final ParseStatus status) {
+        final int[] result = new int[values.size()];
+        parseColumn(values.size(), pool, status, (index, valueStatus) -> {
+            final CharSequence value = values.get(index);
+            result[index] = (value != null) ? parseInt(value, 0, value.length(), valueStatus) : setStatus(valueStatus, ParseStatus.EMPTY, 0);
+        });
+        return result;
+    }
+    
+    public static int[] parseIntColumn(final CharSequence chars, final char delimiter, final ForkJoinPool pool, final ParseStatus status) {
+        final int[] starts = getValueStarts(chars, delimiter);
+        final int[] result = new int[starts.length - 1];
+        parseColumn(result.length, pool, status, (index, valueStatus) -> {
+            result[index] = parseInt(chars, starts[index], starts[index+1] - 1 - starts[index], valueStatus);
+        });
+        return result;
+    }
+    
+    public static long[] parseLongColumn(final List<? extends CharSequence> values, final ForkJoinPool pool, final ParseStatus status) {
+        final long[] result = new long[values.size()];
+        parseColumn(values.size(), pool, status, (index, valueStatus) -> {
+            final CharSequence value = values.get(index);
+            result[index] = (value != null) ? parseLong(value, 0, value.length(), valueStatus) : setStatus(valueStatus, ParseStatus.EMPTY, 0);
+        });
+        return result;
+    }
+    
+    public static long[] parseLongColumn(final CharSequence chars, final char delimiter, final ForkJoinPool pool, final ParseStatus status) {
+        final int[] starts = getValueStarts(chars, delimiter);
+        final long[] result = new long[starts.length - 1];
+        parseColumn(result.length, pool, status, (index, valueStatus) -> {
+            result[index] = parseLong(chars, starts[index], starts[index+1] - 1 - starts[index], valueStatus);
+        });
+        return result;
+    }
+    
+    public static double[] parseDoubleColumn(final List<? extends CharSequence> values, final ForkJoinPool pool, final ParseStatus status) {
+        final double[] result = new double[values.size()];
+        parseColumn(values.size(), pool, status, (index, valueStatus) -> {
+            final CharSequence value = values.get(index);
+            result[index] = (value != null) ? parseDouble(value, 0, value.length(), valueStatus) : setStatus(valueStatus, ParseStatus.EMPTY, 0);
+        });
+        return result;
+    }
+    
+    public static double[] parseDoubleColumn(final CharSequence chars, final char delimiter, final ForkJoinPool pool, final ParseStatus status) {
+        final int[] starts = getValueStarts(chars, delimiter);
+        final double[] result = new double[starts.length - 1];
+        parseColumn(result.length, pool, status, (index, valueStatus) -> {
+            result[index] = parseDouble(chars, starts[index], starts[index+1] - 1 - starts[index], valueStatus);
+        });
+        return result;
+    }
+    
+    // any type supported by parse() - the parser is looked up once per column, not per value
+    // date & time columns are parsed leniently with the format detected from the first values - see DateTimeParser
+    public static <T> List<T> parseColumn(final List<String> values, final Class<T> type, final ForkJoinPool pool, final ParseStatus status) {
+        if (DateTimeParser.isSupported(type)) {
+            return new DateTimeParser<>(type).parseColumn(values, pool, status);
+        }
+        final Function<String, ?> func = getParser(type);
+        final Object[] result = new Object[values.size()];
+        parseColumn(values.size(), pool, status, (index, valueStatus) -> {
+            result[index] = parseValue(values.get(index), func, valueStatus);
+        });
+        return ObjectsHelper.uncheckedCast(Arrays.asList(result));
+    }
+    
+    public static <T> List<T> parseColumn(final CharSequence chars, final char delimiter, final Class<T> type, final ForkJoinPool pool, final ParseStatus status) {
+        final int[] starts = getValueStarts(chars, delimiter);
+        if (DateTimeParser.isSupported(type)) {
+            // same as for a list: format only detected from the sample, no exceptions for invalid values
+            return new DateTimeParser<>(type).parseColumn(new AbstractList<CharSequence>() {
+                @Override
+                public CharSequence get(final int index) {
+                    return chars.subSequence(starts[index], starts[index+1] - 1);
+                }
+
+                @Override
+                public int size() {
+                    return starts.length - 1;
+                }
+            }, pool, status);
+        }
+        final Function<String, ?> func = getParser(type);
+        final Object[] result = new Object[starts.length - 1];
+        parseColumn(result.length, pool, status, (index, valueStatus) -> {
+            result[index] = parseValue(chars.subSequence(starts[index], starts[index+1] - 1).toString(), func, valueStatus);
+        });
+        return ObjectsHelper.uncheckedCast(Arrays.asList(result));
+    }
+    
+    private static Object parseValue(final String value, final Function<String, ?> func, final ParseStatus status) {
+        if (value == null || value.isEmpty()) {
+            status.set(ParseStatus.EMPTY, 0);
+            return null;
+        }
+        try {
+            final Object result = func.apply(value);
+            status.setOk();
+            return result;
+        } catch (RuntimeException ex) {
+            // no logging per value - that's what status is for
+            status.set(ParseStatus.INVALID, 0);
+            return null;
+        }
+    }
+    
+    // start index of each value in chars plus the start of a virtual value after the end
+    private static int[] getValueStarts(final CharSequence chars, final char delimiter) {
+        // a delimiter at the end doesn't start another value
+        final int length = (chars.length() > 0 && chars.charAt(chars.length() - 1) == delimiter) ? chars.length() - 1 : chars.length();
+        if (length == 0) {
+            return new int[] {0};
+        }
+        
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (chars.charAt(i) == delimiter) {
+                count++;
+            }
+        }
+        
+        final int[] result = new int[count + 1];
+        int value = 1;
+        for (int i = 0; i < length; i++) {
+            if (chars.charAt(i) == delimiter) {
+                result[value++] = i + 1;
+            }
+        }
+        result[count] = length + 1;
+        return result;
+    }
+    
+    // run parser for all indices - in chunks on the pool for large columns
+    static void parseColumn(final int count, final ForkJoinPool pool, final ParseStatus status, final IValueParser parser) {
+        if (pool == null || count < PARALLEL_THRESHOLD) {
+            reportFirstError(status, parseChunk(0, count, parser));
+            return;
+        }
+        
+        final int chunkCount = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD);
+        final int chunkSize = (count + chunkCount - 1) / chunkCount;
+        final List<ForkJoinTask<ParseStatus>> tasks = new ArrayList<>();
+        for (int from = 0; from < count; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(from + chunkSize, count);
+            tasks.add(pool.submit(() -> parseChunk(chunkFrom, chunkTo, parser)));
+        }
+        
+        // chunks are in order - so the first error found is the first one of the column
+        ParseStatus result = null;
+        for (ForkJoinTask<ParseStatus> task : tasks) {
+            final ParseStatus chunkStatus = task.join();
+            if (result == null && !chunkStatus.isOk()) {
+                result = chunkStatus;
+            }
+        }
+        reportFirstError(status, (result != null) ? result : new ParseStatus());
+    }
+    
+    // returns the first error of the chunk with the index of the value
+    private static ParseStatus parseChunk(final int from, final int to, final IValueParser parser) {
+        final ParseStatus result = new ParseStatus();
+        final ParseStatus valueStatus = new ParseStatus();
+        for (int i = from; i < to; i++) {
+            parser.parse(i, valueStatus);
+            if (!valueStatus.isOk() && result.isOk()) {
+                result.set(valueStatus.getCode(), i);
+            }
+        }
+        return result;
+    }
+    
+    private static void reportFirstError(final ParseStatus status, final ParseStatus firstError) {
+        if (status != null) {
+            status.set(firstError.getCode(), firstError.getErrorIndex());
+        }
+    }
+    
+    // TFE, 20261018: parsers for additional types, e.g. for columns of rows - null removes the parser for the type
+    // row parsers generated so far are discarded, since they might use the previous parser
+    public static <T> void registerParser(final Class<T> type, final Function<String, ? extends T> function) {
+        if (function != null) {
+            parser.put(type, function);
+        } else {
+            parser.remove(type);
+        }
+        rowParser.clear();
+    }
+    
+    // parse a row into a record or a bean - see getRowParser()
+    public static <T> T parseRow(final String[] row, final Class<T> type, final String... columns) {
+        return getRowParser(type, columns).apply(row);
+    }
+    
+    // parser for rows of strings into objects of type:
+    // - records: canonical constructor, columns are the components in order if no column names are given
+    // - beans: public no-arg constructor & setters, column names are required to find the setter for a column
+    // columns: name of record component / bean property for each column of the row - columns with unknown names are ignored
+    // missing values (null or row too short) are left at their defaults
+    public static <T> Function<String[], T> getRowParser(final Class<T> type, final String... columns) {
+        // copy - the caller might re-use the array, e.g. for the header of the next file
+        // List.copyOf() doesn't allow null for unknown columns
+        final List<String> columnList = (columns != null) ? Arrays.asList(columns.clone()) : Arrays.asList();
+        return ObjectsHelper.uncheckedCast(
+                rowParser.computeIfAbsent(type, (key) -> new ConcurrentHashMap<>()).computeIfAbsent(columnList, (key) -> createRowParser(type, columnList)));
+    }
+    
+    private static <T> Function<String[], ?> createRowParser(final Class<T> type, final List<String> columns) {
+        try {
+            if (isRecord(type)) {
+                return new RecordParser(type, columns);
+            }
+            if (!columns.isEmpty()) {
+                return new BeanParser(type, columns);
+            }
+        } catch (ReflectiveOperationException | LambdaConversionException ex) {
+            Logger.getLogger(GeneralParser.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        throw new UnsupportedOperationException("Cannot create row parser for " + type.getName() + " with columns " + columns);
+    }
+    
+    // parser for a single value of a type - same as in parse()
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Function<String, ?> getParser(final Class<?> type) {
+        final Function<String, ?> func = parser.get(type);
+        if (func != null) {
+            return func;
+        }
+        if (type.isEnum()) {
+            return (value) -> Enum.valueOf((Class) type, value);
+        }
+        throw new UnsupportedOperationException("Cannot parse string to " + type.getName());
+    }
+    
+    // default value of a type: null or 0 / false for primitives
+    private static Object getDefault(final Class<?> type) {
+        return type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+    
+    // records are only available from java 16 onwards - so we need to check via reflection
+    private static boolean isRecord(final Class<?> type) {
+        return type.getSuperclass() != null && "java.lang.Record".equals(type.getSuperclass().getName());
+    }
+    
+    // parse rows into a record with its canonical constructor
+    private static class RecordParser implements Function<String[], Object> {
+        private final Class<?> myType;
+        // (Object[])Object
+        private final MethodHandle myConstructor;
+        // per component of the record
+        private final Function<String, ?>[] myParsers;
+        private final Object[] myDefaults;
+        private final int[] myColumns;
+        
+        @SuppressWarnings("unchecked")
+        private RecordParser(final Class<?> type, final List<String> columns) throws ReflectiveOperationException {
+            myType = type;
+            
+            // type.getRecordComponents() - via reflection
+            final Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+            final Class<?>[] types = new Class<?>[components.length];
+            myParsers = new Function[components.length];
+            myDefaults = new Object[components.length];
+            myColumns = new int[components.length];
+            for (int i = 0; i < components.length; i++) {
+                final Method getType = components[i].getClass().getMethod("getType");
+                final Method getName = components[i].getClass().getMethod("getName");
+                types[i] = (Class<?>) getType.invoke(components[i]);
+                myParsers[i] = getParser(types[i]);
+                myDefaults[i] = getDefault(types[i]);
+                // by name or in order
+                myColumns[i] = columns.isEmpty() ? i : columns.indexOf((String) getName.invoke(components[i]));
+            }
+
+            final Constructor<?> constructor = type.getDeclaredConstructor(types);
+            if (!Modifier.isPublic(constructor.getModifiers()) || !Modifier.isPublic(type.getModifiers())) {
+                constructor.setAccessible(true);
+            }
+            myConstructor = MethodHandles.lookup().unreflectConstructor(constructor).
+                    asSpreader(Object[].class, types.length).
+                    asType(MethodType.methodType(Object.class, Object[].class));
+        }
+
+        @Override
+        public Object apply(final String[] row) {
+            final Object[] args = new Object[myParsers.length];
+            try {
+                for (int i = 0; i < myParsers.length; i++) {
+                    final String value = getValue(row, myColumns[i]);
+                    args[i] = (value != null) ? myParsers[i].apply(value) : myDefaults[i];
+                }
+                return (Object) myConstructor.invokeExact(args);
+            } catch (Throwable ex) {
+                Logger.getLogger(GeneralParser.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            throw new UnsupportedOperationException("Cannot parse row to " + myType.getName() + ": " + Arrays.toString(row));
+        }
+    }
+    
+    // parse rows into a bean with its no-arg constructor & setters
+    private static class BeanParser implements Function<String[], Object> {
+        private final Class<?> myType;
+        private final Supplier<Object> myFactory;
+        // per column of the row - null for unknown properties
+        private final Function<String, ?>[] myParsers;
+        private final BiConsumer<Object, Object>[] mySetters;
+        
+        @SuppressWarnings("unchecked")
+        private BeanParser(final Class<?> type, final List<String> columns) throws ReflectiveOperationException, LambdaConversionException {
+            myType = type;
+            
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            final MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            myFactory = createFactory(lookup, type, constructor);
+            
+            myParsers = new Function[columns.size()];
+            mySetters = new BiConsumer[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                final Method setter = findSetter(type, columns.get(i));
+                if (setter != null) {
+                    myParsers[i] = getParser(setter.getParameterTypes()[0]);
+                    mySetters[i] = createSetter(lookup, type, setter);
+                }
+            }
+        }
+        
+        private static Method findSetter(final Class<?> type, final String property) {
+            if (property == null || property.isEmpty()) {
+                return null;
+            }
+            
+            final String name = "set" + property.substring(0, 1).toUpperCase() + property.substring(1);
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers()) &&
+                        (parser.containsKey(method.getParameterTypes()[0]) || method.getParameterTypes()[0].isEnum())) {
+                    return method;
+                }
+            }
+            return null;
+        }
+        
+        // lambdas are as fast as direct calls once inlined - compared to Method.invoke()
+        private static Supplier<Object> createFactory(final MethodHandles.Lookup lookup, final Class<?> type, final MethodHandle constructor) throws LambdaConversionException {
+            try {
+                final CallSite site = LambdaMetafactory.metafactory(lookup, "get", 
+                        MethodType.methodType(Supplier.class), 
+                        MethodType.methodType(Object.class), 
+                        constructor, 
+                        MethodType.methodType(type));
+                return ObjectsHelper.uncheckedCast((Supplier<?>) site.getTarget().invokeExact());
+            } catch (LambdaConversionException ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new LambdaConversionException(ex);
+            }
+        }
+        
+        private static BiConsumer<Object, Object> createSetter(final MethodHandles.Lookup lookup, final Class<?> type, final Method setter) throws ReflectiveOperationException, LambdaConversionException {
+            final MethodHandle handle = lookup.unreflect(setter);
+            try {
+                final CallSite site = LambdaMetafactory.metafactory(lookup, "accept", 
+                        MethodType.methodType(BiConsumer.class), 
+                        MethodType.methodType(void.class, Object.class, Object.class), 
+                        handle, 
+                        // primitives are unboxed by the lambda
+                        MethodType.methodType(void.class, type, MethodType.methodType(setter.getParameterTypes()[0]).wrap().returnType()));
+                return ObjectsHelper.uncheckedCast((BiConsumer<?, ?>) site.getTarget().invokeExact());
+            } catch (LambdaConversionException ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new LambdaConversionException(ex);
+            }
+        }
+
+        @Override
+        public Object apply(final String[] row) {
+            try {
+                final Object result = myFactory.get();
+                for (int i = 0; i < mySetters.length; i++) {
+                    final String value = getValue(row, i);
+                    if (mySetters[i] != null && value != null) {
+                        mySetters[i].accept(result, myParsers[i].apply(value));
+                    }
+                }
+                return result;
+            } catch (Exception ex) {
+                Logger.getLogger(GeneralParser.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            throw new UnsupportedOperationException("Cannot parse row to " + myType.getName() + ": " + Arrays.toString(row));
+        }
+    }
+    
+    private static String getValue(final String[] row, final int column) {
+        return (column >= 0 && column < row.length) ? row[column] : null;
+    }
+
+    // TFE, 20261018: might be extended at runtime via registerParser()
+    // TFE, 20261018: ISO date & time values without DateTimeFormatter where possible - same results, JDK parse as fallback
+    private final static Map<Class<?>, Function<String,?>> parser = new ConcurrentHashMap<>();
+    // generated row parsers by type and list of column names
+    private final static Map<Class<?>, Map<List<String>, Function<String[], ?>>> rowParser = new ConcurrentHashMap<>();
     static {
         parser.put(boolean.class       , Boolean::parseBoolean);
         parser.put(byte.class          , Byte::parseByte);
@@ -89,15 +786,15 @@ public class GeneralParser {
         parser.put(String.class        , String::valueOf);
         parser.put(BigDecimal.class    , BigDecimal::new);
         parser.put(BigInteger.class    , BigInteger::new);
-        parser.put(LocalDate.class     , LocalDate::parse);
-        parser.put(LocalDateTime.class , LocalDateTime::parse);
+        parser.put(LocalDate.class     , DateTimeParser.getIsoParser(LocalDate.class, LocalDate::parse));
+        parser.put(LocalDateTime.class , DateTimeParser.getIsoParser(LocalDateTime.class, LocalDateTime::parse));
         parser.put(LocalTime.class     , LocalTime::parse);
         parser.put(MonthDay.class      , MonthDay::parse);
-        parser.put(OffsetDateTime.class, OffsetDateTime::parse);
+        parser.put(OffsetDateTime.class, DateTimeParser.getIsoParser(OffsetDateTime.class, OffsetDateTime::parse));
         parser.put(OffsetTime.class    , OffsetTime::parse);
         parser.put(Year.class          , Year::parse);
         parser.put(YearMonth.class     , YearMonth::parse);
-        parser.put(ZonedDateTime.class , ZonedDateTime::parse);
+        parser.put(ZonedDateTime.class , DateTimeParser.getIsoParser(ZonedDateTime.class, ZonedDateTime::parse));
         parser.put(ZoneId.class        , ZoneId::of);
         parser.put(ZoneOffset.class    , ZoneOffset::of);
     }
@@ -25,8 +25,13 @@
  */
 package tf.helper.general;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  *
@@ -44,4 +49,46 @@ public interface IPreferencesStore {
     public abstract void exportPreferences(OutputStream os);
     
     public abstract void importPreferences(InputStream is);
+    
+    // TFE, 20261018: bulk operations on all keys with a common prefix - e.g. all settings of a table in one go
+    // true for stores that can list their keys - the others use the defaults below, that work on everything they export
+    public default boolean supportsPrefixes() {
+        return false;
+    }
+    
+    // all keys starting with prefix and their values
+    // default: from exportPreferences() - needs to be in the XML format of java.util.Properties or java.util.prefs
+    public default SortedMap<String, String> getAll(final String prefix) {
+        final SortedMap<String, String> result = new TreeMap<>();
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        exportPreferences(os);
+        if (os.size() == 0) {
+            return result;
+        }
+        
+        for (Map.Entry<String, String> entry : MemoryPreferencesStore.importEntries(new ByteArrayInputStream(os.toByteArray())).entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+    
+    // null values remove the key
+    public default void putAll(final Map<String, String> values) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue() != null) {
+                put(entry.getKey(), entry.getValue());
+            } else {
+                remove(entry.getKey());
+            }
+        }
+    }
+    
+    public default void removePrefix(final String prefix) {
+        for (String key : getAll(prefix).keySet()) {
+            remove(key);
+        }
+    }
 }
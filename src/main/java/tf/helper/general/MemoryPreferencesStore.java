@@ -0,0 +1,176 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Default IPreferencesStore that keeps all values in memory - sorted by key, so that prefixes can be used.
+ * 
+ * Useful on its own, e.g. for tests or settings that don't need to survive a restart, 
+ * or to load from / save to any stream with import / exportPreferences - using the XML format of java.util.Properties.
+ * 
+ * @author thomas
+ */
+public class MemoryPreferencesStore implements IPreferencesStore {
+    private final ConcurrentNavigableMap<String, String> myValues = new ConcurrentSkipListMap<>();
+
+    public MemoryPreferencesStore() {
+    }
+
+    public MemoryPreferencesStore(final Map<String, String> values) {
+        putAll(values);
+    }
+    
+    public int size() {
+        return myValues.size();
+    }
+
+    @Override
+    public String get(final String key, final String defaultValue) {
+        return myValues.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public void put(final String key, final String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        myValues.put(key, value);
+    }
+
+    @Override
+    public void clear() {
+        myValues.clear();
+    }
+
+    @Override
+    public void remove(final String key) {
+        myValues.remove(key);
+    }
+
+    @Override
+    public void exportPreferences(final OutputStream os) {
+        exportProperties(myValues, os);
+    }
+
+    @Override
+    public void importPreferences(final InputStream is) {
+        putAll(importProperties(is));
+    }
+
+    @Override
+    public boolean supportsPrefixes() {
+        return true;
+    }
+
+    @Override
+    public SortedMap<String, String> getAll(final String prefix) {
+        return new TreeMap<>(getPrefixMap(prefix));
+    }
+
+    @Override
+    public void removePrefix(final String prefix) {
+        getPrefixMap(prefix).clear();
+    }
+    
+    // live view of all keys starting with prefix
+    private ConcurrentNavigableMap<String, String> getPrefixMap(final String prefix) {
+        // all keys between prefix and the next possible prefix, e.g. "abc" - "abd"
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return myValues.tailMap(prefix, true);
+        }
+        final String nextPrefix = prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+        return myValues.subMap(prefix, true, nextPrefix, false);
+    }
+    
+    // XML format of java.util.Properties - also used by other stores
+    static void exportProperties(final Map<String, String> values, final OutputStream os) {
+        final Properties properties = new Properties();
+        properties.putAll(values);
+        try {
+            properties.storeToXML(os, null, StandardCharsets.UTF_8.name());
+        } catch (IOException ex) {
+            Logger.getLogger(MemoryPreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    static Map<String, String> importProperties(final InputStream is) {
+        final Map<String, String> result = new HashMap<>();
+        final Properties properties = new Properties();
+        try {
+            properties.loadFromXML(is);
+        } catch (IOException ex) {
+            Logger.getLogger(MemoryPreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+            return result;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            result.put(key, properties.getProperty(key));
+        }
+        return result;
+    }
+    
+    // entries of any export in the XML format of java.util.Properties (value as text) or java.util.prefs (value as attribute)
+    static Map<String, String> importEntries(final InputStream is) {
+        final Map<String, String> result = new HashMap<>();
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            // don't go looking for the DTDs online
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            final NodeList entries = factory.newDocumentBuilder().parse(is).getElementsByTagName("entry");
+            for (int i = 0; i < entries.getLength(); i++) {
+                final Element entry = (Element) entries.item(i);
+                final String value = entry.hasAttribute("value") ? entry.getAttribute("value") : entry.getTextContent();
+                result.put(entry.getAttribute("key"), value);
+            }
+        } catch (ParserConfigurationException | SAXException | IOException ex) {
+            Logger.getLogger(MemoryPreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Decorator for any IPreferencesStore that notifies listeners about changes - per key or per prefix.
+ * 
+ * Changes are collected and delivered in batches via the executor: all changes until the executor runs the delivery end up in one event.
+ * With Platform::runLater as executor that means one event per FX pulse - on the FX application thread.
+ * Default executor delivers right away in the calling thread - one event per put() / remove() and one for putAll() / removePrefix().
+ * 
+ * One instance can be shared by e.g. multiple windows of an application - so that they see each others changes without reading from disk again.
+ * Writes to the store are done under the same lock as the collection of the changes, so the last value in an event is always the one in the store.
+ * 
+ * @author thomas
+ */
+public class ObservablePreferencesStore implements IPreferencesStore {
+    // who wants to know what
+    private static class Registration {
+        private final IPreferencesListener listener;
+        private final String key;
+        private final boolean isPrefix;
+        
+        private Registration(final IPreferencesListener listener, final String key, final boolean isPrefix) {
+            this.listener = listener;
+            this.key = key;
+            this.isPrefix = isPrefix;
+        }
+        
+        private boolean matches(final String changedKey) {
+            return isPrefix ? changedKey.startsWith(key) : changedKey.equals(key);
+        }
+    }
+    
+    private final IPreferencesStore myStore;
+    private final Executor myExecutor;
+    private final List<Registration> myRegistrations = new CopyOnWriteArrayList<>();
+    
+    // guarded by this: changes since last delivery - and writes to the store
+    private Map<String, String> myPending = new LinkedHashMap<>();
+    private boolean myPendingReset = false;
+    private boolean myDeliveryScheduled = false;
+
+    public ObservablePreferencesStore(final IPreferencesStore store) {
+        this(store, Runnable::run);
+    }
+
+    public ObservablePreferencesStore(final IPreferencesStore store, final Executor executor) {
+        myStore = store;
+        myExecutor = executor;
+    }
+    
+    public IPreferencesStore getStore() {
+        return myStore;
+    }
+    
+    public void addKeyListener(final String key, final IPreferencesListener listener) {
+        myRegistrations.add(new Registration(listener, key, false));
+    }
+    
+    // "" for all keys
+    public void addPrefixListener(final String prefix, final IPreferencesListener listener) {
+        myRegistrations.add(new Registration(listener, prefix, true));
+    }
+    
+    // from all keys & prefixes
+    public void removeListener(final IPreferencesListener listener) {
+        myRegistrations.removeIf((registration) -> registration.listener == listener);
+    }
+
+    @Override
+    public String get(final String key, final String defaultValue) {
+        return myStore.get(key, defaultValue);
+    }
+
+    @Override
+    public void put(final String key, final String value) {
+        changed(() -> {
+            myStore.put(key, value);
+            return Collections.singletonMap(key, value);
+        });
+    }
+
+    @Override
+    public void remove(final String key) {
+        changed(() -> {
+            myStore.remove(key);
+            return Collections.singletonMap(key, null);
+        });
+    }
+
+    @Override
+    public void clear() {
+        changed(() -> {
+            // if we can find out what is going to be removed, we tell exactly that
+            final Map<String, String> before = getAllIfSupported();
+            myStore.clear();
+            if (before == null) {
+                return null;
+            }
+
+            final Map<String, String> changes = new LinkedHashMap<>();
+            for (String key : before.keySet()) {
+                changes.put(key, null);
+            }
+            return changes;
+        });
+    }
+
+    @Override
+    public void exportPreferences(final OutputStream os) {
+        myStore.exportPreferences(os);
+    }
+
+    @Override
+    public void importPreferences(final InputStream is) {
+        changed(() -> {
+            final Map<String, String> before = getAllIfSupported();
+            myStore.importPreferences(is);
+            if (before == null) {
+                return null;
+            }
+
+            // what is different afterwards
+            final Map<String, String> changes = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : myStore.getAll("").entrySet()) {
+                if (!entry.getValue().equals(before.remove(entry.getKey()))) {
+                    changes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (String key : before.keySet()) {
+                changes.put(key, null);
+            }
+            return changes;
+        });
+    }
+
+    @Override
+    public boolean supportsPrefixes() {
+        return myStore.supportsPrefixes();
+    }
+
+    @Override
+    public SortedMap<String, String> getAll(final String prefix) {
+        return myStore.getAll(prefix);
+    }
+
+    @Override
+    public void putAll(final Map<String, String> values) {
+        changed(() -> {
+            myStore.putAll(values);
+            return values;
+        });
+    }
+
+    @Override
+    public void removePrefix(final String prefix) {
+        changed(() -> {
+            final Map<String, String> changes = new LinkedHashMap<>();
+            for (String key : myStore.getAll(prefix).keySet()) {
+                changes.put(key, null);
+            }
+            myStore.removePrefix(prefix);
+            return changes;
+        });
+    }
+    
+    private Map<String, String> getAllIfSupported() {
+        return myStore.supportsPrefixes() ? myStore.getAll("") : null;
+    }
+    
+    // write to the store & collect the changes under one lock
+    // write returns the changes or null if we can't tell what has changed
+    private void changed(final Supplier<Map<String, String>> write) {
+        synchronized (this) {
+            final Map<String, String> changes = write.get();
+            if (myRegistrations.isEmpty()) {
+                return;
+            }
+            
+            if (changes != null) {
+                myPending.putAll(changes);
+            } else {
+                myPendingReset = true;
+            }
+            if (myDeliveryScheduled) {
+                // will be part of the next event
+                return;
+            }
+            myDeliveryScheduled = true;
+        }
+        myExecutor.execute(this::deliver);
+    }
+    
+    private void deliver() {
+        final Map<String, String> changes;
+        final boolean reset;
+        synchronized (this) {
+            changes = myPending;
+            reset = myPendingReset;
+            myPending = new LinkedHashMap<>();
+            myPendingReset = false;
+            myDeliveryScheduled = false;
+        }
+        
+        // one event per listener - even if registered for multiple keys
+        final Map<IPreferencesListener, Map<String, String>> listenerChanges = new LinkedHashMap<>();
+        for (Registration registration : myRegistrations) {
+            final Map<String, String> matching = listenerChanges.computeIfAbsent(registration.listener, (listener) -> new LinkedHashMap<>());
+            for (Map.Entry<String, String> entry : changes.entrySet()) {
+                if (registration.matches(entry.getKey())) {
+                    matching.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        
+        for (Map.Entry<IPreferencesListener, Map<String, String>> entry : listenerChanges.entrySet()) {
+            if (!reset && entry.getValue().isEmpty()) {
+                continue;
+            }
+            try {
+                entry.getKey().preferencesChanged(new PreferencesChangeEvent(this, entry.getValue(), reset));
+            } catch (RuntimeException ex) {
+                // one bad listener shouldn't spoil it for the others
+                Logger.getLogger(ObservablePreferencesStore.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+/**
+ * Result of the primitive parse methods of GeneralParser - instead of exceptions & log messages.
+ * 
+ * Same idea as java.text.ParsePosition: create once and pass it to all calls - so parsing doesn't allocate anything.
+ * @author thomas
+ */
+public class ParseStatus {
+    public final static int OK = 0;
+    // nothing to parse
+    public final static int EMPTY = 1;
+    // not a valid value
+    public final static int INVALID = 2;
+    // valid syntax but doesn't fit into the type
+    public final static int OVERFLOW = 3;
+    
+    private int myCode = OK;
+    // index in the CharSequence where parsing has failed, -1 if OK
+    private int myErrorIndex = -1;
+    
+    public int getCode() {
+        return myCode;
+    }
+    
+    public boolean isOk() {
+        return myCode == OK;
+    }
+    
+    public int getErrorIndex() {
+        return myErrorIndex;
+    }
+    
+    void set(final int code, final int errorIndex) {
+        myCode = code;
+        myErrorIndex = errorIndex;
+    }
+    
+    void setOk() {
+        myCode = OK;
+        myErrorIndex = -1;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseStatus{code=" + myCode + ", errorIndex=" + myErrorIndex + "}";
+    }
+}
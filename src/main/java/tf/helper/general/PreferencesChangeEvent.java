@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2014ff Thomas Feuster
+ *  All rights reserved.
+ *  
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *     derived from this software without specific prior written permission.
+ *  
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper.general;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Batch of changes in an ObservablePreferencesStore - only the keys a listener has registered for.
+ * 
+ * Changes: key and new value, null for removed keys. Each key only once with its latest value.
+ * Reset: store has been cleared or imported and doesn't know which keys have been affected - read again whatever you need.
+ * 
+ * @author thomas
+ */
+public class PreferencesChangeEvent {
+    private final IPreferencesStore myStore;
+    private final Map<String, String> myChanges;
+    private final boolean myReset;
+    
+    public PreferencesChangeEvent(final IPreferencesStore store, final Map<String, String> changes, final boolean reset) {
+        myStore = store;
+        myChanges = Collections.unmodifiableMap(changes);
+        myReset = reset;
+    }
+
+    public IPreferencesStore getStore() {
+        return myStore;
+    }
+
+    public Map<String, String> getChanges() {
+        return myChanges;
+    }
+    
+    public boolean isReset() {
+        return myReset;
+    }
+    
+    public boolean isChanged(final String key) {
+        return myReset || myChanges.containsKey(key);
+    }
+
+    @Override
+    public String toString() {
+        return "PreferencesChangeEvent{changes=" + myChanges + ", reset=" + myReset + "}";
+    }
+}
@@ -25,14 +25,33 @@
  */
 package tf.helper.general;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * List of recently used files - stored in an IPreferencesStore.
+ * 
+ * TFE, 20261018: files can be checked in the background - for recent files on slow network shares.
+ * The list is available right away and the checked list is passed to a listener when done.
+ * Checks run in a small pool of their own - blocking file system calls shouldn't starve the common ForkJoinPool.
  *
  * @author Thomas
  */
@@ -41,8 +60,26 @@ public class RecentFiles {
     public final static String RECENTFILENAME_COUNT = "recentFileName_Count";
     public final static String NORECENTFILENAME = "NOT_FOUND";
     
+    // max number of files checked in parallel - it's waiting for the file system, not for the cpu
+    private final static int MAX_CHECK_THREADS = 8;
+    private final static ThreadPoolExecutor CHECKER = new ThreadPoolExecutor(
+            MAX_CHECK_THREADS, MAX_CHECK_THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+        final Thread thread = new Thread(runnable, "RecentFiles-Checker");
+        // don't keep the application alive for a slow network share
+        thread.setDaemon(true);
+        return thread;
+    });
+    static {
+        CHECKER.allowCoreThreadTimeOut(true);
+    }
+    
     private IPreferencesStore myPreferences = null;
     private RecentList<String> recentFiles = null;
+    // always the current list - unmodifiable, only replaced under lock
+    private volatile List<String> myRecentFilesList = Collections.emptyList();
+    private CompletableFuture<Void> myCheckFuture = CompletableFuture.completedFuture(null);
+    // files added while the background check is running - null if there is none
+    private Set<String> myAddedFiles = null;
 
     private RecentFiles() {
     }
@@ -52,34 +89,70 @@ public class RecentFiles {
         recentFiles = new RecentList<>(maxLength);
         
         loadAndCheckRecentFiles();
+        updateRecentFilesList();
+    }
+
+    // TFE, 20261018: load without checks and check all files in parallel in the background
+    public RecentFiles(final IPreferencesStore preferences, final int maxLength, final Executor publishExecutor) {
+        this(preferences, maxLength, publishExecutor, (files) -> {});
+    }
+
+    // the checked list is passed to the listener via the executor, e.g. Platform::runLater to get it on the FX application thread
+    public RecentFiles(final IPreferencesStore preferences, final int maxLength, final Executor publishExecutor, final Consumer<List<String>> checkedListener) {
+        myPreferences = preferences;
+        recentFiles = new RecentList<>(maxLength);
+        
+        final List<String> fileNames = loadRecentFiles();
+        for (String fileName : fileNames) {
+            recentFiles.add(fileName);
+        }
+        myAddedFiles = new HashSet<>();
+        updateRecentFilesList();
+        
+        myCheckFuture = checkFileNames(fileNames).thenAcceptAsync((invalidFiles) -> {
+            final List<String> files;
+            synchronized (this) {
+                for (String fileName : invalidFiles) {
+                    // files that have been added in the meantime have been checked by the user...
+                    if (!myAddedFiles.contains(fileName)) {
+                        recentFiles.remove(fileName);
+                    }
+                }
+                myAddedFiles = null;
+                files = updateRecentFilesList();
+            }
+            checkedListener.accept(files);
+        }, publishExecutor);
     }
 
-    public void addRecentFile(final String filename) {
+    public synchronized void addRecentFile(final String filename) {
+        if (myAddedFiles != null) {
+            myAddedFiles.add(filename);
+        }
         recentFiles.add(filename);
         saveRecentFiles();
+        updateRecentFilesList();
+    }
+    
+    // done when background check of files is done - or right away if there is none
+    public CompletableFuture<Void> getCheckFuture() {
+        return myCheckFuture;
     }
 
+    // TFE, 20261018: unmodifiable snapshot - copied once per change and not on every call
     public List<String> getRecentFiles() {
-        List<String> result = new ArrayList<>();
-        
-        recentFiles.forEach(file -> {
-            result.add(file);
-        });
-        
-        // postcondition
-        assert (result.size() == recentFiles.getLength());
-        
-        return result;
+        return myRecentFilesList;
     }
     
     private void saveRecentFiles() {
         // store all filenames
-        List<String> files = getRecentFiles();
-        // TFE; 2020402: double reverse required: "add" in loadAndCheckRecentFiles() places items in front of others...
-        Collections.reverse(files);
+        final List<String> files = recentFiles.asList();
         
         int count = 0;
-        for (String file : files) {
+        // TFE; 2020402: reverse order required: "add" in loadAndCheckRecentFiles() places items in front of others...
+        final ListIterator<String> iter = files.listIterator(files.size());
+        while (iter.hasPrevious()) {
+            final String file = iter.previous();
             count++;
             myPreferences.put(getPreferenceName(count), file);
         }
@@ -91,6 +164,17 @@ public class RecentFiles {
     private void loadAndCheckRecentFiles() {
         recentFiles.clear();
         
+        for (String fileName : loadRecentFiles()) {
+            // check if file name currntly exists
+            if (checkFileName(fileName)) {
+                recentFiles.add(fileName);
+            }
+        }
+    }
+    
+    private List<String> loadRecentFiles() {
+        final List<String> result = new ArrayList<>();
+        
         try {
             final int fileCount = Integer.valueOf(myPreferences.get(RECENTFILENAME_COUNT, "0"));
 
@@ -102,27 +186,54 @@ public class RecentFiles {
                     break;
                 }
 
-                // check if file name currntly exists
-                if (checkFileName(fileName)) {
-                    recentFiles.add(fileName);
-                }
+                result.add(fileName);
             }
         } catch (SecurityException ex) {
             Logger.getLogger(RecentFiles.class.getName()).log(Level.SEVERE, null, ex);
         }
+        
+        return result;
+    }
+    
+    // all file names that fail the check - each one checked in its own task, nobody waits for them
+    private static CompletableFuture<List<String>> checkFileNames(final List<String> fileNames) {
+        final List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+        for (String fileName : fileNames) {
+            checks.add(CompletableFuture.supplyAsync(() -> checkFileName(fileName), CHECKER));
+        }
+        
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[checks.size()])).thenApply((ignored) -> {
+            final List<String> result = new ArrayList<>();
+            for (int i = 0; i < checks.size(); i++) {
+                if (!checks.get(i).join()) {
+                    result.add(fileNames.get(i));
+                }
+            }
+            return result;
+        });
+    }
+    
+    private synchronized List<String> updateRecentFilesList() {
+        myRecentFilesList = Collections.unmodifiableList(new ArrayList<>(recentFiles.asList()));
+        return myRecentFilesList;
     }
     
     private String getPreferenceName(final int count) {
         return RECENTFILENAME + String.valueOf(count);
     }
     
-    private boolean checkFileName(final String filename) {
+    // TFE, 20261018: one call for existence & type instead of two - read & write access need to be checked separately
+    // the "dos" view doesn't help: linux supports it as well but doesn't know about the permissions there
+    private static boolean checkFileName(final String filename) {
         boolean result = false;
         
-        final File f = new File(filename);
-        // needs to be one existing file that can be read & written
-        if(f.exists() && !f.isDirectory() && f.canRead() && f.canWrite()) { 
-            result = true;
+        try {
+            final Path path = Paths.get(filename);
+            // needs to be one existing file that can be read & written
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            result = attributes.isRegularFile() && Files.isReadable(path) && Files.isWritable(path);
+        } catch (IOException | InvalidPathException | SecurityException ex) {
+            // doesn't exist or we're not allowed to know
         }
         
         return result;
@@ -25,49 +25,324 @@
  */
 package tf.helper.general;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractSequentialList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntFunction;
 
 /**
+ * List of recently used things - most recent first - with a maximum length.
+ * 
+ * TFE, 20261018: public & usable for anything, e.g. recent files, searches, colors
+ * - add(), remove() and eviction are O(1): hash map for lookup plus a linked list of nodes for the order
+ * - pinned entries are never evicted and don't count against the maximum
+ * - optional weight per entry, e.g. size in memory - then the maximum is the total weight of all unpinned entries
+ * - unpinned entries heavier than the maximum on their own are not kept - instead of evicting everything else for nothing
+ * - asList() & iterator() are read-only views - nothing is copied
+ * 
+ * Not thread safe - callers need to synchronize.
  *
  * @author Thomas, based on http://www.javaspecialists.eu/archive/Issue219.html
  * @param <E> type of thing to store in list
  */
-class RecentList<E> implements Iterable<E> {
-    private final ArrayList<E> myList = new ArrayList<>();
+public class RecentList<E> implements Iterable<E> {
+    private static class Node<E> {
+        private final E element;
+        private int weight;
+        private boolean pinned = false;
+        private Node<E> previous;
+        private Node<E> next;
+        
+        private Node(final E element, final int weight) {
+            this.element = element;
+            this.weight = weight;
+        }
+    }
+    
+    private final Map<E, Node<E>> myNodes = new HashMap<>();
+    // most recent
+    private Node<E> myHead = null;
+    // least recent
+    private Node<E> myTail = null;
     private final int myMaxLength;
+    private final ToIntFunction<? super E> myWeigher;
+    // total weight of unpinned entries
+    private int myWeight = 0;
+    // for fail-fast iterators
+    private int myModCount = 0;
+    private final List<E> myView = new View();
 
     public RecentList(final int maxLength) {
-        myMaxLength = maxLength;
+        this(maxLength, (element) -> 1);
+    }
+
+    // weigher is called when an element is added - maxWeight is the limit for the sum of all unpinned elements
+    public RecentList(final int maxWeight, final ToIntFunction<? super E> weigher) {
+        myMaxLength = maxWeight;
+        myWeigher = weigher;
     }
 
     @Override
     public Iterator<E> iterator() {
-        return Collections.unmodifiableCollection(myList).iterator();
+        return myView.iterator();
+    }
+    
+    // read-only view, most recent first - changes of the list are visible right away
+    public List<E> asList() {
+        return myView;
     }
 
+    // add new or move existing element to the front
     public void add(final E element) {
-        myList.remove(element);
-        myList.add(0, element);
+        final int weight = myWeigher.applyAsInt(element);
+        Node<E> node = myNodes.get(element);
+        if ((node == null || !node.pinned) && weight > myMaxLength) {
+            // too heavy on its own: it's the only one that goes
+            if (node != null) {
+                removeNode(node);
+            }
+            return;
+        }
+        
+        if (node != null) {
+            unlink(node);
+            if (!node.pinned) {
+                myWeight -= node.weight;
+            }
+            node.weight = weight;
+        } else {
+            node = new Node<>(element, weight);
+            myNodes.put(element, node);
+        }
+        if (!node.pinned) {
+            myWeight += node.weight;
+        }
+        linkFirst(node);
         reduce();
     }
     
+    public boolean remove(final E element) {
+        final Node<E> node = myNodes.get(element);
+        if (node == null) {
+            return false;
+        }
+        removeNode(node);
+        return true;
+    }
+    
+    public boolean contains(final E element) {
+        return myNodes.containsKey(element);
+    }
+    
+    // pinned elements stay where they are but are never evicted
+    public boolean pin(final E element) {
+        final Node<E> node = myNodes.get(element);
+        if (node == null) {
+            return false;
+        }
+        if (!node.pinned) {
+            node.pinned = true;
+            myWeight -= node.weight;
+        }
+        return true;
+    }
+    
+    public boolean unpin(final E element) {
+        final Node<E> node = myNodes.get(element);
+        if (node == null) {
+            return false;
+        }
+        if (node.pinned) {
+            node.pinned = false;
+            myWeight += node.weight;
+            if (node.weight > myMaxLength) {
+                // same as in add()
+                removeNode(node);
+            } else {
+                reduce();
+            }
+        }
+        return true;
+    }
+    
+    public boolean isPinned(final E element) {
+        final Node<E> node = myNodes.get(element);
+        return (node != null) && node.pinned;
+    }
+    
     public int getMaxLength() {
         return myMaxLength;
     }
     
     public int getLength() {
-        return myList.size();
+        return myNodes.size();
+    }
+    
+    // of all unpinned elements
+    public int getWeight() {
+        return myWeight;
     }
 
+    // evict least recent unpinned elements until we're below the maximum again
     private void reduce() {
-        while (myList.size() > myMaxLength) {
-            myList.remove(myList.size() - 1);
+        Node<E> node = myTail;
+        while (myWeight > myMaxLength && node != null) {
+            final Node<E> previous = node.previous;
+            if (!node.pinned) {
+                removeNode(node);
+            }
+            node = previous;
         }
     }
 
     public void clear() {
-        myList.clear();
+        myNodes.clear();
+        myHead = null;
+        myTail = null;
+        myWeight = 0;
+        myModCount++;
+    }
+    
+    private void removeNode(final Node<E> node) {
+        myNodes.remove(node.element);
+        unlink(node);
+        if (!node.pinned) {
+            myWeight -= node.weight;
+        }
+    }
+    
+    private void linkFirst(final Node<E> node) {
+        node.previous = null;
+        node.next = myHead;
+        if (myHead != null) {
+            myHead.previous = node;
+        } else {
+            myTail = node;
+        }
+        myHead = node;
+        myModCount++;
+    }
+    
+    private void unlink(final Node<E> node) {
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            myHead = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        } else {
+            myTail = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+        myModCount++;
+    }
+    
+    // read-only list on top of the nodes
+    private class View extends AbstractSequentialList<E> {
+        @Override
+        public int size() {
+            return myNodes.size();
+        }
+
+        @Override
+        public ListIterator<E> listIterator(final int index) {
+            if (index < 0 || index > size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return new ViewIterator(index);
+        }
+    }
+    
+    private class ViewIterator implements ListIterator<E> {
+        private Node<E> myNext;
+        private int myNextIndex;
+        private final int myExpectedModCount = myModCount;
+        
+        private ViewIterator(final int index) {
+            // start from the closer end
+            if (index <= myNodes.size() / 2) {
+                myNext = myHead;
+                for (int i = 0; i < index; i++) {
+                    myNext = myNext.next;
+                }
+            } else {
+                myNext = null;
+                for (int i = myNodes.size(); i > index; i--) {
+                    myNext = (myNext == null) ? myTail : myNext.previous;
+                }
+            }
+            myNextIndex = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return myNextIndex < myNodes.size();
+        }
+
+        @Override
+        public E next() {
+            checkModCount();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final E result = myNext.element;
+            myNext = myNext.next;
+            myNextIndex++;
+            return result;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return myNextIndex > 0;
+        }
+
+        @Override
+        public E previous() {
+            checkModCount();
+            if (!hasPrevious()) {
+                throw new NoSuchElementException();
+            }
+            myNext = (myNext == null) ? myTail : myNext.previous;
+            myNextIndex--;
+            return myNext.element;
+        }
+
+        @Override
+        public int nextIndex() {
+            return myNextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return myNextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Read-only view");
+        }
+
+        @Override
+        public void set(final E element) {
+            throw new UnsupportedOperationException("Read-only view");
+        }
+
+        @Override
+        public void add(final E element) {
+            throw new UnsupportedOperationException("Read-only view");
+        }
+        
+        private void checkModCount() {
+            if (myModCount != myExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
     }
 }
@@ -27,8 +27,10 @@ package tf.helper.javafx;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.TableColumn;
@@ -50,6 +52,7 @@ import tf.helper.general.ObjectsHelper;
  * Sort order: List if ids of cols is
  * 
  * This is done using a provided IPreferencesStore that provides get & put methods for key / value string pairs
+ * TFE, 20261018: all values are written with one putAll() - and read with one getAll() if the store supports prefixes
  * 
  * @author thomas
  */
@@ -73,25 +76,29 @@ public class TableViewPreferences {
     }
     
     public static void saveTableViewPreferences(final TableView tableView, final String prefPrefix, final IPreferencesStore prefStore) {
-        saveColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, prefStore);
-        saveSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), ObjectsHelper.uncheckedCast(tableView.getSortOrder()), prefPrefix, prefStore);
+        final Map<String, String> values = new LinkedHashMap<>();
+        saveColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, values);
+        saveSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), ObjectsHelper.uncheckedCast(tableView.getSortOrder()), prefPrefix, prefStore, values);
+        prefStore.putAll(values);
     }
     
     public static void saveTreeTableViewPreferences(final TreeTableView tableView, final String prefPrefix, final IPreferencesStore prefStore) {
-        saveColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, prefStore);
-        saveSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), ObjectsHelper.uncheckedCast(tableView.getSortOrder()), prefPrefix, prefStore);
+        final Map<String, String> values = new LinkedHashMap<>();
+        saveColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, values);
+        saveSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), ObjectsHelper.uncheckedCast(tableView.getSortOrder()), prefPrefix, prefStore, values);
+        prefStore.putAll(values);
     }
     
-    private static void saveColumnPreferences(final ObservableList<TableColumnBase> columns, final String prefPrefix, final IPreferencesStore prefStore) {
+    private static void saveColumnPreferences(final ObservableList<TableColumnBase> columns, final String prefPrefix, final Map<String, String> values) {
         // store column order: Id is used to store sequence of columns - if present & unique
         int colNum = 0;
         if (checkUniqueIds(columns)) {
             for (TableColumnBase column : columns) {
                 final String id = column.getId();
-                final String prefKey = prefPrefix + SEPARATOR + COLUMN_ORDER + SEPARATOR + String.valueOf(colNum);
+                final String prefKey = getPrefKey(prefPrefix, COLUMN_ORDER, colNum);
                 
 //                System.out.println("save: prefKey: " + prefKey + ", id: " + id);
-                prefStore.put(prefKey, id);
+                values.put(prefKey, id);
                         
                 colNum++;
             }
@@ -101,10 +108,10 @@ public class TableViewPreferences {
         colNum = 0;
         for (TableColumnBase column : columns) {
             final String value = String.valueOf(column.getWidth());
-            final String prefKey = prefPrefix + SEPARATOR + COLUMN_WIDTH + SEPARATOR + String.valueOf(colNum);
+            final String prefKey = getPrefKey(prefPrefix, COLUMN_WIDTH, colNum);
 
 //            System.out.println("save: prefKey: " + prefKey + ", value: " + value);
-          prefStore.put(prefKey, value);
+          values.put(prefKey, value);
 
             colNum++;
         }
@@ -113,10 +120,10 @@ public class TableViewPreferences {
         colNum = 0;
         for (TableColumnBase column : columns) {
             final String value = String.valueOf(column.isVisible());
-            final String prefKey = prefPrefix + SEPARATOR + COLUMN_VISBILTY + SEPARATOR + String.valueOf(colNum);
+            final String prefKey = getPrefKey(prefPrefix, COLUMN_VISBILTY, colNum);
 
 //            System.out.println("save: prefKey: " + prefKey + ", value: " + value);
-          prefStore.put(prefKey, value);
+          values.put(prefKey, value);
 
             colNum++;
         }
@@ -126,13 +133,20 @@ public class TableViewPreferences {
             final ObservableList<TableColumnBase> columns, 
             final ObservableList<TableColumnBase> sortColumns, 
             final String prefPrefix, 
-            final IPreferencesStore prefStore) {
+            final IPreferencesStore prefStore,
+            final Map<String, String> values) {
         // TFE, 20210801: delete previous sort columns
+        // TFE, 20261018: as null values for putAll() - the new ones overwrite them
         int colNum = 0;
-        for (TableColumnBase column : columns) {
-            final String prefKey = prefPrefix + SEPARATOR + SORT_ORDER + SEPARATOR + String.valueOf(colNum);
-            prefStore.remove(prefKey);
-            colNum++;
+        if (prefStore.supportsPrefixes()) {
+            for (String prefKey : prefStore.getAll(getPrefKeyPrefix(prefPrefix, SORT_ORDER)).keySet()) {
+                values.put(prefKey, null);
+            }
+        } else {
+            for (TableColumnBase column : columns) {
+                values.put(getPrefKey(prefPrefix, SORT_ORDER, colNum), null);
+                colNum++;
+            }
         }
         
         // sort order as list of ids
@@ -152,10 +166,10 @@ public class TableViewPreferences {
                     }
                 }
 
-                final String prefKey = prefPrefix + SEPARATOR + SORT_ORDER + SEPARATOR + String.valueOf(colNum);
+                final String prefKey = getPrefKey(prefPrefix, SORT_ORDER, colNum);
                 
 //                System.out.println("save: prefKey: " + prefKey + ", id: " + id);
-                prefStore.put(prefKey, id);
+                values.put(prefKey, id);
                         
                 colNum++;
             }
@@ -165,13 +179,14 @@ public class TableViewPreferences {
     
     @SuppressWarnings("unchecked") 
     public static void loadTreeTableViewPreferences(final TreeTableView tableView, final String prefPrefix, final IPreferencesStore prefStore) {
-        ObservableList<TableColumnBase> columns = loadColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, prefStore);
+        final Function<String, String> preferences = getPreferences(prefPrefix, prefStore);
+        ObservableList<TableColumnBase> columns = loadColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, preferences);
         if (!tableView.getColumns().equals(columns)) {
             tableView.getColumns().clear();
             tableView.getColumns().addAll(columns);
         }
 
-        columns = loadSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, prefStore);
+        columns = loadSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, preferences);
         if (!tableView.getSortOrder().equals(columns)) {
             tableView.getSortOrder().clear();
             tableView.getSortOrder().addAll(columns);
@@ -180,20 +195,31 @@ public class TableViewPreferences {
 
     @SuppressWarnings("unchecked") 
     public static void loadTableViewPreferences(final TableView tableView, final String prefPrefix, final IPreferencesStore prefStore) {
-        ObservableList<TableColumnBase> columns = loadColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, prefStore);
+        final Function<String, String> preferences = getPreferences(prefPrefix, prefStore);
+        ObservableList<TableColumnBase> columns = loadColumnPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, preferences);
         if (!tableView.getColumns().equals(columns)) {
             tableView.getColumns().clear();
             tableView.getColumns().addAll(columns);
         }
 
-        columns = loadSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, prefStore);
+        columns = loadSortPreferences(ObjectsHelper.uncheckedCast(tableView.getColumns()), prefPrefix, preferences);
         if (!tableView.getSortOrder().equals(columns)) {
             tableView.getSortOrder().clear();
             tableView.getSortOrder().addAll(columns);
         }
     }
 
-    private static ObservableList<TableColumnBase> loadColumnPreferences(final ObservableList<TableColumnBase> columns, final String prefPrefix, final IPreferencesStore prefStore) {
+    // TFE, 20261018: read all values of the table at once if the store supports it - "" for missing keys
+    private static Function<String, String> getPreferences(final String prefPrefix, final IPreferencesStore prefStore) {
+        if (prefStore.supportsPrefixes()) {
+            final Map<String, String> values = prefStore.getAll(prefPrefix + SEPARATOR);
+            return (prefKey) -> values.getOrDefault(prefKey, "");
+        } else {
+            return (prefKey) -> prefStore.get(prefKey, "");
+        }
+    }
+    
+    private static ObservableList<TableColumnBase> loadColumnPreferences(final ObservableList<TableColumnBase> columns, final String prefPrefix, final Function<String, String> preferences) {
         ObservableList<TableColumnBase> result = columns;
 
         // load column order: Id is used to store sequence of columns - if present & unique
@@ -209,9 +235,9 @@ public class TableViewPreferences {
             final List<TableColumnBase> columnList = new ArrayList<>();
             
             for (int colNum = 0; colNum < columns.size(); colNum++) {
-                final String prefKey = prefPrefix + SEPARATOR + COLUMN_ORDER + SEPARATOR + String.valueOf(colNum);
+                final String prefKey = getPrefKey(prefPrefix, COLUMN_ORDER, colNum);
                 
-                final String id = prefStore.get(prefKey, "");
+                final String id = preferences.apply(prefKey);
 //                System.out.println("load: prefKey: " + prefKey + ", id: " + id);
                 
                 // do this only if we have exactly one entry for each id!
@@ -231,9 +257,9 @@ public class TableViewPreferences {
         // load column width: store value as string - need to iterate of sorted columns!
         int colNum = 0;
         for (TableColumnBase column : result) {
-            final String prefKey = prefPrefix + SEPARATOR + COLUMN_WIDTH + SEPARATOR + String.valueOf(colNum);
+            final String prefKey = getPrefKey(prefPrefix, COLUMN_WIDTH, colNum);
                 
-            final String value = prefStore.get(prefKey, "");
+            final String value = preferences.apply(prefKey);
 //            System.out.println("load: prefKey: " + prefKey + ", value: " + value);
             
             if (!value.isBlank() && NumberUtils.isParsable(value)) {
@@ -246,9 +272,9 @@ public class TableViewPreferences {
         // load column visibility: store value as string - need to iterate of sorted columns!
         colNum = 0;
         for (TableColumnBase column : result) {
-            final String prefKey = prefPrefix + SEPARATOR + COLUMN_VISBILTY + SEPARATOR + String.valueOf(colNum);
+            final String prefKey = getPrefKey(prefPrefix, COLUMN_VISBILTY, colNum);
                 
-            final String value = prefStore.get(prefKey, "");
+            final String value = preferences.apply(prefKey);
 //            System.out.println("load: prefKey: " + prefKey + ", value: " + value);
             
             if (!value.isBlank()) {
@@ -261,7 +287,7 @@ public class TableViewPreferences {
         return result;
     }
 
-    private static ObservableList<TableColumnBase> loadSortPreferences(final ObservableList<TableColumnBase> columns, final String prefPrefix, final IPreferencesStore prefStore) {
+    private static ObservableList<TableColumnBase> loadSortPreferences(final ObservableList<TableColumnBase> columns, final String prefPrefix, final Function<String, String> preferences) {
         ObservableList<TableColumnBase> result = FXCollections.observableArrayList();
             
         // map of id + column items from which columns are taken in the correct order
@@ -272,9 +298,9 @@ public class TableViewPreferences {
         
         if (checkUniqueIds(columns)) {
             for (int colNum = 0; colNum < columns.size(); colNum++) {
-                final String prefKey = prefPrefix + SEPARATOR + SORT_ORDER + SEPARATOR + String.valueOf(colNum);
+                final String prefKey = getPrefKey(prefPrefix, SORT_ORDER, colNum);
                 
-                String id = prefStore.get(prefKey, "");
+                String id = preferences.apply(prefKey);
 //                System.out.println("load: prefKey: " + prefKey + ", id: " + id);
                 
                 // if its there, add it!
@@ -302,6 +328,14 @@ public class TableViewPreferences {
         return result;
     }
     
+    private static String getPrefKeyPrefix(final String prefPrefix, final String type) {
+        return prefPrefix + SEPARATOR + type + SEPARATOR;
+    }
+    
+    private static String getPrefKey(final String prefPrefix, final String type, final int colNum) {
+        return getPrefKeyPrefix(prefPrefix, type) + String.valueOf(colNum);
+    }
+    
     private static boolean checkUniqueIds(final ObservableList<TableColumnBase> columns) {
         boolean result = true;
         
@@ -25,6 +25,7 @@
  */
 package tf.helper;
 
+import java.util.Set;
 import tf.helper.doundo.AbstractDoUndoAction;
 import tf.helper.doundo.IDoUndoAction;
 
@@ -177,6 +178,95 @@ public class TestActions {
         }
     }
     
+    public class SizedAction extends NumberedAction {
+        private final long mySize;
+        
+        public SizedAction(int count, final long size) {
+            super(count);
+            mySize = size;
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return mySize;
+        }
+    }
+    
+    public class ConflictKeyAction extends NumberedAction {
+        private final Object myConflictKey;
+        
+        public ConflictKeyAction(int count, final Object conflictKey) {
+            super(count);
+            myConflictKey = conflictKey;
+        }
+
+        @Override
+        public Object getConflictKey() {
+            return myConflictKey;
+        }
+    }
+    
+    public class ConflictKeyNoDoAction extends ConflictKeyAction {
+        public ConflictKeyNoDoAction(int count, final Object conflictKey) {
+            super(count, conflictKey);
+        }
+
+        @Override
+        public boolean doHook() {
+            System.out.println("No Do for " + getDescription());
+            return false;
+        }
+    }
+    
+    public class ReadWriteAction extends NumberedAction {
+        private final Set<Object> myReadSet;
+        private final Set<Object> myWriteSet;
+        
+        public ReadWriteAction(int count, final Set<Object> readSet, final Set<Object> writeSet) {
+            super(count);
+            myReadSet = readSet;
+            myWriteSet = writeSet;
+        }
+
+        @Override
+        public Set<Object> getReadSet() {
+            return myReadSet;
+        }
+
+        @Override
+        public Set<Object> getWriteSet() {
+            return myWriteSet;
+        }
+    }
+    
+    public class MergeableAction extends SizedAction {
+        private final Object myMergeKey;
+        private final int myFirstCount;
+        private final int myLastCount;
+        
+        public MergeableAction(int firstCount, int lastCount, final Object mergeKey) {
+            super(lastCount, 10 * (lastCount - firstCount + 1));
+            myFirstCount = firstCount;
+            myLastCount = lastCount;
+            myMergeKey = mergeKey;
+        }
+
+        @Override
+        public boolean canMergeWith(final IDoUndoAction previous) {
+            return (previous instanceof MergeableAction) && myMergeKey.equals(((MergeableAction) previous).myMergeKey);
+        }
+
+        @Override
+        public IDoUndoAction mergeWith(final IDoUndoAction previous) {
+            return new MergeableAction(((MergeableAction) previous).myFirstCount, myLastCount, myMergeKey);
+        }
+
+        @Override
+        public String getDescription() {
+            return "Action #" + myFirstCount + "-" + myLastCount;
+        }
+    }
+    
     public NumberedAction getNumberedAction(final int number) {
         return new NumberedAction(number);
     }
@@ -208,4 +298,24 @@ public class TestActions {
     public NoDoUndoAction getNoDoUndoAction(final int number) {
         return new NoDoUndoAction(number);
     }
+    
+    public SizedAction getSizedAction(final int number, final long size) {
+        return new SizedAction(number, size);
+    }
+    
+    public ConflictKeyAction getConflictKeyAction(final int number, final Object conflictKey) {
+        return new ConflictKeyAction(number, conflictKey);
+    }
+    
+    public ConflictKeyNoDoAction getConflictKeyNoDoAction(final int number, final Object conflictKey) {
+        return new ConflictKeyNoDoAction(number, conflictKey);
+    }
+    
+    public ReadWriteAction getReadWriteAction(final int number, final Set<Object> readSet, final Set<Object> writeSet) {
+        return new ReadWriteAction(number, readSet, writeSet);
+    }
+    
+    public MergeableAction getMergeableAction(final int number, final Object mergeKey) {
+        return new MergeableAction(number, number, mergeKey);
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import tf.helper.doundo.AbstractDoUndoAction;
+import tf.helper.doundo.DoUndoManager;
+
+/**
+ * Stress test for DoUndoManager: lots of threads pushing lots of actions for lots of keys.
+ * @author thomas
+ */
+public class TestConcurrentDoUndoManager {
+    private final static int THREAD_COUNT = 16;
+    private final static int KEY_COUNT = 64;
+    private final static int ACTIONS_PER_THREAD = 128000;
+    private final static String KEY_PREFIX = "Concurrent_";
+    
+    // no System.out for millions of actions...
+    private class SilentAction extends AbstractDoUndoAction {
+        @Override
+        public boolean doHook() {
+            return true;
+        }
+
+        @Override
+        public boolean undoHook() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "SilentAction";
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        DoUndoManager.getInstance().clearAll();
+    }
+    
+    private static String getKey(final int thread, final int action) {
+        return KEY_PREFIX + ((action + thread) % KEY_COUNT);
+    }
+    
+    @Test
+    public void testConcurrentAddDoneAction() throws Exception {
+        final DoUndoManager manager = DoUndoManager.getInstance();
+        final int startCount = manager.changeCountProperty().get();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREAD_COUNT; thread++) {
+            final int threadNum = thread;
+            futures.add(executor.submit(() -> {
+                for (int action = 0; action < ACTIONS_PER_THREAD; action++) {
+                    final String key = getKey(threadNum, action);
+                    manager.addDoneAction(new SilentAction(), key);
+                    
+                    // do some do / undo as well
+                    if (action % 10 == 0) {
+                        manager.singleUndo(key);
+                        manager.singleDo(key);
+                        manager.canUndo(key);
+                        manager.getUndoStackSize(key);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            // throws in case anything went wrong in the thread
+            future.get();
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        
+        // nothing got lost: each key has received the same number of actions since ACTIONS_PER_THREAD is a multiple of KEY_COUNT
+        int total = 0;
+        for (int key = 0; key < KEY_COUNT; key++) {
+            final int keyCount = manager.getUndoStackSize(KEY_PREFIX + key) + manager.getDoStackSize(KEY_PREFIX + key);
+            Assert.assertEquals(THREAD_COUNT * ACTIONS_PER_THREAD / KEY_COUNT, keyCount);
+            total += keyCount;
+        }
+        Assert.assertEquals(THREAD_COUNT * ACTIONS_PER_THREAD, total);
+        
+        // and we have been notified (at least once)
+        Assert.assertTrue(manager.changeCountProperty().get() > startCount);
+        
+        // roll back & forth still works
+        for (int key = 0; key < KEY_COUNT; key++) {
+            Assert.assertTrue(manager.rollBack(KEY_PREFIX + key));
+            Assert.assertEquals(0, manager.getUndoStackSize(KEY_PREFIX + key));
+            Assert.assertTrue(manager.rollForward(KEY_PREFIX + key));
+            Assert.assertEquals(0, manager.getDoStackSize(KEY_PREFIX + key));
+        }
+    }
+    
+    @Test
+    public void testConcurrentClear() throws Exception {
+        final DoUndoManager manager = DoUndoManager.getInstance();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREAD_COUNT; thread++) {
+            final int threadNum = thread;
+            futures.add(executor.submit(() -> {
+                for (int action = 0; action < ACTIONS_PER_THREAD / 10; action++) {
+                    final String key = getKey(threadNum, action);
+                    manager.addDoneAction(new SilentAction(), key);
+                    
+                    // every once in a while: throw it all away
+                    if (threadNum == 0 && action % 1000 == 0) {
+                        manager.clearAll();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        Assert.assertTrue(manager.clearAll());
+        for (int key = 0; key < KEY_COUNT; key++) {
+            Assert.assertEquals(0, manager.getUndoStackSize(KEY_PREFIX + key));
+        }
+    }
+    
+    // key that uses the same lock stripe as the given one - same hash as in DoUndoManager.lockFor()
+    private static String getSameStripeKey(final String key) {
+        final int keyHash = key.hashCode();
+        for (int i = 0; ; i++) {
+            final String result = KEY_PREFIX + i;
+            final int hash = result.hashCode();
+            if (((hash ^ (hash >>> 16)) & 63) == ((keyHash ^ (keyHash >>> 16)) & 63)) {
+                return result;
+            }
+        }
+    }
+    
+    @Test
+    public void testNoContention() throws Exception {
+        final DoUndoManager manager = DoUndoManager.getInstance();
+        final String key = KEY_PREFIX + "Blocking";
+        final String otherKey = getSameStripeKey(key);
+        
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        manager.addDoneAction(new SilentAction() {
+            @Override
+            public boolean undoHook() {
+                started.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    return false;
+                }
+            }
+        }, key);
+        manager.addDoneAction(new SilentAction(), otherKey);
+        
+        // a long running undo for one key doesn't block other keys - even with the same lock stripe
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<Boolean> rollBack = executor.submit(() -> manager.rollBack(key));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(manager.canUndo(otherKey));
+        Assert.assertTrue(manager.singleUndo(otherKey));
+        Assert.assertTrue(manager.getHandle(otherKey).singleDo());
+        release.countDown();
+        Assert.assertTrue(rollBack.get());
+        
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+}
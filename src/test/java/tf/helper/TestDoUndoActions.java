@@ -25,6 +25,8 @@
  */
 package tf.helper;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.After;
@@ -239,6 +241,28 @@ public class TestDoUndoActions {
         Assert.assertFalse(hasException);
     }
     
+    @Test
+    public void testNoDoActionListOrder() {
+        final IDoUndoAction firstAction = TestActions.getInstance().getNumberedAction(61);
+        final DoUndoActionList actionList = new DoUndoActionList();
+
+        actionList.addAction(firstAction);
+        actionList.addAction(action2);
+        actionList.addAction(noDoAction);
+        Assert.assertEquals("Action #61" + System.lineSeparator() + "Action #2" + System.lineSeparator() + "Action #41", actionList.getDescription());
+
+        // failed do must not change the order of the actions
+        Assert.assertFalse(actionList.doAction());
+        Assert.assertFalse(actionList.doAction());
+        Assert.assertEquals(2, firstAction.doneCount());
+        Assert.assertEquals(2, firstAction.undoneCount());
+        Assert.assertEquals("Action #61" + System.lineSeparator() + "Action #2" + System.lineSeparator() + "Action #41", actionList.getDescription());
+
+        // description is updated with new actions
+        actionList.addAction(action3);
+        Assert.assertEquals("Action #61" + System.lineSeparator() + "Action #2" + System.lineSeparator() + "Action #41" + System.lineSeparator() + "Action #3", actionList.getDescription());
+    }
+    
     @Test
     public void testNoDoUndoActionList() {
         // don't confuse with exception logging
@@ -286,4 +310,70 @@ public class TestDoUndoActions {
         Assert.assertFalse(result);
         Assert.assertFalse(hasException);
     }
+    
+    @Test
+    public void testParallelActionList() {
+        final List<IDoUndoAction> actions = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            actions.add(TestActions.getInstance().getConflictKeyAction(100 + i, i % 4));
+        }
+        
+        final DoUndoActionList actionList = new DoUndoActionList(true, actions);
+        actionList.setRunParallel(true);
+        Assert.assertTrue(actionList.runParallel());
+        
+        Assert.assertTrue(actionList.doAction());
+        Assert.assertTrue(actionList.undoAction());
+        Assert.assertTrue(actionList.doAction());
+        for (IDoUndoAction action : actions) {
+            Assert.assertEquals(2, action.doneCount());
+            Assert.assertEquals(1, action.undoneCount());
+        }
+    }
+    
+    @Test
+    public void testParallelNoDoActionList() {
+        final List<IDoUndoAction> actions = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            if (i == 6) {
+                actions.add(TestActions.getInstance().getConflictKeyNoDoAction(100 + i, i % 4));
+            } else {
+                actions.add(TestActions.getInstance().getConflictKeyAction(100 + i, i % 4));
+            }
+        }
+        
+        final DoUndoActionList actionList = new DoUndoActionList(true, actions);
+        actionList.setRunParallel(true);
+        
+        // do fails but has been rolled back
+        Assert.assertFalse(actionList.doAction());
+        for (int i = 0; i < 16; i++) {
+            if (i != 6) {
+                Assert.assertEquals(actions.get(i).doneCount(), actions.get(i).undoneCount());
+            }
+        }
+        // only actions before the failed one in its group have been done
+        Assert.assertEquals(1, actions.get(2).doneCount());
+        Assert.assertEquals(0, actions.get(10).doneCount());
+        Assert.assertEquals(0, actions.get(14).doneCount());
+    }
+    
+    @Test
+    public void testParallelSequentialActionList() {
+        final List<IDoUndoAction> actions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            actions.add(TestActions.getInstance().getConflictKeyAction(100 + i, i % 4));
+        }
+        // action without conflict key - so all need to be run in sequence
+        actions.add(TestActions.getInstance().getNoDoAction(108));
+        
+        final DoUndoActionList actionList = new DoUndoActionList(true, actions);
+        actionList.setRunParallel(true);
+        
+        Assert.assertFalse(actionList.doAction());
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(1, actions.get(i).doneCount());
+            Assert.assertEquals(1, actions.get(i).undoneCount());
+        }
+    }
 }
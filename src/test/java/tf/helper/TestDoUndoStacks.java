@@ -26,16 +26,33 @@
 package tf.helper;
 
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import tf.helper.doundo.AbstractDoUndoAction;
+import tf.helper.doundo.BoundedDoUndoStack;
+import tf.helper.doundo.CompactDoUndoStack;
+import tf.helper.doundo.DoUndoHandle;
+import tf.helper.doundo.DoUndoKeyMetrics;
 import tf.helper.doundo.DoUndoManager;
+import tf.helper.doundo.DoUndoMetricsRegistry;
 import tf.helper.doundo.DoUndoStack;
+import tf.helper.doundo.ICompactActionHandler;
 import tf.helper.doundo.IDoUndoAction;
 import tf.helper.doundo.IDoUndoStack;
 
@@ -285,6 +302,725 @@ public class TestDoUndoStacks {
         testBadStack(stack, null);
     }
     
+    @Test
+    public void testBoundedStack() {
+        // limits not reached - should behave like any other stack
+        testGoodStack(new BoundedDoUndoStack(10), null);
+        testBadStack(new BoundedDoUndoStack(10, 1000), null);
+        
+        // limit by count
+        final BoundedDoUndoStack countStack = new BoundedDoUndoStack(3);
+        countStack.addDoneAction(action1);
+        countStack.addDoneActions(Arrays.asList(action2, action3, action4));
+        // only 3 of 4 are kept
+        Assert.assertEquals(3, countStack.getUndoStackSize());
+        Assert.assertEquals("Action #2" + System.lineSeparator() + "Action #3" + System.lineSeparator() + "Action #4", countStack.getUndoActionDescription());
+        
+        // undone actions count as well
+        Assert.assertTrue(countStack.singleUndo()); // 1 do, 2 undo
+        countStack.addDoneAction(action1); // 1 do, 3 undo - oldest undo removed
+        Assert.assertEquals(1, countStack.getDoStackSize());
+        Assert.assertEquals(2, countStack.getUndoStackSize());
+        Assert.assertEquals("Action #3" + System.lineSeparator() + "Action #1", countStack.getUndoActionDescription());
+        
+        // nothing left to undo - do stack needs to make room
+        Assert.assertTrue(countStack.rollBack()); // 3 do, 0 undo
+        countStack.addDoneAction(action2); // 3 do, 1 undo - latest undone action removed
+        Assert.assertEquals(2, countStack.getDoStackSize());
+        Assert.assertEquals(1, countStack.getUndoStackSize());
+        // oldest to be redone is still there
+        Assert.assertEquals("Action #1" + System.lineSeparator() + "Action #3", countStack.getDoActionDescription());
+        
+        // limit by size
+        final BoundedDoUndoStack sizeStack = new BoundedDoUndoStack(BoundedDoUndoStack.UNLIMITED_COUNT, 100);
+        sizeStack.addDoneAction(TestActions.getInstance().getSizedAction(1, 40));
+        sizeStack.addDoneAction(TestActions.getInstance().getSizedAction(2, 40));
+        Assert.assertEquals(2, sizeStack.getUndoStackSize());
+        Assert.assertEquals(80, sizeStack.getEstimatedSize());
+        sizeStack.addDoneAction(TestActions.getInstance().getSizedAction(3, 40));
+        Assert.assertEquals(2, sizeStack.getUndoStackSize());
+        Assert.assertEquals(80, sizeStack.getEstimatedSize());
+        // even if too big: the last action is kept
+        sizeStack.addDoneAction(TestActions.getInstance().getSizedAction(4, 400));
+        Assert.assertEquals(1, sizeStack.getUndoStackSize());
+        Assert.assertEquals(400, sizeStack.getEstimatedSize());
+        
+        Assert.assertTrue(sizeStack.clear());
+        Assert.assertEquals(0, sizeStack.getEstimatedSize());
+    }
+    
+    @Test
+    public void testBoundedStackManager() {
+        Assert.assertTrue(DoUndoManager.getInstance().setHistoryLimit(2, BoundedDoUndoStack.UNLIMITED_SIZE, "Bounded"));
+        
+        testGoodFilledStack(DoUndoManager.getInstance(), "Stack1");
+        DoUndoManager.getInstance().addDoneAction(action1, "Bounded");
+        DoUndoManager.getInstance().addDoneActions(Arrays.asList(action2, action3, action4), "Bounded");
+        Assert.assertEquals(4, DoUndoManager.getInstance().getUndoStackSize("Stack1"));
+        Assert.assertEquals(2, DoUndoManager.getInstance().getUndoStackSize("Bounded"));
+
+        Assert.assertTrue(DoUndoManager.getInstance().setStackSupplier(null, "Bounded"));
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+    }
+    
+    private void testBatch(final IDoUndoStack stack, final String key) {
+        final AtomicInteger changeCount = new AtomicInteger(0);
+        stack.changeCountProperty().addListener((ov, oldValue, newValue) -> {
+            changeCount.incrementAndGet();
+        });
+        
+        // without batch: each change is notified
+        stack.addDoneAction(action1, key);
+        stack.addDoneAction(action2, key);
+        Assert.assertEquals(2, changeCount.get());
+        
+        // batch: only one notification at the end
+        Assert.assertTrue(stack.beginBatch(key));
+        stack.addDoneAction(action3, key);
+        stack.addDoneAction(action4, key);
+        Assert.assertTrue(stack.singleUndo(key));
+        Assert.assertTrue(stack.singleDo(key));
+        Assert.assertEquals(2, changeCount.get());
+        Assert.assertTrue(stack.commitBatch(key));
+        Assert.assertEquals(3, changeCount.get());
+        Assert.assertEquals(4, stack.getUndoStackSize(key));
+        
+        // nested batch: only notified by the outer commit
+        Assert.assertTrue(stack.beginBatch(key));
+        Assert.assertTrue(stack.beginBatch(key));
+        Assert.assertTrue(stack.rollBack(key));
+        Assert.assertTrue(stack.commitBatch(key));
+        Assert.assertEquals(3, changeCount.get());
+        Assert.assertTrue(stack.rollForward(key));
+        Assert.assertTrue(stack.commitBatch(key));
+        Assert.assertEquals(4, changeCount.get());
+        
+        // nothing done - nothing notified
+        Assert.assertTrue(stack.beginBatch(key));
+        Assert.assertTrue(stack.commitBatch(key));
+        Assert.assertEquals(4, changeCount.get());
+        
+        Assert.assertTrue(stack.clear(key));
+        Assert.assertEquals(5, changeCount.get());
+    }
+    
+    @Test
+    public void testBatchStack() {
+        testBatch(new DoUndoStack(), null);
+    }
+    
+    @Test
+    public void testBatchStackManager() {
+        testBatch(DoUndoManager.getInstance(), "Batch");
+
+        // batch for one key doesn't hold back the notifications for the others
+        final DoUndoManager manager = DoUndoManager.getInstance();
+        final AtomicInteger changeCount = new AtomicInteger(0);
+        manager.changeCountProperty().addListener((ov, oldValue, newValue) -> {
+            changeCount.incrementAndGet();
+        });
+        Assert.assertTrue(manager.beginBatch("Batch"));
+        manager.addDoneAction(action1, "Batch");
+        Assert.assertEquals(0, changeCount.get());
+        manager.addDoneAction(action2, "Batch2");
+        Assert.assertEquals(1, changeCount.get());
+        Assert.assertTrue(manager.getHandle("Batch2").singleUndo());
+        Assert.assertEquals(2, changeCount.get());
+        Assert.assertTrue(manager.commitBatch("Batch"));
+        Assert.assertEquals(3, changeCount.get());
+        // commit without begin
+        Assert.assertFalse(manager.commitBatch("Batch"));
+
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+    }
+    
+    private void testMerge(final IDoUndoStack stack, final String key) {
+        // no merge window - no merging
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(1, "A"), key);
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(2, "A"), key);
+        Assert.assertEquals(2, stack.getUndoStackSize(key));
+        Assert.assertTrue(stack.clear(key));
+        
+        // merge window large enough for any test machine
+        Assert.assertTrue(stack.setMergeWindow(3600000, key));
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(1, "A"), key);
+        stack.addDoneActions(Arrays.asList(TestActions.getInstance().getMergeableAction(2, "A"), TestActions.getInstance().getMergeableAction(3, "A")), key);
+        Assert.assertEquals(1, stack.getUndoStackSize(key));
+        Assert.assertEquals("Action #1-3", stack.getUndoActionDescription(key));
+        
+        // different merge key / non-mergeable action - new entry
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(4, "B"), key);
+        stack.addDoneAction(action1, key);
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(5, "B"), key);
+        Assert.assertEquals(4, stack.getUndoStackSize(key));
+        
+        // merged action is undone / redone as one
+        Assert.assertTrue(stack.rollBack(key));
+        Assert.assertEquals(4, stack.getDoStackSize(key));
+        Assert.assertTrue(stack.singleDo(key));
+        
+        // after do / undo nothing is merged with the previous action
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(6, "A"), key);
+        Assert.assertEquals(2, stack.getUndoStackSize(key));
+        Assert.assertEquals("Action #1-3" + System.lineSeparator() + "Action #6-6", stack.getUndoActionDescription(key));
+        stack.addDoneAction(TestActions.getInstance().getMergeableAction(7, "A"), key);
+        Assert.assertEquals(2, stack.getUndoStackSize(key));
+        Assert.assertEquals("Action #1-3" + System.lineSeparator() + "Action #6-7", stack.getUndoActionDescription(key));
+        
+        Assert.assertTrue(stack.setMergeWindow(DoUndoStack.NO_MERGE, key));
+        Assert.assertTrue(stack.clear(key));
+    }
+    
+    @Test
+    public void testMergeStack() {
+        testMerge(new DoUndoStack(), null);
+        
+        // merged actions replace their predecessors in the size estimation
+        final BoundedDoUndoStack sizeStack = new BoundedDoUndoStack(BoundedDoUndoStack.UNLIMITED_COUNT, 100);
+        sizeStack.setMergeWindow(3600000);
+        for (int i = 1; i <= 8; i++) {
+            sizeStack.addDoneAction(TestActions.getInstance().getMergeableAction(i, "A"));
+        }
+        Assert.assertEquals(1, sizeStack.getUndoStackSize());
+        Assert.assertEquals(80, sizeStack.getEstimatedSize());
+    }
+    
+    @Test
+    public void testMergeStackManager() {
+        testMerge(DoUndoManager.getInstance(), "Merge");
+        
+        // merge window survives clearAll()
+        Assert.assertTrue(DoUndoManager.getInstance().setMergeWindow(3600000, "Merge"));
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+        DoUndoManager.getInstance().addDoneAction(TestActions.getInstance().getMergeableAction(1, "A"), "Merge");
+        DoUndoManager.getInstance().addDoneAction(TestActions.getInstance().getMergeableAction(2, "A"), "Merge");
+        Assert.assertEquals(1, DoUndoManager.getInstance().getUndoStackSize("Merge"));
+
+        Assert.assertTrue(DoUndoManager.getInstance().setMergeWindow(DoUndoStack.NO_MERGE, "Merge"));
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+    }
+    
+    private void testDescriptions(final IDoUndoStack stack, final String key) {
+        // count how often the description is requested
+        final AtomicInteger descriptionCount = new AtomicInteger(0);
+        for (int i = 1; i <= 4; i++) {
+            stack.addDoneAction(TestActions.getInstance().new NumberedAction(i) {
+                @Override
+                public String getDescription() {
+                    descriptionCount.incrementAndGet();
+                    return super.getDescription();
+                }
+            }, key);
+        }
+        Assert.assertTrue(stack.singleUndo(key));
+        // undo prints the description as well...
+        descriptionCount.set(0);
+        
+        // newest first
+        Assert.assertEquals(Arrays.asList("Action #3", "Action #2"), stack.getUndoActionDescriptions(0, 2, key));
+        Assert.assertEquals(Arrays.asList("Action #1"), stack.getUndoActionDescriptions(2, 10, key));
+        Assert.assertEquals(Arrays.asList("Action #1"), stack.getUndoActionDescriptions(2, Integer.MAX_VALUE, key));
+        Assert.assertTrue(stack.getUndoActionDescriptions(3, 1, key).isEmpty());
+        Assert.assertTrue(stack.getUndoActionDescriptions(-1, 1, key).isEmpty());
+        Assert.assertTrue(stack.getUndoActionDescriptions(0, 0, key).isEmpty());
+        Assert.assertEquals(Arrays.asList("Action #4"), stack.getDoActionDescriptions(0, 5, key));
+        Assert.assertEquals(4, descriptionCount.get());
+        
+        // full descriptions - oldest first
+        final String description = "Action #1" + System.lineSeparator() + "Action #2" + System.lineSeparator() + "Action #3" + System.lineSeparator() + "Action #4";
+        Assert.assertEquals(description, stack.getActionDescription(key));
+        Assert.assertEquals(description, stack.getActionDescription(key));
+        Assert.assertEquals(4, descriptionCount.get());
+        
+        // changes are reflected
+        Assert.assertTrue(stack.singleDo(key));
+        Assert.assertEquals(description + System.lineSeparator(), stack.getActionDescription(key));
+        Assert.assertTrue(stack.getDoActionDescriptions(0, 5, key).isEmpty());
+        Assert.assertEquals(Arrays.asList("Action #4"), stack.getUndoActionDescriptions(0, 1, key));
+        
+        // a single short description isn't lost
+        stack.addDoneAction(TestActions.getInstance().new NumberedAction(5) {
+            @Override
+            public String getDescription() {
+                return "5";
+            }
+        }, key);
+        Assert.assertTrue(stack.singleUndo(key));
+        Assert.assertEquals("5", stack.getDoActionDescription(key));
+        
+        Assert.assertTrue(stack.clear(key));
+        Assert.assertEquals("", stack.getActionDescription(key));
+        Assert.assertTrue(stack.getUndoActionDescriptions(0, 5, key).isEmpty());
+    }
+    
+    @Test
+    public void testDescriptionsStack() {
+        testDescriptions(new DoUndoStack(), null);
+    }
+    
+    @Test
+    public void testDescriptionsStackManager() {
+        testDescriptions(DoUndoManager.getInstance(), "Descriptions");
+        
+        // no stack - no descriptions
+        Assert.assertTrue(DoUndoManager.getInstance().getUndoActionDescriptions(0, 5, "Unknown").isEmpty());
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+    }
+    
+    // cells of a "table" that are incremented by compact actions - data is the index of the cell
+    // merged increments of a cell carry the additional increments in the data as multiples of CELLS
+    private class CellHandler implements ICompactActionHandler {
+        private final static int INCREMENT = 1;
+        private final static int FAILING = 2;
+        private final static int CELLS = 10;
+        
+        private final int[] cells = new int[CELLS];
+
+        @Override
+        public boolean doAction(final int type, final long data) {
+            if (type == FAILING) {
+                return false;
+            }
+            cells[(int) (data % CELLS)] += data / CELLS + 1;
+            return true;
+        }
+
+        @Override
+        public boolean undoAction(final int type, final long data) {
+            if (type == FAILING) {
+                return false;
+            }
+            cells[(int) (data % CELLS)] -= data / CELLS + 1;
+            return true;
+        }
+
+        @Override
+        public String getDescription(final int type, final long data) {
+            return "Cell #" + (data % CELLS);
+        }
+
+        @Override
+        public IDoUndoAction.State getStateForFailedUndo(final int type, final long data, final IDoUndoAction.State stateFromCounter) {
+            return IDoUndoAction.State.STUCK_IN_UNDO;
+        }
+
+        @Override
+        public boolean canMerge(final int type, final long data, final int previousType, final long previousData) {
+            return type == INCREMENT && previousType == INCREMENT && (data % CELLS) == (previousData % CELLS);
+        }
+
+        @Override
+        public long merge(final int type, final long data, final int previousType, final long previousData) {
+            return data + (previousData / CELLS + 1) * CELLS;
+        }
+    }
+    
+    @Test
+    public void testCompactStack() throws InterruptedException, ExecutionException {
+        // IDoUndoActions work as with DoUndoStack
+        testGoodStack(new CompactDoUndoStack(new CellHandler()), null);
+        testBadStack(new CompactDoUndoStack(new CellHandler()), null);
+        testMerge(new CompactDoUndoStack(new CellHandler()), null);
+        testDescriptions(new CompactDoUndoStack(new CellHandler()), null);
+        testSelectiveUndo(new CompactDoUndoStack(new CellHandler()), null);
+        testAsync(new CompactDoUndoStack(new CellHandler()), null);
+        
+        final CellHandler handler = new CellHandler();
+        final CompactDoUndoStack stack = new CompactDoUndoStack(handler);
+        for (int i = 0; i < 1000; i++) {
+            handler.doAction(CellHandler.INCREMENT, i % 10);
+            Assert.assertTrue(stack.addDoneAction(CellHandler.INCREMENT, i % 10));
+        }
+        Assert.assertEquals(100, handler.cells[3]);
+        Assert.assertEquals(IDoUndoAction.State.DONE, stack.getUndoActionState(0));
+        // a few bytes per action only
+        Assert.assertTrue(stack.getEstimatedSize() < 1000 * 32);
+        
+        Assert.assertTrue(stack.rollBack());
+        Assert.assertEquals(0, handler.cells[3]);
+        Assert.assertEquals(1000, stack.getDoStackSize());
+        Assert.assertEquals(IDoUndoAction.State.NOT_DONE, stack.getDoActionState(0));
+        Assert.assertTrue(stack.singleDo());
+        Assert.assertEquals(1, handler.cells[0]);
+        Assert.assertTrue(stack.rollForward());
+        Assert.assertEquals(100, handler.cells[9]);
+        Assert.assertEquals(Arrays.asList("Cell #9", "Cell #8"), stack.getUndoActionDescriptions(0, 2));
+        // no read & write sets from the handler - all newer actions depend on it
+        Assert.assertEquals(Arrays.asList(0, 1, 2), stack.getSelectiveUndoPositions(2));
+        Assert.assertTrue(stack.selectiveUndo(2));
+        Assert.assertEquals(99, handler.cells[7]);
+        Assert.assertEquals(3, stack.getDoStackSize());
+        
+        // mixed with IDoUndoActions
+        Assert.assertTrue(stack.addDoneAction(action1));
+        Assert.assertEquals("Action #1", stack.getUndoActionDescriptions(0, 1).get(0));
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertEquals(99, handler.cells[6]);
+        Assert.assertEquals(5, stack.getDoStackSize());
+        
+        // failing compact actions get stuck
+        Assert.assertTrue(stack.clear());
+        Assert.assertTrue(stack.addDoneAction(CellHandler.FAILING, 0));
+        Assert.assertFalse(stack.singleUndo());
+        Assert.assertEquals(IDoUndoAction.State.STUCK_IN_UNDO, stack.getDoActionState(0));
+        Assert.assertFalse(stack.singleDo());
+        Assert.assertEquals(1, stack.getDoStackSize());
+        
+        // consecutive increments of the same cell are merged by the handler
+        Assert.assertTrue(stack.clear());
+        Assert.assertTrue(stack.setMergeWindow(3600000));
+        final int cell5 = handler.cells[5];
+        for (int i = 0; i < 3; i++) {
+            handler.doAction(CellHandler.INCREMENT, 5);
+            Assert.assertTrue(stack.addDoneAction(CellHandler.INCREMENT, 5));
+        }
+        handler.doAction(CellHandler.INCREMENT, 6);
+        Assert.assertTrue(stack.addDoneAction(CellHandler.INCREMENT, 6));
+        Assert.assertEquals(2, stack.getUndoStackSize());
+        Assert.assertEquals(Arrays.asList("Cell #6", "Cell #5"), stack.getUndoActionDescriptions(0, 2));
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertEquals(cell5, handler.cells[5]);
+        Assert.assertTrue(stack.singleDo());
+        Assert.assertEquals(cell5 + 3, handler.cells[5]);
+        // after do / undo nothing is merged with the previous action
+        handler.doAction(CellHandler.INCREMENT, 5);
+        Assert.assertTrue(stack.addDoneAction(CellHandler.INCREMENT, 5));
+        Assert.assertEquals(2, stack.getUndoStackSize());
+        Assert.assertTrue(stack.setMergeWindow(DoUndoStack.NO_MERGE));
+        Assert.assertTrue(stack.clear());
+        
+        // async actions are run without holding the lock of the stack
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompactDoUndoStack blockingStack = new CompactDoUndoStack(new CellHandler() {
+            @Override
+            public boolean undoAction(final int type, final long data) {
+                started.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS) && super.undoAction(type, data);
+                } catch (InterruptedException ex) {
+                    return false;
+                }
+            }
+        });
+        Assert.assertTrue(blockingStack.addDoneAction(CellHandler.INCREMENT, 0));
+        final CompletableFuture<Boolean> undo = blockingStack.singleUndoAsync();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, blockingStack.getDoStackSize());
+        release.countDown();
+        Assert.assertTrue(undo.get());
+        Assert.assertEquals(IDoUndoAction.State.NOT_DONE, blockingStack.getDoActionState(0));
+    }
+    
+    @Test
+    public void testCompactStackManager() {
+        final DoUndoManager manager = DoUndoManager.getInstance();
+        final CellHandler handler = new CellHandler();
+        Assert.assertTrue(manager.setCompactHandler(handler, "Compact"));
+        
+        for (int i = 0; i < 10; i++) {
+            handler.doAction(CellHandler.INCREMENT, i);
+            Assert.assertTrue(manager.addDoneAction(CellHandler.INCREMENT, i, "Compact"));
+        }
+        Assert.assertEquals(10, manager.getUndoStackSize("Compact"));
+        Assert.assertTrue(manager.getEstimatedSize("Compact") > 0);
+        Assert.assertTrue(manager.rollBack("Compact"));
+        Assert.assertEquals(0, handler.cells[5]);
+        
+        // only for keys with a CompactDoUndoStack
+        final long failureCount = manager.getFailureCount();
+        Assert.assertFalse(manager.addDoneAction(CellHandler.INCREMENT, 0, "NotCompact"));
+        Assert.assertEquals(failureCount + 1, manager.getFailureCount());
+        
+        // compact stacks report to the metrics listener as well
+        final DoUndoMetricsRegistry registry = new DoUndoMetricsRegistry(manager, false);
+        manager.setMetricsListener(registry);
+        Assert.assertTrue(manager.rollForward("Compact"));
+        Assert.assertTrue(manager.addDoneAction(CellHandler.FAILING, 0, "Compact"));
+        Assert.assertFalse(manager.singleUndo("Compact"));
+        final DoUndoKeyMetrics metrics = registry.getMetrics("Compact");
+        Assert.assertEquals(1, metrics.getAddedCount());
+        Assert.assertEquals(1, metrics.getUndoFailedCount());
+        Assert.assertEquals(10, metrics.getDoCount());
+        manager.setMetricsListener(null);
+        registry.close();
+
+        Assert.assertTrue(manager.setStackSupplier(null, "Compact"));
+        Assert.assertTrue(manager.clearAll());
+    }
+    
+    private void testSelectiveUndo(final IDoUndoStack stack, final String key) {
+        final TestActions actions = TestActions.getInstance();
+        final Set<Object> none = Collections.emptySet();
+        // 2 reads what 1 writes, 4 reads what 2 writes, 5 writes what 3 writes
+        stack.addDoneActions(Arrays.asList(
+                actions.getReadWriteAction(1, none, Collections.singleton("a")),
+                actions.getReadWriteAction(2, Collections.singleton("a"), Collections.singleton("b")),
+                actions.getReadWriteAction(3, none, Collections.singleton("c")),
+                actions.getReadWriteAction(4, Collections.singleton("b"), Collections.singleton("d")),
+                actions.getReadWriteAction(5, none, Collections.singleton("c"))), key);
+        
+        // positions newest first, same as for getUndoActionDescriptions()
+        Assert.assertEquals(Arrays.asList(1, 3, 4), stack.getSelectiveUndoPositions(4, key));
+        Assert.assertEquals(Arrays.asList(0, 2), stack.getSelectiveUndoPositions(2, key));
+        Assert.assertEquals(Arrays.asList(0), stack.getSelectiveUndoPositions(0, key));
+        Assert.assertTrue(stack.getSelectiveUndoPositions(5, key).isEmpty());
+        Assert.assertTrue(stack.getSelectiveUndoPositions(-1, key).isEmpty());
+        Assert.assertFalse(stack.selectiveUndo(5, key));
+        
+        // undo 2 & 4 but leave 3 & 5 alone
+        Assert.assertTrue(stack.selectiveUndo(3, key));
+        Assert.assertEquals(Arrays.asList("Action #5", "Action #3", "Action #1"), stack.getUndoActionDescriptions(0, 5, key));
+        // 2 is done next
+        Assert.assertEquals(Arrays.asList("Action #2", "Action #4"), stack.getDoActionDescriptions(0, 5, key));
+        Assert.assertTrue(stack.singleDo(key));
+        Assert.assertEquals(Arrays.asList("Action #2", "Action #5", "Action #3", "Action #1"), stack.getUndoActionDescriptions(0, 5, key));
+        
+        // actions without read / write sets depend on everything
+        stack.addDoneAction(actions.getNumberedAction(6), key);
+        Assert.assertEquals(Arrays.asList(0, 2, 3), stack.getSelectiveUndoPositions(3, key));
+        stack.addDoneAction(actions.getReadWriteAction(7, none, none), key);
+        Assert.assertEquals(Arrays.asList(0, 1), stack.getSelectiveUndoPositions(1, key));
+        
+        // nothing is changed if one of them can't be undone
+        stack.addDoneAction(actions.getNoCanUndoAction(8), key);
+        Assert.assertFalse(stack.selectiveUndo(4, key));
+        Assert.assertEquals(7, stack.getUndoStackSize(key));
+        Assert.assertEquals(1, stack.getDoStackSize(key));
+        
+        Assert.assertTrue(stack.clear(key));
+    }
+    
+    @Test
+    public void testSelectiveUndoStack() {
+        testSelectiveUndo(new DoUndoStack(), null);
+    }
+    
+    @Test
+    public void testSelectiveUndoStackManager() {
+        testSelectiveUndo(DoUndoManager.getInstance(), "Selective");
+        
+        // no stack - nothing to undo
+        Assert.assertFalse(DoUndoManager.getInstance().selectiveUndo(0, "Unknown"));
+        Assert.assertTrue(DoUndoManager.getInstance().getSelectiveUndoPositions(0, "Unknown").isEmpty());
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+    }
+    
+    @Test
+    public void testHandle() {
+        final DoUndoManager manager = DoUndoManager.getInstance();
+        final DoUndoHandle handle = manager.getHandle("Handle");
+        Assert.assertNotNull(handle);
+        Assert.assertSame(handle, manager.getHandle("Handle"));
+        Assert.assertEquals("Handle", handle.getKey());
+        Assert.assertNull(manager.getHandle(null));
+        
+        // nothing there yet - no failure for checks
+        final long failureCount = manager.getFailureCount();
+        Assert.assertFalse(handle.canUndo());
+        Assert.assertEquals(0, handle.getUndoStackSize());
+        Assert.assertEquals(failureCount, manager.getFailureCount());
+        // but for do / undo
+        Assert.assertFalse(handle.singleUndo());
+        Assert.assertFalse(handle.rollForward());
+        Assert.assertEquals(failureCount + 2, manager.getFailureCount());
+        
+        // handle & manager work on the same stack
+        Assert.assertTrue(handle.addDoneAction(action1));
+        Assert.assertTrue(handle.addDoneActions(Arrays.asList(action2, action3)));
+        Assert.assertEquals(3, manager.getUndoStackSize("Handle"));
+        Assert.assertTrue(handle.singleUndo());
+        Assert.assertEquals(1, manager.getDoStackSize("Handle"));
+        Assert.assertTrue(manager.singleDo("Handle"));
+        Assert.assertEquals(3, handle.getUndoStackSize());
+        Assert.assertEquals(Arrays.asList("Action #3", "Action #2"), handle.getUndoActionDescriptions(0, 2));
+        Assert.assertEquals(manager.getActionDescription("Handle"), handle.getActionDescription());
+        Assert.assertTrue(handle.rollBack());
+        Assert.assertTrue(handle.canDo());
+        Assert.assertFalse(handle.canUndo());
+        
+        // handle survives clearAll()
+        Assert.assertTrue(manager.clearAll());
+        Assert.assertFalse(handle.canDo());
+        Assert.assertTrue(handle.addDoneAction(action4));
+        Assert.assertEquals(1, manager.getUndoStackSize("Handle"));
+        Assert.assertTrue(handle.clear());
+        Assert.assertEquals(failureCount + 2, manager.getFailureCount());
+        
+        Assert.assertTrue(manager.clearAll());
+    }
+    
+    @Test
+    public void testMetrics() throws Exception {
+        final DoUndoManager manager = DoUndoManager.getInstance();
+        final DoUndoMetricsRegistry registry = new DoUndoMetricsRegistry(manager, true);
+        
+        // stack created before the listener is set also gets it
+        Assert.assertTrue(manager.addDoneAction(TestActions.getInstance().getSizedAction(1, 100), "Metrics"));
+        manager.setMetricsListener(registry);
+        Assert.assertSame(registry, manager.getMetricsListener());
+        Assert.assertTrue(manager.addDoneActions(Arrays.asList(TestActions.getInstance().getSizedAction(2, 200), TestActions.getInstance().getSizedAction(3, 300)), "Metrics"));
+        
+        final DoUndoKeyMetrics metrics = registry.getMetrics("Metrics");
+        Assert.assertEquals("Metrics", metrics.getKey());
+        Assert.assertEquals(2, metrics.getAddedCount());
+        Assert.assertEquals(3, metrics.getUndoStackSize());
+        Assert.assertEquals(600, metrics.getEstimatedSize());
+        Assert.assertEquals(600, manager.getEstimatedSize("Metrics"));
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(DoUndoMetricsRegistry.getObjectName("Metrics")));
+        Assert.assertEquals(3, ManagementFactory.getPlatformMBeanServer().getAttribute(DoUndoMetricsRegistry.getObjectName("Metrics"), "UndoStackSize"));
+
+        Assert.assertTrue(manager.rollBack("Metrics"));
+        Assert.assertTrue(manager.singleDo("Metrics"));
+        Assert.assertEquals(3, metrics.getUndoCount());
+        Assert.assertEquals(1, metrics.getDoCount());
+        Assert.assertEquals(0, metrics.getUndoFailedCount());
+        Assert.assertEquals(2, metrics.getDoStackSize());
+        Assert.assertEquals(3, metrics.getUndoLatency().getCount());
+        Assert.assertTrue(metrics.getUndoMaxNanos() >= metrics.getUndoMedianNanos());
+        Assert.assertTrue(metrics.getUndoMaxNanos() >= metrics.getUndoMeanNanos());
+        
+        // failing undo is counted with the state it leaves the action in
+        Assert.assertTrue(manager.clear("Metrics"));
+        Assert.assertEquals(1, metrics.getClearedCount());
+        Assert.assertTrue(manager.addDoneAction(TestActions.getInstance().getNoUndoStuckAction(4), "Metrics"));
+        Assert.assertFalse(manager.singleUndo("Metrics"));
+        Assert.assertEquals(1, metrics.getUndoFailedCount());
+        Assert.assertEquals(1, metrics.getStuckInUndoCount());
+        Assert.assertEquals(0, metrics.getStuckInDoCount());
+        
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getUndoCount());
+        Assert.assertEquals(0, metrics.getStuckInUndoCount());
+        
+        // nothing is counted without listener
+        manager.setMetricsListener(null);
+        Assert.assertTrue(manager.clear("Metrics"));
+        Assert.assertEquals(0, metrics.getClearedCount());
+        
+        registry.close();
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(DoUndoMetricsRegistry.getObjectName("Metrics")));
+        Assert.assertTrue(manager.clearAll());
+    }
+    
+    // action that takes its time and keeps track of the sequence of do / undo calls
+    private class SlowAction extends AbstractDoUndoAction {
+        private final int myCount;
+        private final List<String> myCalls;
+        
+        public SlowAction(final int count, final List<String> calls) {
+            myCount = count;
+            myCalls = calls;
+        }
+
+        @Override
+        public boolean doHook() {
+            sleep();
+            myCalls.add("Do " + myCount);
+            return true;
+        }
+
+        @Override
+        public boolean undoHook() {
+            sleep();
+            myCalls.add("Undo " + myCount);
+            return true;
+        }
+        
+        private void sleep() {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            return "SlowAction #" + myCount;
+        }
+    }
+    
+    private void testAsync(final IDoUndoStack stack, final String key) throws InterruptedException, ExecutionException {
+        // nothing to do yet
+        Assert.assertFalse(stack.singleUndoAsync(key).get());
+        Assert.assertFalse(stack.rollForwardAsync(key).get());
+        
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        stack.addDoneActions(Arrays.asList(new SlowAction(1, calls), new SlowAction(2, calls), new SlowAction(3, calls)), key);
+        
+        // fire away without waiting: calls need to be run in sequence
+        final CompletableFuture<Boolean> undo1 = stack.singleUndoAsync(key);
+        final CompletableFuture<Boolean> undo2 = stack.singleUndoAsync(key);
+        final CompletableFuture<Boolean> do1 = stack.singleDoAsync(key);
+        final CompletableFuture<Boolean> rollBack = stack.rollBackAsync(key);
+        final CompletableFuture<Boolean> undo3 = stack.singleUndoAsync(key);
+        final CompletableFuture<Boolean> rollForward = stack.rollForwardAsync(key);
+        
+        Assert.assertTrue(rollForward.get());
+        Assert.assertTrue(undo1.get());
+        Assert.assertTrue(undo2.get());
+        Assert.assertTrue(do1.get());
+        Assert.assertTrue(rollBack.get());
+        // nothing left to undo after rollBack
+        Assert.assertFalse(undo3.get());
+        
+        Assert.assertEquals(
+                Arrays.asList("Undo 3", "Undo 2", "Do 2", "Undo 2", "Undo 1", "Do 1", "Do 2", "Do 3"), 
+                calls);
+        Assert.assertEquals(0, stack.getDoStackSize(key));
+        Assert.assertEquals(3, stack.getUndoStackSize(key));
+        
+        // failing actions behave the same way as in sync calls
+        Assert.assertTrue(stack.clear(key));
+        testBadFilledStack(stack, key);
+        Assert.assertTrue(stack.singleUndoAsync(key).get());
+        Assert.assertFalse(stack.rollBackAsync(key).get());
+        Assert.assertEquals(3, stack.getDoStackSize(key));
+        Assert.assertEquals(1, stack.getUndoStackSize(key));
+
+        // sync calls run their actions without holding the lock of the stack as well
+        Assert.assertTrue(stack.clear(key));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        stack.addDoneAction(new SlowAction(4, calls) {
+            @Override
+            public boolean undoHook() {
+                started.countDown();
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    return false;
+                }
+            }
+        }, key);
+        final CompletableFuture<Boolean> rollBack2 = CompletableFuture.supplyAsync(() -> stack.rollBack(key));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, stack.getDoStackSize(key));
+        Assert.assertFalse(stack.canUndo(key));
+        release.countDown();
+        Assert.assertTrue(rollBack2.get());
+
+        Assert.assertTrue(stack.clear(key));
+    }
+    
+    @Test
+    public void testAsyncStack() throws InterruptedException, ExecutionException {
+        testAsync(new DoUndoStack(), null);
+    }
+    
+    @Test
+    public void testAsyncStackManager() throws InterruptedException, ExecutionException {
+        // no stack yet for key
+        Assert.assertFalse(DoUndoManager.getInstance().singleUndoAsync("Async").get());
+        
+        testAsync(DoUndoManager.getInstance(), "Async");
+
+        Assert.assertTrue(DoUndoManager.getInstance().clearAll());
+    }
+    
     @Test
     public void testGoodStackManager() {
         // don't confuse with thread dumps
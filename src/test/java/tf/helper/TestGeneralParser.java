@@ -25,10 +25,18 @@
  */
 package tf.helper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -41,8 +49,23 @@ import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import tf.helper.general.DateTimeParser;
 import tf.helper.general.GeneralParser;
+import tf.helper.general.ParseStatus;
 
 /**
  *
@@ -84,9 +107,365 @@ public class TestGeneralParser {
             test("APRIL"                                        , Month.class);         // enum
     }
 
+    public static class TestBean {
+        private int count;
+        private String name;
+        private RoundingMode mode;
+        private LocalDate date;
+        private Duration duration;
+        
+        public void setCount(final int value) {
+            count = value;
+        }
+
+        public void setName(final String value) {
+            name = value;
+        }
+
+        // fluent setters work as well
+        public TestBean setMode(final RoundingMode value) {
+            mode = value;
+            return this;
+        }
+
+        public void setDate(final LocalDate value) {
+            date = value;
+        }
+
+        public void setDuration(final Duration value) {
+            duration = value;
+        }
+    }
+    
+    @Test
+    public void testRowParser() {
+        final TestBean bean = GeneralParser.parseRow(new String[] {"42", "Hello", "HALF_UP", "2016-04-01", "PT1M"}, TestBean.class, "count", "name", "mode", "date", "duration");
+        Assert.assertEquals(42, bean.count);
+        Assert.assertEquals("Hello", bean.name);
+        Assert.assertEquals(RoundingMode.HALF_UP, bean.mode);
+        Assert.assertEquals(LocalDate.of(2016, 4, 1), bean.date);
+        // no parser for Duration (yet)
+        Assert.assertNull(bean.duration);
+        
+        // parser is generated once per class & columns
+        final Function<String[], TestBean> rowParser = GeneralParser.getRowParser(TestBean.class, "name", "unknown", "count");
+        Assert.assertSame(rowParser, GeneralParser.getRowParser(TestBean.class, "name", "unknown", "count"));
+        final TestBean bean2 = rowParser.apply(new String[] {"World", "ignored"});
+        Assert.assertEquals("World", bean2.name);
+        Assert.assertEquals(0, bean2.count);
+        
+        // user defined parsers
+        GeneralParser.registerParser(Duration.class, Duration::parse);
+        Assert.assertEquals(Duration.ofMinutes(1), GeneralParser.parse("PT1M", Duration.class));
+        final TestBean bean3 = GeneralParser.parseRow(new String[] {"PT1M"}, TestBean.class, "duration");
+        Assert.assertEquals(Duration.ofMinutes(1), bean3.duration);
+        GeneralParser.registerParser(Duration.class, null);
+        
+        try {
+            rowParser.apply(new String[] {"World", "ignored", "NaN"});
+            Assert.fail("No exception for invalid value");
+        } catch (UnsupportedOperationException ex) {
+        }
+        try {
+            // beans need column names
+            GeneralParser.getRowParser(TestBean.class);
+            Assert.fail("No exception for bean without column names");
+        } catch (UnsupportedOperationException ex) {
+        }
+        
+        // column array can be re-used by the caller
+        final String[] header = new String[] {"name", "count"};
+        final Function<String[], TestBean> headerParser = GeneralParser.getRowParser(TestBean.class, header);
+        header[0] = "count";
+        header[1] = "name";
+        final TestBean bean4 = GeneralParser.getRowParser(TestBean.class, header).apply(new String[] {"7", "Seven"});
+        Assert.assertEquals(7, bean4.count);
+        Assert.assertEquals("Seven", bean4.name);
+        Assert.assertSame(headerParser, GeneralParser.getRowParser(TestBean.class, "name", "count"));
+    }
+    
+    @Test
+    public void testRecordRowParser() throws Exception {
+        // records are only available from java 16 onwards - so we compile one on the fly, if possible
+        final Class<?> type = compileClass("TestRecord", 
+                "public record TestRecord(int count, String name, java.math.RoundingMode mode, java.time.LocalDate date) {}");
+        Assume.assumeNotNull(type);
+        
+        // components in order
+        final Object record = GeneralParser.parseRow(new String[] {"42", "Hello", "HALF_UP", "2016-04-01"}, type);
+        Assert.assertEquals(42, type.getMethod("count").invoke(record));
+        Assert.assertEquals("Hello", type.getMethod("name").invoke(record));
+        Assert.assertEquals(RoundingMode.HALF_UP, type.getMethod("mode").invoke(record));
+        Assert.assertEquals(LocalDate.of(2016, 4, 1), type.getMethod("date").invoke(record));
+        
+        // by name - unknown columns are ignored, missing values are defaults
+        final Function<String[], ?> rowParser = GeneralParser.getRowParser(type, "name", "unknown", "count", "date");
+        Assert.assertSame(rowParser, GeneralParser.getRowParser(type, "name", "unknown", "count", "date"));
+        final Object record2 = rowParser.apply(new String[] {"World", "ignored", "7"});
+        Assert.assertEquals(7, type.getMethod("count").invoke(record2));
+        Assert.assertEquals("World", type.getMethod("name").invoke(record2));
+        Assert.assertNull(type.getMethod("mode").invoke(record2));
+        Assert.assertNull(type.getMethod("date").invoke(record2));
+        final Object record3 = rowParser.apply(new String[] {"Short"});
+        Assert.assertEquals(0, type.getMethod("count").invoke(record3));
+        
+        try {
+            rowParser.apply(new String[] {"World", "ignored", "NaN"});
+            Assert.fail("No exception for invalid value");
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+    
+    // compile & load a class from source - null if there is no compiler or the source can't be compiled
+    private static Class<?> compileClass(final String name, final String source) throws IOException, ClassNotFoundException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return null;
+        }
+        
+        final Path dir = Files.createTempDirectory("TestGeneralParser");
+        try {
+            final Path file = dir.resolve(name + ".java");
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            // suppress error output for older jdks
+            if (compiler.run(null, null, new ByteArrayOutputStream(), "-d", dir.toString(), file.toString()) != 0) {
+                return null;
+            }
+            
+            final URLClassLoader loader = new URLClassLoader(new URL[] {dir.toUri().toURL()}, TestGeneralParser.class.getClassLoader());
+            return loader.loadClass(name);
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testPrimitiveParser() {
+        final ParseStatus status = new ParseStatus();
+        
+        Assert.assertEquals(123, GeneralParser.parseInt("123", status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertEquals(Integer.MIN_VALUE, GeneralParser.parseInt("-2147483648", status));
+        Assert.assertEquals(Integer.MAX_VALUE, GeneralParser.parseInt("+2147483647", status));
+        Assert.assertEquals(0, GeneralParser.parseInt("2147483648", status));
+        Assert.assertEquals(ParseStatus.OVERFLOW, status.getCode());
+        Assert.assertEquals(0, GeneralParser.parseInt("12a", status));
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        Assert.assertEquals(2, status.getErrorIndex());
+        Assert.assertEquals(0, GeneralParser.parseInt("", status));
+        Assert.assertEquals(ParseStatus.EMPTY, status.getCode());
+        Assert.assertEquals(0, GeneralParser.parseInt("-", status));
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        
+        Assert.assertEquals(Long.MIN_VALUE, GeneralParser.parseLong("-9223372036854775808", status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertEquals(0, GeneralParser.parseLong("9223372036854775808", status));
+        Assert.assertEquals(ParseStatus.OVERFLOW, status.getCode());
+        
+        // same results as Double.parseDouble()
+        final Random random = new Random(4711);
+        for (int i = 0; i < 10000; i++) {
+            final String value;
+            if (i % 2 == 0) {
+                value = Double.toString(Double.longBitsToDouble(random.nextLong()));
+            } else {
+                value = (random.nextInt(2000000) - 1000000) + "." + random.nextInt(1000) + "e" + (random.nextInt(60) - 30);
+            }
+            Assert.assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(GeneralParser.parseDouble(value, status)));
+        }
+        Assert.assertEquals(0.5, GeneralParser.parseDouble(".5", status), 0.0);
+        Assert.assertTrue(Double.isNaN(GeneralParser.parseDouble("NaN", status)));
+        Assert.assertTrue(status.isOk());
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, GeneralParser.parseDouble("-Infinity", status), 0.0);
+        Assert.assertTrue(status.isOk());
+        Assert.assertEquals(Double.POSITIVE_INFINITY, GeneralParser.parseDouble("1e400", status), 0.0);
+        Assert.assertEquals(ParseStatus.OVERFLOW, status.getCode());
+        Assert.assertEquals(0.0, GeneralParser.parseDouble("1e+", status), 0.0);
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        Assert.assertEquals(0.0, GeneralParser.parseDouble(" 1", status), 0.0);
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        
+        Assert.assertTrue(GeneralParser.parseBoolean("TRUE", status));
+        Assert.assertFalse(GeneralParser.parseBoolean("false", status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertFalse(GeneralParser.parseBoolean("yes", status));
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        
+        // slices of any CharSequence
+        final CharBuffer buffer = CharBuffer.wrap("x;123;-4.5;True;y");
+        Assert.assertEquals(123, GeneralParser.parseInt(buffer, 2, 3, status));
+        Assert.assertEquals(-4.5, GeneralParser.parseDouble(buffer, 6, 4, status), 0.0);
+        Assert.assertTrue(GeneralParser.parseBoolean(buffer, 11, 4, status));
+        Assert.assertEquals(0, GeneralParser.parseInt(buffer, 0, 5, status));
+        Assert.assertEquals(0, status.getErrorIndex());
+        // status is optional
+        Assert.assertEquals(123, GeneralParser.parseLong(buffer, 2, 3, null));
+    }
+
     private static <T> void test(String argString, Class<T> param) {
             final T ret = GeneralParser.parse(argString, param);
             System.out.printf("%-45s -> %-45s   [%-25s -> %s]%n",
                               '"' + argString + '"', ret, param.getName(), ret.getClass().getName());
     }
+    
+    @Test
+    public void testColumnParser() {
+        final ParseStatus status = new ParseStatus();
+        
+        Assert.assertArrayEquals(new int[] {1, -2, 3}, GeneralParser.parseIntColumn(Arrays.asList("1", "-2", "3"), null, status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertArrayEquals(new long[] {1, 5000000000L}, GeneralParser.parseLongColumn(Arrays.asList("1", "5000000000"), null, status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertArrayEquals(new double[] {1.5, -2.0, 3e10}, GeneralParser.parseDoubleColumn(Arrays.asList("1.5", "-2", "3e10"), null, status), 0.0);
+        Assert.assertTrue(status.isOk());
+        
+        // first error is reported with index of value, failed values are 0
+        Assert.assertArrayEquals(new int[] {1, 0, 3, 0}, GeneralParser.parseIntColumn(Arrays.asList("1", "x", "3", null), null, status));
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        Assert.assertEquals(1, status.getErrorIndex());
+        
+        // delimited, trailing delimiter is ignored
+        Assert.assertArrayEquals(new int[] {12, 34, 56}, GeneralParser.parseIntColumn(CharBuffer.wrap("12\n34\n56\n"), '\n', null, status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertArrayEquals(new double[] {1.25, 0.0, 7.0}, GeneralParser.parseDoubleColumn("1.25;;7", ';', null, status), 0.0);
+        Assert.assertEquals(ParseStatus.EMPTY, status.getCode());
+        Assert.assertEquals(1, status.getErrorIndex());
+        Assert.assertEquals(0, GeneralParser.parseLongColumn("", ';', null, status).length);
+        Assert.assertTrue(status.isOk());
+        
+        // typed columns, parser looked up only once
+        Assert.assertEquals(Arrays.asList(LocalDate.of(2016, 4, 1), null), GeneralParser.parseColumn(Arrays.asList("2016-04-01", "no date"), LocalDate.class, null, status));
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        Assert.assertEquals(1, status.getErrorIndex());
+        Assert.assertEquals(Arrays.asList(Month.APRIL, Month.MAY), GeneralParser.parseColumn("APRIL,MAY", ',', Month.class, null, status));
+        Assert.assertTrue(status.isOk());
+        
+        // large columns in parallel give the same result as in the calling thread
+        final int count = 10 * GeneralParser.PARALLEL_THRESHOLD;
+        final Random random = new Random(4711);
+        final List<String> values = new ArrayList<>();
+        final StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            final String value = Integer.toString(random.nextInt());
+            values.add(value);
+            chars.append(value).append('\n');
+        }
+        final int[] expected = GeneralParser.parseIntColumn(values, null, status);
+        Assert.assertTrue(status.isOk());
+        Assert.assertArrayEquals(expected, GeneralParser.parseIntColumn(values, ForkJoinPool.commonPool(), status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertArrayEquals(expected, GeneralParser.parseIntColumn(CharBuffer.wrap(chars), '\n', new ForkJoinPool(3), status));
+        Assert.assertTrue(status.isOk());
+        
+        // first error wins, even if a later chunk is done first
+        values.set(count - 1, "x");
+        values.set(count / 2, "");
+        GeneralParser.parseIntColumn(values, ForkJoinPool.commonPool(), status);
+        Assert.assertEquals(ParseStatus.EMPTY, status.getCode());
+        Assert.assertEquals(count / 2, status.getErrorIndex());
+    }
+    
+    @Test
+    public void testDateTimeParser() {
+        final ParseStatus status = new ParseStatus();
+        
+        // strict ISO parsing in GeneralParser gives the same results as the JDK
+        Assert.assertEquals(LocalDateTime.of(2016, 4, 1, 10, 15, 30, 120000000), GeneralParser.parse("2016-04-01T10:15:30.12", LocalDateTime.class));
+        Assert.assertEquals(ZonedDateTime.parse("2016-04-01T10:15+02:00"), GeneralParser.parse("2016-04-01T10:15+02:00", ZonedDateTime.class));
+        Assert.assertEquals(ZonedDateTime.parse("2016-04-01T10:15+02:00[Europe/Berlin]"), GeneralParser.parse("2016-04-01T10:15+02:00[Europe/Berlin]", ZonedDateTime.class));
+        Assert.assertEquals(OffsetDateTime.parse("2016-04-01T10:15:30Z"), GeneralParser.parse("2016-04-01T10:15:30Z", OffsetDateTime.class));
+        try {
+            // not ISO
+            GeneralParser.parse("2016-04-01 10:15", LocalDateTime.class);
+            Assert.fail("UnsupportedOperationException expected");
+        } catch (UnsupportedOperationException ex) {
+        }
+        
+        // lenient: other formats, missing time & zone
+        final DateTimeParser<LocalDateTime> parser = new DateTimeParser<>(LocalDateTime.class);
+        Assert.assertFalse(parser.isFormatDetected());
+        Assert.assertEquals(LocalDateTime.of(2016, 4, 1, 10, 15), parser.parse("2016-04-01 10:15"));
+        Assert.assertTrue(parser.isFormatDetected());
+        Assert.assertEquals(LocalDateTime.of(2016, 4, 1, 0, 0), parser.parse("1.4.2016"));
+        Assert.assertEquals(LocalDateTime.of(2016, 4, 1, 9, 5, 1), parser.parse("01.04.2016 9:05:01"));
+        Assert.assertEquals(LocalDateTime.of(2016, 4, 1, 10, 15, 30), parser.parse("20160401101530"));
+        Assert.assertEquals(LocalDateTime.of(2016, 4, 1, 10, 15), parser.parse("2016-04-01T10:15+02:00"));
+        Assert.assertNull(parser.parse("31.02.2016", status));
+        Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+        Assert.assertNull(parser.parse("", status));
+        Assert.assertEquals(ParseStatus.EMPTY, status.getCode());
+        try {
+            parser.parse("no date");
+            Assert.fail("DateTimeParseException expected");
+        } catch (DateTimeParseException ex) {
+        }
+        
+        final DateTimeParser<ZonedDateTime> zonedParser = new DateTimeParser<>(ZonedDateTime.class);
+        zonedParser.setDefaultZone(ZoneId.of("Europe/Berlin"));
+        Assert.assertEquals(ZonedDateTime.of(2016, 4, 1, 10, 15, 0, 0, ZoneId.of("Europe/Berlin")), zonedParser.parse("01.04.2016 10:15"));
+        Assert.assertEquals(LocalDate.of(2016, 4, 1), new DateTimeParser<>(LocalDate.class).parse("2016-04-01T10:15:30"));
+        
+        // ambiguous d/M vs M/d is resolved by the first values of the column
+        Assert.assertEquals(Arrays.asList(LocalDate.of(2016, 4, 1), LocalDate.of(2016, 12, 31)), 
+                GeneralParser.parseColumn(Arrays.asList("04/01/2016", "12/31/2016"), LocalDate.class, null, status));
+        Assert.assertTrue(status.isOk());
+        Assert.assertEquals(Arrays.asList(LocalDate.of(2016, 1, 4), LocalDate.of(2016, 12, 31)), 
+                GeneralParser.parseColumn("04/01/2016;31/12/2016", ';', LocalDate.class, null, status));
+        Assert.assertTrue(status.isOk());
+        
+        // format changes within the column
+        final List<LocalDate> dates = new DateTimeParser<>(LocalDate.class).parseColumn(Arrays.asList("2016-04-01", "", "02.04.2016", "2016-04-03"), null, status);
+        Assert.assertEquals(Arrays.asList(LocalDate.of(2016, 4, 1), null, LocalDate.of(2016, 4, 2), LocalDate.of(2016, 4, 3)), dates);
+        Assert.assertEquals(ParseStatus.EMPTY, status.getCode());
+        Assert.assertEquals(1, status.getErrorIndex());
+        
+        // a value that doesn't match doesn't change the detected format for the rest of the column
+        final List<String> values = new ArrayList<>();
+        for (int i = 0; i < DateTimeParser.SAMPLE_SIZE; i++) {
+            values.add("04/13/2016");
+        }
+        values.add("13/05/2016");
+        for (int i = 0; i < 5 * GeneralParser.PARALLEL_THRESHOLD; i++) {
+            values.add("05/06/2016");
+        }
+        for (ForkJoinPool pool : Arrays.asList(null, ForkJoinPool.commonPool())) {
+            final List<LocalDate> column = new DateTimeParser<>(LocalDate.class).parseColumn(values, pool, status);
+            Assert.assertTrue(status.isOk());
+            Assert.assertEquals(LocalDate.of(2016, 4, 13), column.get(0));
+            Assert.assertEquals(LocalDate.of(2016, 5, 13), column.get(DateTimeParser.SAMPLE_SIZE));
+            for (int i = DateTimeParser.SAMPLE_SIZE + 1; i < column.size(); i++) {
+                Assert.assertEquals(LocalDate.of(2016, 5, 6), column.get(i));
+            }
+        }
+        
+        // no format from the sample - none is detected later on, so 05/06/2016 doesn't depend on which value is parsed first
+        final StringBuilder noSample = new StringBuilder();
+        final List<String> noSampleValues = new ArrayList<>();
+        for (int i = 0; i < DateTimeParser.SAMPLE_SIZE; i++) {
+            noSampleValues.add("no date");
+        }
+        noSampleValues.add("04/13/2016");
+        for (int i = 0; i < 5 * GeneralParser.PARALLEL_THRESHOLD; i++) {
+            noSampleValues.add("05/06/2016");
+        }
+        for (String value : noSampleValues) {
+            noSample.append(value).append(';');
+        }
+        for (ForkJoinPool pool : Arrays.asList(null, ForkJoinPool.commonPool())) {
+            final List<LocalDate> column = GeneralParser.parseColumn(noSample, ';', LocalDate.class, pool, status);
+            Assert.assertEquals(ParseStatus.INVALID, status.getCode());
+            Assert.assertEquals(GeneralParser.parseColumn(noSampleValues, LocalDate.class, pool, status), column);
+            Assert.assertNull(column.get(0));
+            Assert.assertEquals(LocalDate.of(2016, 4, 13), column.get(DateTimeParser.SAMPLE_SIZE));
+            for (int i = DateTimeParser.SAMPLE_SIZE + 1; i < column.size(); i++) {
+                Assert.assertEquals(LocalDate.of(2016, 6, 5), column.get(i));
+            }
+        }
+        
+        // same for single values: the first one detects the format
+        final DateTimeParser<LocalDate> dateParser = new DateTimeParser<>(LocalDate.class);
+        Assert.assertEquals(LocalDate.of(2016, 4, 13), dateParser.parse("04/13/2016"));
+        Assert.assertEquals(LocalDate.of(2016, 5, 13), dateParser.parse("13/05/2016"));
+        Assert.assertEquals(LocalDate.of(2016, 5, 6), dateParser.parse("05/06/2016"));
+    }
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tf.helper.doundo.AbstractDoUndoAction;
+import tf.helper.doundo.DoUndoManager;
+import tf.helper.doundo.DoUndoStack;
+import tf.helper.doundo.IDoUndoAction;
+import tf.helper.doundo.IDoUndoActionCodec;
+import tf.helper.doundo.JournaledDoUndoStack;
+
+/**
+ * Test journal for do / undo stacks: unloading of actions & replay after "crash".
+ * @author thomas
+ */
+public class TestJournaledDoUndoStack {
+    private Path testpath;
+    
+    // action restored from the journal - only knows its description
+    private class RestoredAction extends AbstractDoUndoAction {
+        private final String myDescription;
+        
+        public RestoredAction(final String description) {
+            myDescription = description;
+        }
+
+        @Override
+        public boolean doHook() {
+            return true;
+        }
+
+        @Override
+        public boolean undoHook() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return myDescription;
+        }
+    }
+    
+    // store the description only - and count how often we had to decode
+    private class DescriptionCodec implements IDoUndoActionCodec {
+        private final AtomicInteger decodeCount = new AtomicInteger(0);
+        
+        @Override
+        public byte[] encode(final IDoUndoAction action) {
+            return action.getDescription().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public IDoUndoAction decode(final byte[] data) {
+            decodeCount.incrementAndGet();
+            return new RestoredAction(new String(data, StandardCharsets.UTF_8));
+        }
+    }
+    
+    // action that gets its counters back from the journal
+    private class CountingAction extends AbstractDoUndoAction {
+        private final String myDescription;
+        
+        public CountingAction(final String description, final int doneCount, final int undoneCount) {
+            myDescription = description;
+            setDoneCount(doneCount);
+            setUndoneCount(undoneCount);
+        }
+
+        @Override
+        public State getState() {
+            return getStateFromCounter();
+        }
+
+        @Override
+        public boolean doHook() {
+            return true;
+        }
+
+        @Override
+        public boolean undoHook() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return myDescription;
+        }
+    }
+    
+    // store description & counters - and remember the decoded actions by description
+    private class CountingCodec implements IDoUndoActionCodec {
+        private final Map<String, IDoUndoAction> decoded = new HashMap<>();
+        private final AtomicInteger encodeCount = new AtomicInteger(0);
+        
+        @Override
+        public byte[] encode(final IDoUndoAction action) {
+            encodeCount.incrementAndGet();
+            return (action.getDescription() + "|" + action.doneCount() + "|" + action.undoneCount()).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public IDoUndoAction decode(final byte[] data) {
+            final String[] values = new String(data, StandardCharsets.UTF_8).split("\\|");
+            final IDoUndoAction result = new CountingAction(values[0], Integer.parseInt(values[1]), Integer.parseInt(values[2]));
+            decoded.put(values[0], result);
+            return result;
+        }
+    }
+    
+    @Before
+    public void setUp() {
+        try {
+            testpath = Files.createTempDirectory("TestJournaledDoUndoStack");
+        } catch (IOException ex) {
+            Logger.getLogger(TestJournaledDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        DoUndoManager.getInstance().clearAll();
+        try {
+            FileUtils.deleteDirectory(testpath.toFile());
+        } catch (IOException ex) {
+            Logger.getLogger(TestJournaledDoUndoStack.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    @Test
+    public void testJournaledStack() {
+        final Path journal = testpath.resolve("test.journal");
+        final DescriptionCodec codec = new DescriptionCodec();
+        
+        final JournaledDoUndoStack stack = new JournaledDoUndoStack(journal, codec, 2);
+        Assert.assertTrue(stack.isJournaled());
+        Assert.assertTrue(Files.exists(journal));
+        
+        for (int i = 1; i <= 5; i++) {
+            stack.addDoneAction(TestActions.getInstance().getNumberedAction(i));
+        }
+        Assert.assertEquals(5, stack.getUndoStackSize());
+        Assert.assertEquals(0, codec.decodeCount.get());
+        
+        // only the newest 2 are still in memory
+        final String description = stack.getUndoActionDescription();
+        Assert.assertEquals(3, codec.decodeCount.get());
+        Assert.assertEquals("Action #1" + System.lineSeparator() + "Action #2" + System.lineSeparator() + "Action #3" + System.lineSeparator() + "Action #4" + System.lineSeparator() + "Action #5", description);
+        
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertTrue(stack.singleUndo());
+        
+        // "crash" - and start again with what is in the journal
+        final JournaledDoUndoStack restored = new JournaledDoUndoStack(journal, codec, 2);
+        Assert.assertEquals(3, restored.getUndoStackSize());
+        Assert.assertEquals(2, restored.getDoStackSize());
+        Assert.assertEquals(stack.getUndoActionDescription(), restored.getUndoActionDescription());
+        Assert.assertEquals(stack.getDoActionDescription(), restored.getDoActionDescription());
+        stack.close();
+        
+        // restored actions are loaded as needed
+        Assert.assertTrue(restored.rollBack());
+        Assert.assertEquals(5, restored.getDoStackSize());
+        Assert.assertTrue(restored.rollForward());
+        Assert.assertEquals(5, restored.getUndoStackSize());
+        
+        // merged actions are journaled as well
+        restored.setMergeWindow(3600000);
+        restored.addDoneActions(Arrays.asList(TestActions.getInstance().getMergeableAction(6, "A"), TestActions.getInstance().getMergeableAction(7, "A")));
+        Assert.assertEquals(6, restored.getUndoStackSize());
+        restored.setMergeWindow(DoUndoStack.NO_MERGE);
+
+        final JournaledDoUndoStack restored2 = new JournaledDoUndoStack(journal, codec, JournaledDoUndoStack.KEEP_ALL);
+        Assert.assertEquals(6, restored2.getUndoStackSize());
+        Assert.assertEquals(0, restored2.getDoStackSize());
+        Assert.assertEquals(restored.getUndoActionDescription(), restored2.getUndoActionDescription());
+        Assert.assertTrue(restored2.getUndoActionDescription().endsWith("Action #6-7"));
+        restored2.close();
+        
+        // clear starts from scratch
+        Assert.assertTrue(restored.clearAll());
+        Assert.assertFalse(restored.isJournaled());
+        final JournaledDoUndoStack restored3 = new JournaledDoUndoStack(journal, codec, 2);
+        Assert.assertEquals(0, restored3.getUndoStackSize());
+        Assert.assertEquals(0, restored3.getDoStackSize());
+        restored3.close();
+    }
+    
+    @Test
+    public void testReplayState() {
+        final Path journal = testpath.resolve("state.journal");
+        final CountingCodec codec = new CountingCodec();
+        
+        // all actions stay in memory - so nothing gets stored on unload
+        final JournaledDoUndoStack stack = new JournaledDoUndoStack(journal, codec, JournaledDoUndoStack.KEEP_ALL);
+        for (String description : Arrays.asList("A", "B", "C")) {
+            final IDoUndoAction action = new CountingAction(description, 0, 0);
+            Assert.assertTrue(action.doAction());
+            stack.addDoneAction(action);
+        }
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertTrue(stack.singleDo());
+        // do & undo only store the counters - no need to encode the actions again
+        Assert.assertEquals(3, codec.encodeCount.get());
+        
+        // "crash" - state & counters have to be the ones after the last do / undo
+        final JournaledDoUndoStack restored = new JournaledDoUndoStack(journal, codec, JournaledDoUndoStack.KEEP_ALL);
+        stack.close();
+        Assert.assertEquals(2, restored.getUndoStackSize());
+        Assert.assertEquals(1, restored.getDoStackSize());
+        Assert.assertEquals("A" + System.lineSeparator() + "B", restored.getUndoActionDescription());
+        Assert.assertEquals("C", restored.getDoActionDescription());
+        
+        assertCounts(codec.decoded.get("A"), IDoUndoAction.State.DONE, 1, 0);
+        assertCounts(codec.decoded.get("B"), IDoUndoAction.State.DONE, 2, 1);
+        assertCounts(codec.decoded.get("C"), IDoUndoAction.State.NOT_DONE, 1, 1);
+        
+        // and the restored stack continues from there
+        Assert.assertTrue(restored.singleDo());
+        restored.close();
+        final JournaledDoUndoStack restored2 = new JournaledDoUndoStack(journal, codec, JournaledDoUndoStack.KEEP_ALL);
+        Assert.assertEquals(3, restored2.getUndoStackSize());
+        Assert.assertEquals("C", restored2.getUndoActionDescriptions(0, 1).get(0));
+        assertCounts(codec.decoded.get("C"), IDoUndoAction.State.DONE, 2, 1);
+        restored2.close();
+        
+        // unloading encodes the changed actions with their counters
+        final JournaledDoUndoStack unloading = new JournaledDoUndoStack(journal, codec, 1);
+        final int encodeCount = codec.encodeCount.get();
+        Assert.assertTrue(unloading.rollBack());
+        Assert.assertTrue(codec.encodeCount.get() > encodeCount);
+        unloading.close();
+        final JournaledDoUndoStack restored3 = new JournaledDoUndoStack(journal, codec, JournaledDoUndoStack.KEEP_ALL);
+        Assert.assertEquals(3, restored3.getDoStackSize());
+        Assert.assertEquals("C" + System.lineSeparator() + "B" + System.lineSeparator() + "A", restored3.getDoActionDescription());
+        assertCounts(codec.decoded.get("A"), IDoUndoAction.State.NOT_DONE, 1, 1);
+        assertCounts(codec.decoded.get("B"), IDoUndoAction.State.NOT_DONE, 2, 2);
+        assertCounts(codec.decoded.get("C"), IDoUndoAction.State.NOT_DONE, 2, 2);
+        restored3.close();
+    }
+    
+    private void assertCounts(final IDoUndoAction action, final IDoUndoAction.State state, final int doneCount, final int undoneCount) {
+        Assert.assertNotNull(action);
+        Assert.assertEquals(state, action.getState());
+        Assert.assertEquals(doneCount, action.doneCount());
+        Assert.assertEquals(undoneCount, action.undoneCount());
+    }
+    
+    @Test
+    public void testSelectiveUndo() {
+        final Path journal = testpath.resolve("selective.journal");
+        final DescriptionCodec codec = new DescriptionCodec();
+        
+        final JournaledDoUndoStack stack = new JournaledDoUndoStack(journal, codec, JournaledDoUndoStack.KEEP_ALL);
+        for (int i = 1; i <= 5; i++) {
+            // each one writes its own data
+            stack.addDoneAction(TestActions.getInstance().getReadWriteAction(i, Collections.emptySet(), Collections.singleton(i)));
+        }
+        Assert.assertTrue(stack.selectiveUndo(3));
+        Assert.assertTrue(stack.selectiveUndo(1));
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertEquals(Arrays.asList("Action #3", "Action #1"), stack.getUndoActionDescriptions(0, 5));
+        Assert.assertEquals(Arrays.asList("Action #5", "Action #4", "Action #2"), stack.getDoActionDescriptions(0, 5));
+        
+        // replay gets the same stacks
+        final JournaledDoUndoStack restored = new JournaledDoUndoStack(journal, codec, 2);
+        Assert.assertEquals(stack.getUndoActionDescriptions(0, 5), restored.getUndoActionDescriptions(0, 5));
+        Assert.assertEquals(stack.getDoActionDescriptions(0, 5), restored.getDoActionDescriptions(0, 5));
+        stack.close();
+        
+        // restored actions don't know their read & write sets anymore - so everything depends on everything
+        Assert.assertEquals(Arrays.asList(0, 1), restored.getSelectiveUndoPositions(1));
+        restored.close();
+    }
+    
+    @Test
+    public void testJournaledStackManager() {
+        final DescriptionCodec codec = new DescriptionCodec();
+        Assert.assertTrue(DoUndoManager.getInstance().setJournal(testpath, codec, 2, "Journal/1"));
+        
+        for (int i = 1; i <= 5; i++) {
+            DoUndoManager.getInstance().addDoneAction(TestActions.getInstance().getNumberedAction(i), "Journal/1");
+        }
+        Assert.assertEquals(5, DoUndoManager.getInstance().getUndoStackSize("Journal/1"));
+        Assert.assertTrue(DoUndoManager.getInstance().rollBack("Journal/1"));
+        // key is used for the file name
+        Assert.assertTrue(Files.exists(testpath.resolve("Journal_1.journal")));
+        
+        // same as after a restart
+        final JournaledDoUndoStack restored = new JournaledDoUndoStack(testpath.resolve("Journal_1.journal"), codec, 2);
+        Assert.assertEquals(5, restored.getDoStackSize());
+        restored.close();
+
+        Assert.assertTrue(DoUndoManager.getInstance().setStackSupplier(null, "Journal/1"));
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import tf.helper.general.BufferedPreferencesStore;
+import tf.helper.general.FilePreferencesStore;
+import tf.helper.general.IPreferencesListener;
+import tf.helper.general.IPreferencesStore;
+import tf.helper.general.MemoryPreferencesStore;
+import tf.helper.general.ObservablePreferencesStore;
+import tf.helper.general.PreferencesChangeEvent;
+
+/**
+ * Test the various IPreferencesStore implementations.
+ * 
+ * @author thomas
+ */
+public class TestPreferencesStores {
+    // simple store in a map that counts the calls - as a stand-in for java.util.prefs
+    public static class MapPreferencesStore implements IPreferencesStore {
+        private final Map<String, String> myValues = new HashMap<>();
+        private final AtomicInteger myWriteCount = new AtomicInteger(0);
+
+        @Override
+        public synchronized String get(final String key, final String defaultValue) {
+            return myValues.getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public synchronized void put(final String key, final String value) {
+            myWriteCount.incrementAndGet();
+            myValues.put(key, value);
+        }
+
+        @Override
+        public synchronized void clear() {
+            myWriteCount.incrementAndGet();
+            myValues.clear();
+        }
+
+        @Override
+        public synchronized void remove(final String key) {
+            myWriteCount.incrementAndGet();
+            myValues.remove(key);
+        }
+
+        // same format as java.util.prefs.Preferences.exportNode()
+        @Override
+        public synchronized void exportPreferences(final OutputStream os) {
+            final StringBuilder xml = new StringBuilder();
+            xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+            xml.append("<!DOCTYPE preferences SYSTEM \"http://java.sun.com/dtd/preferences.dtd\">\n");
+            xml.append("<preferences EXTERNAL_XML_VERSION=\"1.0\">\n<root type=\"user\">\n<map/>\n<node name=\"test\">\n<map>\n");
+            for (Map.Entry<String, String> entry : myValues.entrySet()) {
+                xml.append("<entry key=\"").append(entry.getKey()).append("\" value=\"").append(entry.getValue()).append("\"/>\n");
+            }
+            xml.append("</map>\n</node>\n</root>\n</preferences>\n");
+            try {
+                os.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                Assert.fail(ex.getMessage());
+            }
+        }
+
+        @Override
+        public void importPreferences(final InputStream is) {
+        }
+        
+        public synchronized int size() {
+            return myValues.size();
+        }
+        
+        public int getWriteCount() {
+            return myWriteCount.get();
+        }
+    }
+    
+    @Test
+    public void testBufferedStore() {
+        final MapPreferencesStore store = new MapPreferencesStore();
+        store.put("old", "value");
+        final BufferedPreferencesStore buffered = new BufferedPreferencesStore(store, 1, TimeUnit.HOURS);
+        
+        // repeated writes are coalesced & visible before flush
+        for (int i = 0; i < 100; i++) {
+            buffered.put("key", String.valueOf(i));
+        }
+        buffered.put("other", "value");
+        buffered.remove("old");
+        Assert.assertEquals("99", buffered.get("key", null));
+        Assert.assertEquals("default", buffered.get("old", "default"));
+        Assert.assertEquals(3, buffered.getPendingCount());
+        Assert.assertEquals(1, store.getWriteCount());
+        Assert.assertEquals("value", store.get("old", null));
+        
+        buffered.flush();
+        Assert.assertEquals(0, buffered.getPendingCount());
+        Assert.assertEquals(4, store.getWriteCount());
+        Assert.assertEquals("99", store.get("key", null));
+        Assert.assertEquals("value", store.get("other", null));
+        Assert.assertNull(store.get("old", null));
+        
+        // export sees buffered values
+        buffered.put("key", "100");
+        buffered.exportPreferences(new ByteArrayOutputStream());
+        Assert.assertEquals("100", store.get("key", null));
+        
+        // clear drops buffered values as well
+        buffered.put("key", "101");
+        buffered.clear();
+        Assert.assertEquals(0, buffered.getPendingCount());
+        Assert.assertEquals(0, store.size());
+        
+        // after close everything goes directly to the store
+        buffered.put("key", "102");
+        buffered.close();
+        Assert.assertEquals("102", store.get("key", null));
+        buffered.put("key", "103");
+        Assert.assertEquals("103", store.get("key", null));
+    }
+    
+    @Test
+    public void testBufferedStoreNotClosed() throws InterruptedException {
+        // nothing but the garbage collector is needed to get rid of an instance
+        final WeakReference<BufferedPreferencesStore> reference = new WeakReference<>(new BufferedPreferencesStore(new MapPreferencesStore()));
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(reference.get());
+    }
+    
+    @Test
+    public void testBufferedStoreTimer() throws InterruptedException {
+        final MapPreferencesStore store = new MapPreferencesStore();
+        final BufferedPreferencesStore buffered = new BufferedPreferencesStore(store, 10, TimeUnit.MILLISECONDS);
+        
+        for (int i = 0; i < 10; i++) {
+            buffered.put("key-" + i, String.valueOf(i));
+        }
+        
+        // flushed by the timer in one batch
+        for (int i = 0; i < 500 && store.size() < 10; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(10, store.size());
+        Assert.assertEquals(10, store.getWriteCount());
+        Assert.assertEquals("9", store.get("key-9", null));
+        buffered.close();
+    }
+    
+    @Test
+    public void testFileStore() throws IOException {
+        final Path dir = Files.createTempDirectory("TestPreferencesStores");
+        try {
+            final Path path = dir.resolve("prefs.bin");
+            FilePreferencesStore store = new FilePreferencesStore(path);
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals("default", store.get("key", "default"));
+
+            for (int i = 0; i < 1000; i++) {
+                store.put("key-" + i, "value-" + i);
+            }
+            store.put("\u00e4\u00f6\u00fc\ud83d\ude00", "\u20ac");
+            store.put("key-0", "changed");
+            store.remove("key-1");
+            Assert.assertTrue(store.isDirty());
+            Assert.assertEquals("changed", store.get("key-0", null));
+            Assert.assertNull(store.get("key-1", null));
+            store.close();
+            Assert.assertFalse(store.isDirty());
+            Assert.assertTrue(Files.exists(path));
+            
+            // everything is found again after startup
+            store = new FilePreferencesStore(path);
+            Assert.assertEquals(1000, store.size());
+            Assert.assertEquals("changed", store.get("key-0", null));
+            Assert.assertNull(store.get("key-1", null));
+            Assert.assertEquals("value-999", store.get("key-999", null));
+            Assert.assertEquals("\u20ac", store.get("\u00e4\u00f6\u00fc\ud83d\ude00", null));
+            Assert.assertNull(store.get("key-", null));
+            Assert.assertNull(store.get("key-9999", null));
+            
+            // export & import
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            store.exportPreferences(os);
+            store.clear();
+            Assert.assertEquals(0, store.size());
+            Assert.assertNull(store.get("key-0", null));
+            store.importPreferences(new ByteArrayInputStream(os.toByteArray()));
+            Assert.assertEquals(1000, store.size());
+            Assert.assertEquals("changed", store.get("key-0", null));
+            
+            // clear is written as well
+            store.clear();
+            store.put("only", "one");
+            store.flush();
+            store = new FilePreferencesStore(path);
+            Assert.assertEquals(1, store.size());
+            Assert.assertEquals("one", store.get("only", null));
+            
+            // content that couldn't be moved into place is used on next startup
+            final Path otherPath = dir.resolve("other.bin");
+            final FilePreferencesStore otherStore = new FilePreferencesStore(otherPath);
+            otherStore.put("only", "two");
+            otherStore.close();
+            Files.move(otherPath, dir.resolve("prefs.bin.new"), StandardCopyOption.REPLACE_EXISTING);
+            store = new FilePreferencesStore(path);
+            Assert.assertEquals("two", store.get("only", null));
+            Assert.assertFalse(Files.exists(dir.resolve("prefs.bin.new")));
+            
+            // incomplete file is ignored
+            Files.write(path, "TFPS".getBytes(StandardCharsets.UTF_8));
+            store = new FilePreferencesStore(path);
+            Assert.assertEquals(0, store.size());
+            
+            // as well as a broken index
+            store.put("only", "three");
+            store.close();
+            final byte[] bytes = Files.readAllBytes(path);
+            // first byte of the key offset of the first entry
+            bytes[16] = 0x7F;
+            Files.write(path, bytes);
+            store = new FilePreferencesStore(path);
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals("default", store.get("only", "default"));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+    
+    @Test
+    public void testPrefixes() throws IOException {
+        final Path dir = Files.createTempDirectory("TestPreferencesStores");
+        try {
+            testPrefixes(new MemoryPreferencesStore());
+            testPrefixes(new FilePreferencesStore(dir.resolve("prefs.bin")));
+            testPrefixes(new BufferedPreferencesStore(new MemoryPreferencesStore(), 1, TimeUnit.HOURS));
+            
+            // values in the file as well as changes
+            final FilePreferencesStore fileStore = new FilePreferencesStore(dir.resolve("prefs.bin"));
+            fileStore.put("Table-ColumnWidth-2", "30.0");
+            Assert.assertEquals(Arrays.asList("Table-ColumnWidth-0", "Table-ColumnWidth-2"), new ArrayList<>(fileStore.getAll("Table-ColumnWidth-").keySet()));
+            
+            // stores without prefixes can still do putAll()
+            final MapPreferencesStore mapStore = new MapPreferencesStore();
+            Assert.assertFalse(mapStore.supportsPrefixes());
+            final Map<String, String> values = new HashMap<>();
+            values.put("key", "value");
+            mapStore.putAll(values);
+            Assert.assertEquals("value", mapStore.get("key", null));
+            
+            // ... and getAll() / removePrefix() from what they export
+            mapStore.put("Table-SortOrder-1", "col1");
+            mapStore.put("Table-SortOrder-0", "col0");
+            Assert.assertEquals(Arrays.asList("Table-SortOrder-0", "Table-SortOrder-1"), new ArrayList<>(mapStore.getAll("Table-SortOrder-").keySet()));
+            Assert.assertEquals("col1", mapStore.getAll("Table-").get("Table-SortOrder-1"));
+            mapStore.removePrefix("Table-SortOrder-");
+            Assert.assertTrue(mapStore.getAll("Table-").isEmpty());
+            Assert.assertEquals("value", mapStore.get("key", null));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+    
+    private void testPrefixes(final IPreferencesStore store) {
+        Assert.assertTrue(store.supportsPrefixes());
+        
+        final Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            values.put("Table-ColumnWidth-" + i, String.valueOf(i * 10.0));
+            values.put("Table-SortOrder-" + i, "col" + i);
+        }
+        values.put("Table", "no prefix");
+        values.put("Table2-ColumnWidth-0", "other table");
+        store.putAll(values);
+        
+        Assert.assertEquals(100, store.getAll("Table-").size());
+        Assert.assertEquals(50, store.getAll("Table-SortOrder-").size());
+        Assert.assertEquals("490.0", store.getAll("Table-ColumnWidth-").get("Table-ColumnWidth-49"));
+        Assert.assertEquals(102, store.getAll("").size());
+        Assert.assertTrue(store.getAll("Table-Nothing-").isEmpty());
+        
+        store.removePrefix("Table-SortOrder-");
+        Assert.assertTrue(store.getAll("Table-SortOrder-").isEmpty());
+        Assert.assertEquals("", store.get("Table-SortOrder-0", ""));
+        Assert.assertEquals(50, store.getAll("Table-").size());
+        Assert.assertEquals("other table", store.get("Table2-ColumnWidth-0", null));
+        
+        // null values remove keys
+        values.clear();
+        values.put("Table-ColumnWidth-1", null);
+        values.put("Table-ColumnWidth-0", "1.0");
+        store.putAll(values);
+        Assert.assertEquals(49, store.getAll("Table-ColumnWidth-").size());
+        Assert.assertEquals("1.0", store.get("Table-ColumnWidth-0", null));
+        
+        store.removePrefix("Table-ColumnWidth-1");
+        Assert.assertEquals(39, store.getAll("Table-ColumnWidth-").size());
+        
+        if (store instanceof Flushable) {
+            try {
+                ((Flushable) store).flush();
+            } catch (IOException ex) {
+                Assert.fail(ex.getMessage());
+            }
+            Assert.assertEquals(39, store.getAll("Table-ColumnWidth-").size());
+        }
+        
+        // keep only one for the checks afterwards
+        store.removePrefix("Table");
+        Assert.assertTrue(store.getAll("").isEmpty());
+        store.put("Table-ColumnWidth-0", "20.0");
+        if (store instanceof Flushable) {
+            try {
+                ((Flushable) store).flush();
+            } catch (IOException ex) {
+                Assert.fail(ex.getMessage());
+            }
+        }
+    }
+    
+    @Test
+    public void testObservableStore() {
+        // executor that runs only when we say so - like Platform.runLater() and the next pulse
+        final List<Runnable> pulse = new ArrayList<>();
+        final ObservablePreferencesStore store = new ObservablePreferencesStore(new MemoryPreferencesStore(), pulse::add);
+        
+        final List<PreferencesChangeEvent> keyEvents = new ArrayList<>();
+        final List<PreferencesChangeEvent> prefixEvents = new ArrayList<>();
+        store.addKeyListener("Window-Width", keyEvents::add);
+        store.addPrefixListener("Table-", prefixEvents::add);
+        
+        // all changes until the pulse end up in one event per listener
+        store.put("Window-Width", "100");
+        store.put("Window-Width", "200");
+        store.put("Window-Height", "300");
+        final Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            values.put("Table-ColumnWidth-" + i, String.valueOf(i));
+        }
+        store.putAll(values);
+        Assert.assertEquals(1, pulse.size());
+        Assert.assertTrue(keyEvents.isEmpty());
+        
+        pulse.remove(0).run();
+        Assert.assertEquals(1, keyEvents.size());
+        Assert.assertEquals(1, keyEvents.get(0).getChanges().size());
+        Assert.assertEquals("200", keyEvents.get(0).getChanges().get("Window-Width"));
+        Assert.assertSame(store, keyEvents.get(0).getStore());
+        Assert.assertEquals(1, prefixEvents.size());
+        Assert.assertEquals(10, prefixEvents.get(0).getChanges().size());
+        
+        // removals are changes to null, only listeners with matching keys are called
+        store.removePrefix("Table-ColumnWidth-");
+        pulse.remove(0).run();
+        Assert.assertEquals(1, keyEvents.size());
+        Assert.assertEquals(2, prefixEvents.size());
+        Assert.assertEquals(10, prefixEvents.get(1).getChanges().size());
+        Assert.assertTrue(prefixEvents.get(1).getChanges().containsKey("Table-ColumnWidth-0"));
+        Assert.assertNull(prefixEvents.get(1).getChanges().get("Table-ColumnWidth-0"));
+        
+        // clear removes everything we have
+        store.clear();
+        pulse.remove(0).run();
+        Assert.assertEquals(2, keyEvents.size());
+        Assert.assertFalse(keyEvents.get(1).isReset());
+        Assert.assertTrue(keyEvents.get(1).isChanged("Window-Width"));
+        Assert.assertEquals(2, prefixEvents.size());
+        
+        // stores that can't list their keys can only tell that something has happend
+        final List<PreferencesChangeEvent> events = new ArrayList<>();
+        final IPreferencesListener listener = events::add;
+        final ObservablePreferencesStore mapStore = new ObservablePreferencesStore(new MapPreferencesStore());
+        mapStore.addPrefixListener("", listener);
+        mapStore.put("key", "value");
+        Assert.assertEquals(1, events.size());
+        mapStore.clear();
+        Assert.assertEquals(2, events.size());
+        Assert.assertTrue(events.get(1).isReset());
+        Assert.assertTrue(events.get(1).isChanged("anything"));
+        
+        mapStore.removeListener(listener);
+        mapStore.put("key", "value");
+        Assert.assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testObservableStoreConcurrent() throws Exception {
+        // first write takes its time after the value has been stored - second one overtakes if it can
+        final CountDownLatch secondDone = new CountDownLatch(1);
+        final ObservablePreferencesStore store = new ObservablePreferencesStore(new MemoryPreferencesStore() {
+            @Override
+            public void put(final String key, final String value) {
+                super.put(key, value);
+                if ("1".equals(value)) {
+                    try {
+                        secondDone.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        final Map<String, String> delivered = new ConcurrentHashMap<>();
+        store.addKeyListener("key", (event) -> delivered.putAll(event.getChanges()));
+
+        final Thread first = new Thread(() -> store.put("key", "1"));
+        first.start();
+        while (!"1".equals(store.get("key", null))) {
+            Thread.sleep(1);
+        }
+        store.put("key", "2");
+        secondDone.countDown();
+        first.join();
+
+        // listeners end up with what is in the store
+        Assert.assertEquals(store.get("key", null), delivered.get("key"));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import tf.helper.general.IPreferencesStore;
+import tf.helper.general.MemoryPreferencesStore;
+import tf.helper.general.RecentFiles;
+import tf.helper.general.RecentList;
+
+/**
+ * Test the loading & checking of recent files and the RecentList.
+ * 
+ * @author thomas
+ */
+public class TestRecentFiles {
+    @Test
+    public void testCheckRecentFiles() throws Exception {
+        final Path dir = Files.createTempDirectory("TestRecentFiles");
+        try {
+            final String file1 = Files.createFile(dir.resolve("file1.txt")).toString();
+            final String file2 = Files.createFile(dir.resolve("file2.txt")).toString();
+            final String missing = dir.resolve("missing.txt").toString();
+            final String subDir = Files.createDirectory(dir.resolve("subdir")).toString();
+            
+            final IPreferencesStore store = new MemoryPreferencesStore();
+            final RecentFiles initFiles = new RecentFiles(store, 10);
+            for (String file : Arrays.asList(file1, missing, subDir, file2)) {
+                initFiles.addRecentFile(file);
+            }
+            Assert.assertEquals(Arrays.asList(file2, subDir, missing, file1), initFiles.getRecentFiles());
+            
+            // checked right away
+            Assert.assertEquals(Arrays.asList(file2, file1), new RecentFiles(store, 10).getRecentFiles());
+
+            // checked in the background - everything is there until the check is done
+            final List<List<String>> published = new ArrayList<>();
+            // filled by a thread of the check pool
+            final BlockingQueue<Runnable> publish = new LinkedBlockingQueue<>();
+            final RecentFiles asyncFiles = new RecentFiles(store, 10, publish::add, published::add);
+            Assert.assertEquals(Arrays.asList(file2, subDir, missing, file1), asyncFiles.getRecentFiles());
+            
+            // wait for the check to be handed over to the publish executor
+            final Runnable task = publish.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(task);
+            Assert.assertTrue(publish.isEmpty());
+            Assert.assertEquals(4, asyncFiles.getRecentFiles().size());
+            
+            // added again by the user in the meantime - so it stays
+            asyncFiles.addRecentFile(missing);
+            Assert.assertEquals(Arrays.asList(missing, file2, subDir, file1), asyncFiles.getRecentFiles());
+            
+            task.run();
+            asyncFiles.getCheckFuture().get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(Arrays.asList(missing, file2, file1), asyncFiles.getRecentFiles());
+            Assert.assertEquals(1, published.size());
+            Assert.assertEquals(Arrays.asList(missing, file2, file1), published.get(0));
+            
+            // prefs aren't changed by the check
+            Assert.assertEquals("4", store.get(RecentFiles.RECENTFILENAME_COUNT, null));
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+    
+    @Test
+    public void testReadOnlyRecentFile() throws Exception {
+        final Path dir = Files.createTempDirectory("TestRecentFiles");
+        final Path readOnly = dir.resolve("readonly.txt");
+        try {
+            final String file1 = Files.createFile(dir.resolve("file1.txt")).toString();
+            Files.createFile(readOnly);
+            Assume.assumeTrue(readOnly.toFile().setWritable(false, false));
+            // e.g. root can write anyway
+            Assume.assumeTrue(!Files.isWritable(readOnly));
+            
+            final IPreferencesStore store = new MemoryPreferencesStore();
+            final RecentFiles initFiles = new RecentFiles(store, 10);
+            initFiles.addRecentFile(file1);
+            initFiles.addRecentFile(readOnly.toString());
+            Assert.assertEquals(Arrays.asList(readOnly.toString(), file1), initFiles.getRecentFiles());
+            
+            Assert.assertEquals(Arrays.asList(file1), new RecentFiles(store, 10).getRecentFiles());
+            final RecentFiles asyncFiles = new RecentFiles(store, 10, Runnable::run);
+            asyncFiles.getCheckFuture().get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(Arrays.asList(file1), asyncFiles.getRecentFiles());
+        } finally {
+            readOnly.toFile().setWritable(true);
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+    
+    @Test
+    public void testRecentList() {
+        final RecentList<String> list = new RecentList<>(3);
+        final List<String> view = list.asList();
+        list.add("a");
+        list.add("b");
+        list.add("c");
+        Assert.assertEquals(Arrays.asList("c", "b", "a"), view);
+        
+        // touch moves to front, new one evicts least recent
+        list.add("a");
+        list.add("d");
+        Assert.assertEquals(Arrays.asList("d", "a", "c"), view);
+        Assert.assertFalse(list.contains("b"));
+        
+        // pinned ones stay and don't count
+        Assert.assertTrue(list.pin("c"));
+        Assert.assertFalse(list.pin("b"));
+        list.add("e");
+        list.add("f");
+        list.add("g");
+        Assert.assertEquals(Arrays.asList("g", "f", "e", "c"), view);
+        Assert.assertTrue(list.isPinned("c"));
+        Assert.assertEquals(3, list.getWeight());
+        
+        // unpinned it's the least recent one again
+        list.unpin("c");
+        Assert.assertEquals(Arrays.asList("g", "f", "e"), view);
+        
+        // reverse iteration
+        final ListIterator<String> iter = view.listIterator(view.size());
+        final List<String> reverse = new ArrayList<>();
+        while (iter.hasPrevious()) {
+            reverse.add(iter.previous());
+        }
+        Assert.assertEquals(Arrays.asList("e", "f", "g"), reverse);
+        Assert.assertEquals("f", view.get(1));
+        
+        // read-only & fail-fast
+        try {
+            view.add("x");
+            Assert.fail("Read-only view");
+        } catch (UnsupportedOperationException ex) {
+        }
+        try {
+            for (String element : list) {
+                list.remove(element);
+            }
+            Assert.fail("Concurrent modification");
+        } catch (ConcurrentModificationException ex) {
+        }
+        
+        list.clear();
+        Assert.assertTrue(view.isEmpty());
+        
+        // weighted: at most 10 characters
+        final RecentList<String> weighted = new RecentList<>(10, String::length);
+        weighted.add("12345");
+        weighted.add("1234");
+        weighted.add("12");
+        Assert.assertEquals(Arrays.asList("12", "1234"), weighted.asList());
+        Assert.assertEquals(6, weighted.getWeight());
+        // too heavy for the list on its own - the others stay
+        weighted.add("12345678901");
+        Assert.assertEquals(Arrays.asList("12", "1234"), weighted.asList());
+        Assert.assertEquals(6, weighted.getWeight());
+        Assert.assertFalse(weighted.contains("12345678901"));
+        
+        // an existing element that has become too heavy is removed - and only that one
+        final Map<String, Integer> weights = new HashMap<>();
+        final RecentList<String> changing = new RecentList<>(10, weights::get);
+        weights.put("a", 4);
+        weights.put("b", 6);
+        changing.add("a");
+        changing.add("b");
+        weights.put("a", 15);
+        changing.add("a");
+        Assert.assertEquals(Arrays.asList("b"), changing.asList());
+        Assert.assertEquals(6, changing.getWeight());
+        
+        // same for unpin - pinned elements don't count against the maximum
+        weights.put("c", 4);
+        changing.add("c");
+        Assert.assertTrue(changing.pin("c"));
+        weights.put("c", 15);
+        changing.add("c");
+        Assert.assertEquals(Arrays.asList("c", "b"), changing.asList());
+        Assert.assertTrue(changing.unpin("c"));
+        Assert.assertEquals(Arrays.asList("b"), changing.asList());
+        Assert.assertEquals(6, changing.getWeight());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014ff Thomas Feuster
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package tf.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import tf.helper.doundo.DoUndoStack;
+import tf.helper.doundo.IDoUndoAction;
+import tf.helper.doundo.PersistentVector;
+import tf.helper.doundo.SnapshotDoUndoAction;
+import tf.helper.doundo.SnapshotModel;
+
+/**
+ * Test snapshot based do / undo and the PersistentVector used for it.
+ * @author thomas
+ */
+public class TestSnapshotDoUndo {
+    private final static int VECTOR_SIZE = 2000;
+    
+    @Test
+    public void testPersistentVector() {
+        final List<Integer> list = new ArrayList<>();
+        final List<PersistentVector<Integer>> versions = new ArrayList<>();
+        
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        versions.add(vector);
+        for (int i = 0; i < VECTOR_SIZE; i++) {
+            vector = vector.withAppended(i);
+            versions.add(vector);
+            list.add(i);
+        }
+        Assert.assertEquals(VECTOR_SIZE, vector.size());
+        Assert.assertEquals(list, vector);
+        Assert.assertEquals(vector, PersistentVector.of(list));
+        
+        // old versions aren't changed - also check the interesting sizes where new levels are added
+        for (int size : new int[] {0, 1, 31, 32, 33, 1023, 1024, 1025}) {
+            Assert.assertEquals(list.subList(0, size), versions.get(size));
+        }
+        
+        // replace
+        final PersistentVector<Integer> changed = vector.with(1500, -1);
+        Assert.assertEquals(-1, changed.get(1500).intValue());
+        Assert.assertEquals(1500, vector.get(1500).intValue());
+        Assert.assertEquals(VECTOR_SIZE, changed.size());
+        
+        // remove down to empty - all sizes need to match the version with the same size
+        PersistentVector<Integer> shrinking = vector;
+        for (int i = VECTOR_SIZE; i > 0; i--) {
+            shrinking = shrinking.withoutLast();
+            if (i % 31 == 0 || i == 1025 || i == 33) {
+                Assert.assertEquals(versions.get(i - 1), shrinking);
+            }
+        }
+        Assert.assertTrue(shrinking.isEmpty());
+        // and up again
+        for (int i = 0; i < 40; i++) {
+            shrinking = shrinking.withAppended(i);
+        }
+        Assert.assertEquals(versions.get(40), shrinking);
+        
+        try {
+            vector.get(VECTOR_SIZE);
+            Assert.fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException ex) {
+        }
+        try {
+            vector.add(1);
+            Assert.fail("UnsupportedOperationException expected");
+        } catch (UnsupportedOperationException ex) {
+        }
+    }
+    
+    @Test
+    public void testSnapshotAction() {
+        final List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < VECTOR_SIZE; i++) {
+            list.add(i);
+        }
+        final PersistentVector<Integer> original = PersistentVector.of(list);
+        final SnapshotModel<PersistentVector<Integer>> model = new SnapshotModel<>(original);
+        final DoUndoStack stack = new DoUndoStack();
+
+        final SnapshotDoUndoAction<PersistentVector<Integer>> action = model.change((vector) -> vector.with(5, -5), "Set #5");
+        // change has been done already
+        Assert.assertEquals(IDoUndoAction.State.DONE, action.getState());
+        Assert.assertSame(original, action.getBefore());
+        Assert.assertSame(model.getSnapshot(), action.getAfter());
+        stack.addDoneAction(action);
+        final PersistentVector<Integer> afterFirst = model.getSnapshot();
+        stack.addDoneAction(model.change((vector) -> vector.withAppended(VECTOR_SIZE), "Append"));
+        final PersistentVector<Integer> afterSecond = model.getSnapshot();
+        Assert.assertEquals(-5, afterSecond.get(5).intValue());
+        Assert.assertEquals(VECTOR_SIZE + 1, afterSecond.size());
+        
+        // undo / redo just switch snapshots
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertSame(afterFirst, model.getSnapshot());
+        Assert.assertTrue(stack.singleUndo());
+        Assert.assertSame(original, model.getSnapshot());
+        Assert.assertTrue(stack.rollForward());
+        Assert.assertSame(afterSecond, model.getSnapshot());
+        Assert.assertEquals("Set #5" + System.lineSeparator() + "Append", stack.getUndoActionDescription());
+    }
+    
+    @Test
+    public void testSnapshotMerge() {
+        final SnapshotModel<PersistentVector<Integer>> model = new SnapshotModel<>(PersistentVector.of(Arrays.asList(0, 0)));
+        final PersistentVector<Integer> original = model.getSnapshot();
+        final DoUndoStack stack = new DoUndoStack();
+        stack.setMergeWindow(3600000);
+        
+        // dragging: lots of changes for the same element
+        for (int i = 1; i <= 10; i++) {
+            final int value = i;
+            stack.addDoneAction(model.change((vector) -> vector.with(0, value), "Drag", "Drag #0"));
+        }
+        // different merge key - new entry
+        stack.addDoneAction(model.change((vector) -> vector.with(1, 1), "Drag", "Drag #1"));
+        // no merge key - new entry
+        stack.addDoneAction(model.change((vector) -> vector.with(1, 2), "Set"));
+        final PersistentVector<Integer> last = model.getSnapshot();
+        Assert.assertEquals(3, stack.getUndoStackSize());
+        
+        Assert.assertTrue(stack.rollBack());
+        Assert.assertSame(original, model.getSnapshot());
+        Assert.assertTrue(stack.rollForward());
+        Assert.assertSame(last, model.getSnapshot());
+        Assert.assertEquals(10, last.get(0).intValue());
+        Assert.assertEquals(2, last.get(1).intValue());
+    }
+}